@@ -0,0 +1,205 @@
+package fr.umontpellier.iut.analyse;
+
+import fr.umontpellier.iut.rails.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exporte des parties terminées dans un fichier binaire organisé par colonnes,
+ * pour pouvoir les analyser sans rejouer les parties.
+ * <p>
+ * Format du fichier (entiers en big-endian) :
+ * <pre>
+ * en-tête, écrit à la création du fichier :
+ *   "RAILSCOL" (8 octets), version (int)
+ *   nbVilles (int), puis pour chaque ville : nom (short longueur + UTF-8)
+ *   nbRoutes (int), puis pour chaque route : nom, ville1 (int), ville2 (int),
+ *     longueur (byte), couleur (byte), type (byte : 0 route, 1 tunnel, 2 ferry),
+ *     nbLocomotives (byte)
+ * puis un bloc par partie :
+ *   taille du bloc sans ce champ (int)
+ *   nbCoups (int), nbJoueurs (byte), nbTours (int)
+ *   colonnes des coups (voir JournalCoups), chacune de nbCoups valeurs :
+ *     tour (int), joueur (byte), type (byte), element (int), cartes (byte),
+ *     locomotives (byte)
+ *   pour chaque joueur : score (int), pointsRoutes (int), pointsDestinations (int),
+ *     plusLongChemin (short), bonusPlusLongChemin (byte), garesRestantes (byte),
+ *     nbDestinations (byte), puis pour chaque destination : ville1 (int),
+ *     ville2 (int), valeur (byte), reussie (byte)
+ * </pre>
+ * Les blocs sont préfixés par leur taille pour pouvoir être parcourus (et
+ * répartis entre plusieurs threads) sans être décodés. Les écritures sont
+ * regroupées dans un tampon et ajoutées à la fin du fichier.
+ */
+public class ExportColonnes implements Closeable {
+    public static final byte[] MAGIQUE = "RAILSCOL".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final byte TYPE_ROUTE = 0;
+    public static final byte TYPE_TUNNEL = 1;
+    public static final byte TYPE_FERRY = 2;
+
+    /**
+     * Taille du tampon d'écriture
+     */
+    private static final int TAILLE_TAMPON = 1 << 20;
+
+    private final FileChannel canal;
+    private final ByteBuffer tampon = ByteBuffer.allocateDirect(TAILLE_TAMPON);
+
+    /**
+     * Ouvre un fichier d'export (en écrivant l'en-tête s'il est vide). Les parties
+     * ajoutées à un fichier existant doivent avoir été jouées sur le même plateau.
+     *
+     * @param fichier le fichier d'export
+     * @param villes  les villes du plateau
+     * @param routes  les routes du plateau
+     */
+    public ExportColonnes(Path fichier, List<Ville> villes, List<Route> routes) throws IOException {
+        canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (canal.size() == 0) {
+            ecrireEnTete(villes, routes);
+        }
+    }
+
+    /**
+     * Ajoute une partie terminée au fichier
+     */
+    public synchronized void ajouter(Jeu jeu) throws IOException {
+        JournalCoups journal = jeu.getJournal();
+        List<ScoreFinal> scores = jeu.getScoresFinaux();
+        EvaluateurDestinations evaluateur = jeu.getEvaluateurDestinations();
+        int n = journal.getNbCoups();
+
+        int taille = 4 + 1 + 4 + n * (4 + 1 + 1 + 4 + 1 + 1);
+        for (ScoreFinal score : scores) {
+            taille += 4 + 4 + 4 + 2 + 1 + 1 + 1 + 10 * score.getJoueur().getDestinations().size();
+        }
+        ByteBuffer bloc = ByteBuffer.allocate(4 + taille);
+        bloc.putInt(taille);
+        bloc.putInt(n);
+        bloc.put((byte) scores.size());
+        bloc.putInt(jeu.getNbTours());
+        for (int i = 0; i < n; i++) {
+            bloc.putInt(journal.getTour(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bloc.put((byte) journal.getJoueur(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bloc.put((byte) journal.getType(i).ordinal());
+        }
+        for (int i = 0; i < n; i++) {
+            bloc.putInt(journal.getElement(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bloc.put((byte) journal.getNbCartes(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bloc.put((byte) journal.getNbLocomotives(i));
+        }
+        for (ScoreFinal score : scores) {
+            Joueur joueur = score.getJoueur();
+            bloc.putInt(score.getTotal());
+            bloc.putInt(score.getPointsRoutes());
+            bloc.putInt(score.getPointsDestinations());
+            bloc.putShort((short) score.getPlusLongChemin());
+            bloc.put((byte) (score.aBonusPlusLongChemin() ? 1 : 0));
+            bloc.put((byte) joueur.getNbGares());
+            bloc.put((byte) joueur.getDestinations().size());
+            for (Destination destination : joueur.getDestinations()) {
+                bloc.putInt(evaluateur.indiceVille(destination.getVille1()));
+                bloc.putInt(evaluateur.indiceVille(destination.getVille2()));
+                bloc.put((byte) destination.getValeur());
+                bloc.put((byte) (score.getDestinationsReussies().contains(destination) ? 1 : 0));
+            }
+        }
+        bloc.flip();
+        ecrire(bloc);
+    }
+
+    /**
+     * Écrit les données en attente dans le fichier
+     */
+    public synchronized void vider() throws IOException {
+        tampon.flip();
+        while (tampon.hasRemaining()) {
+            canal.write(tampon);
+        }
+        tampon.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        vider();
+        canal.close();
+    }
+
+    private void ecrireEnTete(List<Ville> villes, List<Route> routes) throws IOException {
+        int taille = MAGIQUE.length + 4 + 4 + 4;
+        for (Ville ville : villes) {
+            taille += 2 + ville.getNom().getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (Route route : routes) {
+            taille += 2 + route.getNom().getBytes(StandardCharsets.UTF_8).length + 12;
+        }
+        ByteBuffer enTete = ByteBuffer.allocate(taille);
+        enTete.put(MAGIQUE);
+        enTete.putInt(VERSION);
+        enTete.putInt(villes.size());
+        Map<Ville, Integer> indices = new HashMap<>();
+        for (Ville ville : villes) {
+            indices.put(ville, indices.size());
+            ecrireChaine(enTete, ville.getNom());
+        }
+        enTete.putInt(routes.size());
+        for (Route route : routes) {
+            ecrireChaine(enTete, route.getNom());
+            enTete.putInt(indices.get(route.getVille1()));
+            enTete.putInt(indices.get(route.getVille2()));
+            enTete.put((byte) route.getLongueur());
+            enTete.put((byte) route.getCouleur().ordinal());
+            if (route instanceof Tunnel) {
+                enTete.put(TYPE_TUNNEL);
+                enTete.put((byte) 0);
+            } else if (route instanceof Ferry) {
+                enTete.put(TYPE_FERRY);
+                enTete.put((byte) ((Ferry) route).getNbLocomotives());
+            } else {
+                enTete.put(TYPE_ROUTE);
+                enTete.put((byte) 0);
+            }
+        }
+        enTete.flip();
+        ecrire(enTete);
+        vider();
+    }
+
+    private void ecrire(ByteBuffer donnees) throws IOException {
+        if (donnees.remaining() > tampon.remaining()) {
+            vider();
+        }
+        if (donnees.remaining() > tampon.capacity()) {
+            while (donnees.hasRemaining()) {
+                canal.write(donnees);
+            }
+        } else {
+            tampon.put(donnees);
+        }
+    }
+
+    private static void ecrireChaine(ByteBuffer tampon, String chaine) {
+        byte[] octets = chaine.getBytes(StandardCharsets.UTF_8);
+        tampon.putShort((short) octets.length);
+        tampon.put(octets);
+    }
+}
@@ -0,0 +1,300 @@
+package fr.umontpellier.iut.analyse;
+
+import fr.umontpellier.iut.rails.JournalCoups;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Outil de requêtes sur les parties exportées par {@code ExportColonnes}.
+ * <p>
+ * Le fichier est projeté en mémoire et parcouru directement, sans créer d'objet
+ * {@code Route} ou {@code Joueur} : les blocs (un par partie) sont répartis entre
+ * plusieurs threads, chacun accumulant ses résultats dans des tableaux de types
+ * primitifs qui sont fusionnés à la fin. Les requêtes calculées sont :
+ * <ul>
+ * <li>pour chaque route, le taux de capture (nombre de parties où elle est
+ * capturée) et le tour moyen de capture ;</li>
+ * <li>pour chaque destination longue, le taux de victoire des joueurs qui la
+ * possèdent et son taux de réussite ;</li>
+ * <li>le nombre moyen de locomotives utilisées pour capturer chaque ferry.</li>
+ * </ul>
+ * <p>
+ * Utilisation : {@code RequetesParties fichier [nbThreads]}
+ */
+public class RequetesParties {
+    /**
+     * Valeur minimale d'une destination longue
+     */
+    public static final int VALEUR_DESTINATION_LONGUE = 20;
+    /**
+     * Taille maximale d'une zone du fichier projetée en une seule fois
+     */
+    private static final long TAILLE_ZONE_MAX = 1L << 30;
+
+    private static final int ROUTE = JournalCoups.TypeCoup.ROUTE.ordinal();
+
+    private final String[] villes;
+    private final String[] routes;
+    private final byte[] typesRoutes;
+    private final byte[] locomotivesRoutes;
+    private final FileChannel canal;
+    /**
+     * Position du début de chaque partie dans le fichier (plus la fin du fichier)
+     */
+    private final long[] debutsParties;
+
+    public RequetesParties(Path fichier) throws IOException {
+        canal = FileChannel.open(fichier, StandardOpenOption.READ);
+        MappedByteBuffer enTete = canal.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(canal.size(), TAILLE_ZONE_MAX));
+        byte[] magique = new byte[ExportColonnes.MAGIQUE.length];
+        enTete.get(magique);
+        if (!Arrays.equals(magique, ExportColonnes.MAGIQUE) || enTete.getInt() != ExportColonnes.VERSION) {
+            throw new IOException("Format de fichier inconnu : " + fichier);
+        }
+        villes = new String[enTete.getInt()];
+        for (int v = 0; v < villes.length; v++) {
+            villes[v] = lireChaine(enTete);
+        }
+        int nbRoutes = enTete.getInt();
+        routes = new String[nbRoutes];
+        typesRoutes = new byte[nbRoutes];
+        locomotivesRoutes = new byte[nbRoutes];
+        for (int r = 0; r < nbRoutes; r++) {
+            routes[r] = lireChaine(enTete);
+            enTete.position(enTete.position() + 10);
+            typesRoutes[r] = enTete.get();
+            locomotivesRoutes[r] = enTete.get();
+        }
+        debutsParties = indexerParties(enTete.position());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nbThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        RequetesParties requetes = new RequetesParties(Path.of(args[0]));
+        long debut = System.nanoTime();
+        Resultats resultats = requetes.executer(nbThreads);
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        requetes.afficher(resultats);
+        System.out.printf("%n%d parties analysées en %.3f s (%.0f Mo/s)%n", resultats.nbParties, secondes,
+                requetes.canal.size() / secondes / 1e6);
+    }
+
+    public int getNbParties() {
+        return debutsParties.length - 1;
+    }
+
+    /**
+     * Parcourt toutes les parties en les répartissant entre plusieurs threads
+     */
+    public Resultats executer(int nbThreads) throws Exception {
+        int nbParties = getNbParties();
+        // découpage en tranches de parties consécutives, chacune projetée séparément
+        List<int[]> tranches = new ArrayList<>();
+        int partiesParTranche = Math.max(1, (nbParties + nbThreads - 1) / nbThreads);
+        int premiere = 0;
+        while (premiere < nbParties) {
+            int derniere = Math.min(nbParties, premiere + partiesParTranche);
+            while (derniere > premiere + 1 && debutsParties[derniere] - debutsParties[premiere] > TAILLE_ZONE_MAX) {
+                derniere = premiere + (derniere - premiere) / 2;
+            }
+            tranches.add(new int[]{premiere, derniere});
+            premiere = derniere;
+        }
+
+        ExecutorService executeur = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<Resultats>> taches = new ArrayList<>();
+            for (int[] tranche : tranches) {
+                taches.add(executeur.submit(() -> parcourir(tranche[0], tranche[1])));
+            }
+            Resultats total = new Resultats(routes.length);
+            for (Future<Resultats> tache : taches) {
+                total.fusionner(tache.get());
+            }
+            return total;
+        } finally {
+            executeur.shutdown();
+        }
+    }
+
+    /**
+     * Parcourt les parties d'indices {@code premiere} (inclus) à {@code derniere}
+     * (exclu)
+     */
+    private Resultats parcourir(int premiere, int derniere) throws IOException {
+        Resultats resultats = new Resultats(routes.length);
+        long origine = debutsParties[premiere];
+        MappedByteBuffer zone = canal.map(FileChannel.MapMode.READ_ONLY, origine,
+                debutsParties[derniere] - origine);
+        int[] debutsJoueurs = new int[8];
+        for (int partie = premiere; partie < derniere; partie++) {
+            int p = (int) (debutsParties[partie] - origine) + 4;
+            int n = zone.getInt(p);
+            int nbJoueurs = zone.get(p + 4);
+            int colonnes = p + 9;
+            int tours = colonnes;
+            int types = colonnes + 5 * n;
+            int elements = colonnes + 6 * n;
+            int locomotives = colonnes + 11 * n;
+            resultats.nbParties++;
+
+            for (int i = 0; i < n; i++) {
+                if (zone.get(types + i) != ROUTE) {
+                    continue;
+                }
+                int route = zone.getInt(elements + 4 * i);
+                resultats.captures[route]++;
+                resultats.sommeToursCapture[route] += zone.getInt(tours + 4 * i);
+                resultats.sommeLocomotives[route] += zone.get(locomotives + i);
+            }
+
+            // résumés des joueurs : on repère le meilleur score avant de parcourir les destinations
+            int q = colonnes + 12 * n;
+            int meilleurScore = Integer.MIN_VALUE;
+            if (debutsJoueurs.length < nbJoueurs) {
+                debutsJoueurs = new int[nbJoueurs];
+            }
+            for (int j = 0; j < nbJoueurs; j++) {
+                debutsJoueurs[j] = q;
+                meilleurScore = Math.max(meilleurScore, zone.getInt(q));
+                q += 17 + 10 * zone.get(q + 16);
+            }
+            for (int j = 0; j < nbJoueurs; j++) {
+                int r = debutsJoueurs[j];
+                boolean gagnant = zone.getInt(r) == meilleurScore;
+                int nbDestinations = zone.get(r + 16);
+                for (int d = 0, pd = r + 17; d < nbDestinations; d++, pd += 10) {
+                    if (zone.get(pd + 8) < VALEUR_DESTINATION_LONGUE) {
+                        continue;
+                    }
+                    long cle = (long) zone.getInt(pd) * villes.length + zone.getInt(pd + 4);
+                    long[] stats = resultats.destinationsLongues.computeIfAbsent(cle, k -> new long[3]);
+                    stats[0]++;
+                    stats[1] += gagnant ? 1 : 0;
+                    stats[2] += zone.get(pd + 9);
+                }
+            }
+        }
+        return resultats;
+    }
+
+    /**
+     * Relève la position du début de chaque partie en suivant la taille des blocs
+     */
+    private long[] indexerParties(long debut) throws IOException {
+        long taille = canal.size();
+        long[] debuts = new long[1024];
+        int nb = 0;
+        ByteBuffer entier = ByteBuffer.allocate(4);
+        long position = debut;
+        while (position < taille) {
+            if (nb == debuts.length - 1) {
+                debuts = Arrays.copyOf(debuts, 2 * debuts.length);
+            }
+            debuts[nb++] = position;
+            entier.clear();
+            canal.read(entier, position);
+            position += 4 + entier.getInt(0);
+        }
+        debuts[nb] = Math.min(position, taille);
+        return Arrays.copyOf(debuts, nb + 1);
+    }
+
+    private void afficher(Resultats resultats) {
+        System.out.println("Routes (taux de capture, tour moyen de capture) :");
+        Integer[] ordre = new Integer[routes.length];
+        for (int r = 0; r < routes.length; r++) {
+            ordre[r] = r;
+        }
+        Arrays.sort(ordre, (a, b) -> Long.compare(resultats.captures[b], resultats.captures[a]));
+        for (int r : ordre) {
+            System.out.printf(Locale.ROOT, "  %-40s %5.1f %%  tour %.1f%n", routes[r],
+                    100.0 * resultats.captures[r] / resultats.nbParties,
+                    resultats.captures[r] == 0 ? 0 : (double) resultats.sommeToursCapture[r] / resultats.captures[r]);
+        }
+
+        System.out.println("Destinations longues (parties, taux de victoire, taux de réussite) :");
+        for (Map.Entry<Long, long[]> entree : resultats.destinationsLongues.entrySet()) {
+            long[] stats = entree.getValue();
+            String nom = villes[(int) (entree.getKey() / villes.length)] + " - "
+                    + villes[(int) (entree.getKey() % villes.length)];
+            System.out.printf(Locale.ROOT, "  %-40s %6d  %5.1f %%  %5.1f %%%n", nom, stats[0],
+                    100.0 * stats[1] / stats[0], 100.0 * stats[2] / stats[0]);
+        }
+
+        System.out.println("Ferries (captures, locomotives moyennes / minimum) :");
+        for (int r = 0; r < routes.length; r++) {
+            if (typesRoutes[r] == ExportColonnes.TYPE_FERRY && resultats.captures[r] > 0) {
+                System.out.printf(Locale.ROOT, "  %-40s %6d  %.2f / %d%n", routes[r], resultats.captures[r],
+                        (double) resultats.sommeLocomotives[r] / resultats.captures[r], locomotivesRoutes[r]);
+            }
+        }
+    }
+
+    private static String lireChaine(ByteBuffer tampon) {
+        byte[] octets = new byte[tampon.getShort()];
+        tampon.get(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Résultats accumulés par un thread (puis fusionnés)
+     */
+    public static class Resultats {
+        private long nbParties;
+        /**
+         * Nombre de captures de chaque route
+         */
+        private final long[] captures;
+        private final long[] sommeToursCapture;
+        /**
+         * Nombre total de locomotives payées pour capturer chaque route
+         */
+        private final long[] sommeLocomotives;
+        /**
+         * Pour chaque destination longue (clé ville1 * nbVilles + ville2) : nombre
+         * de joueurs qui l'ont eue, nombre de ces joueurs qui ont gagné, nombre qui
+         * l'ont réalisée
+         */
+        private final Map<Long, long[]> destinationsLongues = new HashMap<>();
+
+        Resultats(int nbRoutes) {
+            captures = new long[nbRoutes];
+            sommeToursCapture = new long[nbRoutes];
+            sommeLocomotives = new long[nbRoutes];
+        }
+
+        void fusionner(Resultats autres) {
+            nbParties += autres.nbParties;
+            for (int r = 0; r < captures.length; r++) {
+                captures[r] += autres.captures[r];
+                sommeToursCapture[r] += autres.sommeToursCapture[r];
+                sommeLocomotives[r] += autres.sommeLocomotives[r];
+            }
+            for (Map.Entry<Long, long[]> entree : autres.destinationsLongues.entrySet()) {
+                long[] stats = destinationsLongues.computeIfAbsent(entree.getKey(), k -> new long[3]);
+                for (int i = 0; i < stats.length; i++) {
+                    stats[i] += entree.getValue()[i];
+                }
+            }
+        }
+
+        public long getNbParties() {
+            return nbParties;
+        }
+
+        public long getNbCaptures(int route) {
+            return captures[route];
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Plateau;
+import fr.umontpellier.iut.rails.ScoreFinal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Banc d'essai de {@code OrdonnanceurBots}.
+ * <p>
+ * Le programme fait jouer de nombreuses parties simultanées entre bots gloutons,
+ * chacune sur son propre thread (comme les tables du serveur), d'abord avec des
+ * bots qui évaluent les routes sur le thread de leur partie, puis avec des bots
+ * qui passent par l'ordonnanceur. Il affiche le nombre de décisions prises par
+ * seconde et par seconde de temps processeur, et vérifie que les deux façons de
+ * jouer donnent exactement les mêmes parties (les parties sont initialisées avec
+ * les mêmes graines et l'évaluation est la même).
+ * <p>
+ * Utilisation : {@code BancOrdonnanceur [nbParties] [nbThreadsCalcul] [tailleLot] [nbToursMax]}
+ */
+public class BancOrdonnanceur {
+    private final int nbParties;
+    private final int nbToursMax;
+    /**
+     * Nombre de décisions prises par les bots pendant la dernière série de parties
+     */
+    private final LongAdder nbDecisions = new LongAdder();
+
+    public BancOrdonnanceur(int nbParties, int nbToursMax) {
+        this.nbParties = nbParties;
+        this.nbToursMax = nbToursMax;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nbParties = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int nbThreadsCalcul = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int tailleLot = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int nbToursMax = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        BancOrdonnanceur banc = new BancOrdonnanceur(nbParties, nbToursMax);
+        OrdonnanceurBots ordonnanceur = new OrdonnanceurBots(nbThreadsCalcul, tailleLot);
+        ordonnanceur.demarrer();
+        // séries d'échauffement (compilation à la volée), non affichées
+        new BancOrdonnanceur(Math.min(nbParties, 16), nbToursMax).jouer(null);
+        new BancOrdonnanceur(Math.min(nbParties, 16), nbToursMax).jouer(ordonnanceur);
+
+        int[][] scoresDirects = banc.mesurer("thread de la partie", null);
+        long lotsAvant = ordonnanceur.getNbLots();
+        long demandesAvant = ordonnanceur.getNbDemandes();
+        int[][] scoresLots = banc.mesurer("ordonnanceur", ordonnanceur);
+        ordonnanceur.arreter();
+        System.out.printf(Locale.ROOT, "%d threads de calcul, %.1f demandes par lot en moyenne%n", nbThreadsCalcul,
+                (double) (ordonnanceur.getNbDemandes() - demandesAvant)
+                        / Math.max(1, ordonnanceur.getNbLots() - lotsAvant));
+        System.out.println("parties identiques : " + (Arrays.deepEquals(scoresDirects, scoresLots) ? "oui" : "NON"));
+    }
+
+    /**
+     * Joue une série de parties et affiche les mesures
+     *
+     * @return les scores finaux de chaque partie
+     */
+    private int[][] mesurer(String nom, OrdonnanceurBots ordonnanceur) throws InterruptedException {
+        OperatingSystemMXBean systeme = ManagementFactory.getOperatingSystemMXBean();
+        long cpuDebut = tempsProcesseur(systeme);
+        long debut = System.nanoTime();
+        int[][] scores = jouer(ordonnanceur);
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        double secondesCpu = (tempsProcesseur(systeme) - cpuDebut) / 1e9;
+        long decisions = nbDecisions.sum();
+        System.out.printf(Locale.ROOT, "%-20s %9d décisions en %6.2f s : %9.0f décisions/s, %9.0f décisions/s CPU%n",
+                nom, decisions, secondes, decisions / secondes,
+                secondesCpu > 0 ? decisions / secondesCpu : Double.NaN);
+        return scores;
+    }
+
+    /**
+     * Joue toutes les parties en même temps, chacune sur son thread
+     *
+     * @param ordonnanceur l'ordonnanceur utilisé par les bots ({@code null} pour
+     *                     évaluer sur le thread de la partie)
+     */
+    private int[][] jouer(OrdonnanceurBots ordonnanceur) throws InterruptedException {
+        nbDecisions.reset();
+        Jeu[] parties = new Jeu[nbParties];
+        Thread[] threads = new Thread[nbParties];
+        for (int p = 0; p < nbParties; p++) {
+            Jeu jeu = new Jeu(new String[]{"glouton-1", "glouton-2"}, Plateau.makePlateauEurope(), p);
+            jeu.setSilencieux(true);
+            jeu.setNbToursMax(nbToursMax);
+            for (Joueur joueur : jeu.getJoueurs()) {
+                StrategieGloutonne glouton = new StrategieGloutonne(ordonnanceur);
+                joueur.setStrategie((j, instruction, choix, peutPasser) -> {
+                    nbDecisions.increment();
+                    return glouton.choisir(j, instruction, choix, peutPasser);
+                });
+            }
+            parties[p] = jeu;
+            threads[p] = new Thread(jeu, "partie-" + p);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        int[][] scores = new int[nbParties][];
+        for (int p = 0; p < nbParties; p++) {
+            List<ScoreFinal> scoresFinaux = parties[p].getScoresFinaux();
+            scores[p] = scoresFinaux.stream().mapToInt(ScoreFinal::getTotal).toArray();
+        }
+        return scores;
+    }
+
+    /**
+     * Temps processeur consommé par la JVM (en nanosecondes), ou 0 si la JVM ne le
+     * fournit pas
+     */
+    private static long tempsProcesseur(OperatingSystemMXBean systeme) {
+        if (systeme instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) systeme).getProcessCpuTime();
+        }
+        return 0;
+    }
+}
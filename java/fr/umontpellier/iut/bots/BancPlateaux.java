@@ -0,0 +1,134 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Banc d'essai du moteur sur des plateaux synthétiques de tailles croissantes
+ * (voir {@code GenerateurPlateau}).
+ * <p>
+ * Pour chaque taille, le programme mesure la génération du plateau, son
+ * décodage depuis le format binaire, la création de la partie, le temps moyen
+ * d'un tour (partie entre deux bots aléatoires, limitée en nombre de tours), le
+ * décompte final des scores et l'estimation du coût des destinations. Pour
+ * chaque mesure, il affiche aussi l'exposant de croissance par rapport à la
+ * taille précédente : environ 1 pour un traitement linéaire, 2 pour un
+ * traitement quadratique.
+ * <p>
+ * Utilisation : {@code BancPlateaux [nbToursMax] [graine] [nbVilles...]}
+ */
+public class BancPlateaux {
+    /**
+     * Exposant de croissance au-delà duquel une mesure est signalée
+     */
+    private static final double EXPOSANT_SUSPECT = 1.4;
+    private static final String[] MESURES = {"generation", "decodage", "creation", "tour", "score", "estimation"};
+
+    private final int nbToursMax;
+    private final long graine;
+
+    public BancPlateaux(int nbToursMax, long graine) {
+        this.nbToursMax = nbToursMax;
+        this.graine = graine;
+    }
+
+    public static void main(String[] args) {
+        int nbToursMax = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        long graine = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        List<Integer> tailles = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            tailles.add(Integer.parseInt(args[i]));
+        }
+        if (tailles.isEmpty()) {
+            tailles = List.of(1_000, 10_000, 100_000);
+        }
+
+        BancPlateaux banc = new BancPlateaux(nbToursMax, graine);
+        // partie d'échauffement (compilation à la volée), non affichée
+        banc.mesurer(tailles.get(0));
+
+        System.out.printf("%8s %8s", "villes", "routes");
+        for (String mesure : MESURES) {
+            System.out.printf(" %16s", mesure);
+        }
+        System.out.println();
+        System.out.printf("%8s %8s", "", "");
+        for (String ignored : MESURES) {
+            System.out.printf(" %16s", "(us, exposant)");
+        }
+        System.out.println();
+
+        double[] precedentes = null;
+        int taillePrecedente = 0;
+        for (int taille : tailles) {
+            double[] mesures = banc.mesurer(taille);
+            System.out.printf(Locale.ROOT, "%8d %8d", taille, (long) mesures[MESURES.length]);
+            for (int m = 0; m < MESURES.length; m++) {
+                String exposant = "";
+                if (precedentes != null && precedentes[m] > 0 && mesures[m] > 0) {
+                    double e = Math.log(mesures[m] / precedentes[m]) / Math.log((double) taille / taillePrecedente);
+                    exposant = String.format(Locale.ROOT, "%.2f%s", e, e > EXPOSANT_SUSPECT ? "!" : "");
+                }
+                System.out.printf(Locale.ROOT, " %10.0f %5s", mesures[m], exposant);
+            }
+            System.out.println();
+            precedentes = mesures;
+            taillePrecedente = taille;
+        }
+    }
+
+    /**
+     * Effectue toutes les mesures sur un plateau généré
+     *
+     * @return la durée de chaque mesure (dans l'ordre de {@code MESURES}, en
+     * microsecondes) suivie du nombre de routes du plateau
+     */
+    public double[] mesurer(int nbVilles) {
+        double[] mesures = new double[MESURES.length + 1];
+
+        long debut = System.nanoTime();
+        Plateau genere = new GenerateurPlateau(graine).generer(nbVilles);
+        mesures[0] = microsecondes(debut);
+
+        ByteBuffer compile = ByteBuffer.wrap(FormatPlateau.compiler(genere));
+        debut = System.nanoTime();
+        Plateau plateau = FormatPlateau.decoder(compile);
+        mesures[1] = microsecondes(debut);
+        mesures[MESURES.length] = plateau.getRoutes().size();
+
+        debut = System.nanoTime();
+        Jeu jeu = new Jeu(new String[]{"aleatoire-1", "aleatoire-2"}, plateau);
+        mesures[2] = microsecondes(debut);
+
+        jeu.setSilencieux(true);
+        jeu.setNbToursMax(nbToursMax);
+        Random aleatoire = new Random(graine);
+        for (Joueur joueur : jeu.getJoueurs()) {
+            joueur.setStrategie(new StrategieAleatoire(new Random(aleatoire.nextLong())));
+        }
+        debut = System.nanoTime();
+        jeu.run();
+        mesures[3] = microsecondes(debut) / Math.max(1, jeu.getNbTours());
+
+        // le décompte est déjà fait à la fin de la partie, on le refait seul pour le mesurer
+        debut = System.nanoTime();
+        ScoreFinal.calculer(jeu.getJoueurs(), jeu.getEvaluateurDestinations());
+        mesures[4] = microsecondes(debut);
+
+        debut = System.nanoTime();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            jeu.getEvaluateurDestinations().estimerCout(joueur, joueur.getDestinations());
+        }
+        mesures[5] = microsecondes(debut) / jeu.getJoueurs().size();
+        return mesures;
+    }
+
+    private static double microsecondes(long debut) {
+        return (System.nanoTime() - debut) / 1e3;
+    }
+}
@@ -0,0 +1,63 @@
+package fr.umontpellier.iut.bots;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classement Elo de stratégies. Les résultats sont enregistrés au fur et à mesure
+ * que les parties se terminent (depuis n'importe quel thread).
+ */
+public class ClassementElo {
+    /**
+     * Classement initial d'une stratégie
+     */
+    public static final double CLASSEMENT_INITIAL = 1500;
+
+    /**
+     * Coefficient de mise à jour après chaque partie
+     */
+    private final double k;
+    private final Map<String, Double> classements = new LinkedHashMap<>();
+    private final Map<String, Integer> nbParties = new LinkedHashMap<>();
+
+    public ClassementElo(double k) {
+        this.k = k;
+    }
+
+    /**
+     * Enregistre le résultat d'une partie entre deux stratégies
+     *
+     * @param a        la première stratégie
+     * @param b        la deuxième stratégie
+     * @param resultat le résultat de {@code a} : 1 pour une victoire, 0.5 pour une
+     *                 égalité, 0 pour une défaite
+     */
+    public synchronized void enregistrer(String a, String b, double resultat) {
+        double ra = getClassement(a);
+        double rb = getClassement(b);
+        double attendu = 1 / (1 + Math.pow(10, (rb - ra) / 400));
+        classements.put(a, ra + k * (resultat - attendu));
+        classements.put(b, rb - k * (resultat - attendu));
+        nbParties.merge(a, 1, Integer::sum);
+        nbParties.merge(b, 1, Integer::sum);
+    }
+
+    public synchronized double getClassement(String strategie) {
+        return classements.getOrDefault(strategie, CLASSEMENT_INITIAL);
+    }
+
+    /**
+     * @return les stratégies classées de la meilleure à la moins bonne
+     */
+    public synchronized List<String> getStrategies() {
+        List<String> strategies = new ArrayList<>(classements.keySet());
+        strategies.sort((s1, s2) -> Double.compare(classements.get(s2), classements.get(s1)));
+        return strategies;
+    }
+
+    public synchronized int getNbParties(String strategie) {
+        return nbParties.getOrDefault(strategie, 0);
+    }
+}
@@ -0,0 +1,273 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.EvaluateurDestinations;
+import fr.umontpellier.iut.rails.Joueur;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ordonnanceur qui évalue par lots les décisions des bots de nombreuses parties.
+ * <p>
+ * Lorsqu'un bot ({@code StrategieGloutonne}) doit estimer l'intérêt de chaque
+ * route qu'il peut capturer, le thread de sa partie dépose une demande et attend
+ * le résultat. Quelques threads de calcul (en général un par cœur) prennent les
+ * demandes en attente par lots, quelle que soit leur partie, encodent les
+ * positions dans des tableaux contigus (état de chaque route vis-à-vis du
+ * joueur, villes à relier, routes candidates) puis les évaluent à la suite avec
+ * les mêmes tableaux de travail. Avec des milliers de tables, seuls ces threads
+ * calculent : les threads des parties sont endormis pendant l'évaluation, au
+ * lieu de se disputer les cœurs (et leurs caches) pour faire chacun le même
+ * calcul de son côté.
+ * <p>
+ * La position est encodée par le thread de calcul, pendant que le thread de la
+ * partie attend le résultat : l'état du jeu ne change donc pas pendant la
+ * lecture, et il n'est jamais modifié par l'ordonnanceur.
+ */
+public class OrdonnanceurBots {
+    private final int nbThreads;
+    private final int tailleLot;
+    private final BlockingQueue<Demande> demandes = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final LongAdder nbDemandes = new LongAdder();
+    private final LongAdder nbLots = new LongAdder();
+
+    /**
+     * @param nbThreads nombre de threads de calcul
+     * @param tailleLot nombre maximal de demandes évaluées ensemble
+     */
+    public OrdonnanceurBots(int nbThreads, int tailleLot) {
+        this.nbThreads = nbThreads;
+        this.tailleLot = tailleLot;
+    }
+
+    /**
+     * Démarre les threads de calcul
+     */
+    public synchronized void demarrer() {
+        if (!threads.isEmpty()) {
+            return;
+        }
+        for (int t = 0; t < nbThreads; t++) {
+            Thread thread = new Thread(this::traiter, "ordonnanceur-bots-" + t);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Arrête les threads de calcul (les demandes déposées ensuite sont évaluées
+     * par le thread qui les dépose)
+     */
+    public synchronized void arreter() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+    }
+
+    /**
+     * Estime le nombre de wagons nécessaires pour réaliser les destinations d'un
+     * joueur, dans l'état actuel du plateau et après la capture de chacune des
+     * routes candidates. Cette méthode est appelée sur le thread de la partie, qui
+     * attend la fin de l'évaluation.
+     *
+     * @param routes indices (dans {@code Jeu.getRoutes()}) des routes libres que le
+     *               joueur peut capturer
+     * @return un tableau dont le premier élément est le coût actuel, suivi du coût
+     * après la capture de chaque route (dans l'ordre de {@code routes}). Si le coût
+     * actuel est nul ou {@code INATTEIGNABLE}, les routes ne sont pas évaluées et
+     * leur coût est le coût actuel.
+     */
+    public int[] evaluerCaptures(Joueur joueur, int[] routes) {
+        Demande demande = new Demande(joueur, routes);
+        nbDemandes.increment();
+        boolean directe;
+        synchronized (this) {
+            directe = threads.isEmpty();
+            if (!directe) {
+                demandes.add(demande);
+            }
+        }
+        if (directe) {
+            new Lot().evaluer(List.of(demande));
+        }
+        try {
+            return demande.resultat.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Évaluation interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Échec de l'évaluation", e.getCause());
+        }
+    }
+
+    public long getNbDemandes() {
+        return nbDemandes.sum();
+    }
+
+    /**
+     * Nombre de lots évalués par les threads de calcul
+     */
+    public long getNbLots() {
+        return nbLots.sum();
+    }
+
+    /**
+     * Boucle d'un thread de calcul : attend une demande, prend celles qui sont
+     * arrivées en même temps (jusqu'à la taille d'un lot) et les évalue ensemble
+     */
+    private void traiter() {
+        Lot lot = new Lot();
+        List<Demande> enCours = new ArrayList<>(tailleLot);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                enCours.add(demandes.take());
+                demandes.drainTo(enCours, tailleLot - 1);
+                nbLots.increment();
+                lot.evaluer(enCours);
+                enCours.clear();
+            }
+        } catch (InterruptedException e) {
+            // arrêt de l'ordonnanceur
+        }
+        // les demandes déposées avant l'arrêt sont évaluées quand même
+        enCours.clear();
+        demandes.drainTo(enCours);
+        if (!enCours.isEmpty()) {
+            lot.evaluer(enCours);
+        }
+    }
+
+    /**
+     * Décision en attente d'évaluation
+     */
+    private static final class Demande {
+        private final Joueur joueur;
+        private final int[] routes;
+        private final CompletableFuture<int[]> resultat = new CompletableFuture<>();
+
+        private Demande(Joueur joueur, int[] routes) {
+            this.joueur = joueur;
+            this.routes = routes;
+        }
+    }
+
+    /**
+     * Positions d'un lot de demandes, rangées dans des tableaux contigus (un
+     * tableau par information plutôt qu'un objet par position) qui sont réutilisés
+     * d'un lot à l'autre par le même thread de calcul
+     */
+    private static final class Lot {
+        /**
+         * États des routes de toutes les positions, à la suite (voir
+         * {@code EvaluateurDestinations.encoderRoutes})
+         */
+        private byte[] etats = new byte[0];
+        /**
+         * Villes à relier de toutes les positions, à la suite
+         */
+        private int[] terminaux = new int[0];
+        private int[] debutsEtats = new int[0];
+        private int[] debutsTerminaux = new int[0];
+        /**
+         * Nombre de villes à relier de chaque position (-1 si une ville est inconnue)
+         */
+        private int[] nbTerminaux = new int[0];
+        private final EvaluateurDestinations.EspaceCalcul espace = new EvaluateurDestinations.EspaceCalcul(0);
+
+        /**
+         * Évalue toutes les demandes d'un lot. Toutes les demandes sont terminées au
+         * retour, éventuellement en erreur : le thread de calcul survit à une
+         * exception, et les threads des parties n'attendent jamais indéfiniment.
+         */
+        private void evaluer(List<Demande> demandes) {
+            try {
+                encoderEtEvaluer(demandes);
+            } catch (RuntimeException e) {
+                // une erreur pendant l'encodage concerne tout le lot (sans effet sur
+                // les demandes déjà terminées)
+                for (Demande demande : demandes) {
+                    demande.resultat.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void encoderEtEvaluer(List<Demande> demandes) {
+            int n = demandes.size();
+            if (debutsEtats.length < n) {
+                debutsEtats = new int[n];
+                debutsTerminaux = new int[n];
+                nbTerminaux = new int[n];
+            }
+
+            // encodage de toutes les positions
+            int tailleEtats = 0;
+            int tailleTerminaux = 0;
+            for (int p = 0; p < n; p++) {
+                Joueur joueur = demandes.get(p).joueur;
+                debutsEtats[p] = tailleEtats;
+                debutsTerminaux[p] = tailleTerminaux;
+                tailleEtats += joueur.getJeu().getRoutes().size();
+                tailleTerminaux += 2 * joueur.getDestinations().size();
+            }
+            if (etats.length < tailleEtats) {
+                etats = new byte[Math.max(tailleEtats, 2 * etats.length)];
+            }
+            if (terminaux.length < tailleTerminaux) {
+                terminaux = new int[Math.max(tailleTerminaux, 2 * terminaux.length)];
+            }
+            for (int p = 0; p < n; p++) {
+                Joueur joueur = demandes.get(p).joueur;
+                EvaluateurDestinations evaluateur = joueur.getJeu().getEvaluateurDestinations();
+                evaluateur.encoderRoutes(joueur, etats, debutsEtats[p]);
+                nbTerminaux[p] = evaluateur.encoderTerminaux(joueur.getDestinations(), terminaux, debutsTerminaux[p]);
+            }
+
+            // évaluation
+            for (int p = 0; p < n; p++) {
+                Demande demande = demandes.get(p);
+                try {
+                    demande.resultat.complete(evaluer(p, demande));
+                } catch (RuntimeException e) {
+                    demande.resultat.completeExceptionally(e);
+                }
+            }
+        }
+
+        /**
+         * Évalue la capture de chaque route candidate d'une position du lot
+         */
+        private int[] evaluer(int p, Demande demande) {
+            int[] couts = new int[demande.routes.length + 1];
+            if (nbTerminaux[p] < 0) {
+                Arrays.fill(couts, EvaluateurDestinations.INATTEIGNABLE);
+                return couts;
+            }
+            EvaluateurDestinations evaluateur = demande.joueur.getJeu().getEvaluateurDestinations();
+            int debut = debutsEtats[p];
+            couts[0] = evaluateur.estimerCout(etats, debut, terminaux, debutsTerminaux[p], nbTerminaux[p], espace);
+            if (couts[0] == 0 || couts[0] == EvaluateurDestinations.INATTEIGNABLE) {
+                Arrays.fill(couts, couts[0]);
+                return couts;
+            }
+            for (int i = 0; i < demande.routes.length; i++) {
+                // la route est capturée le temps de l'estimation (dans l'encodage seulement)
+                int r = debut + demande.routes[i];
+                byte etat = etats[r];
+                etats[r] = EvaluateurDestinations.POSSEDEE;
+                couts[i + 1] = evaluateur.estimerCout(etats, debut, terminaux, debutsTerminaux[p], nbTerminaux[p],
+                        espace);
+                etats[r] = etat;
+            }
+            return couts;
+        }
+    }
+}
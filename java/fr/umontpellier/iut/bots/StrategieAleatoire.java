@@ -0,0 +1,30 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Strategie;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bot qui choisit uniformément au hasard parmi les choix valides (y compris
+ * passer, lorsque c'est permis). Sert de référence pour les autres stratégies.
+ */
+public class StrategieAleatoire implements Strategie {
+    private final Random aleatoire;
+
+    public StrategieAleatoire(Random aleatoire) {
+        this.aleatoire = aleatoire;
+    }
+
+    @Override
+    public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser) {
+        // un paiement automatique évite de proposer des cartes une par une au hasard
+        if (choix.contains(Joueur.PAIEMENT_AUTOMATIQUE)) {
+            return Joueur.PAIEMENT_AUTOMATIQUE;
+        }
+        int n = choix.size() + (peutPasser ? 1 : 0);
+        int i = aleatoire.nextInt(n);
+        return i < choix.size() ? choix.get(i) : "";
+    }
+}
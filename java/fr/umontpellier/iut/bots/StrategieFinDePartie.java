@@ -0,0 +1,94 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.*;
+
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Bot qui joue le dernier tour de jeu avec {@code SolveurFinDePartie} et laisse
+ * une autre stratégie jouer le reste de la partie (ainsi que les choix qui
+ * suivent l'action du tour, comme les paiements).
+ * <p>
+ * Pendant le dernier tour, les destinations piochées qui ne sont pas déjà
+ * réalisées sont écartées (la moins chère est gardée s'il faut en garder une),
+ * comme le suppose la recherche.
+ */
+public class StrategieFinDePartie implements Strategie {
+    /**
+     * Temps accordé par défaut à la recherche (en millisecondes)
+     */
+    public static final long DUREE_PAR_DEFAUT_MS = 20;
+
+    private final Strategie strategie;
+    private final long dureeMaxMs;
+    private final long graine;
+    /**
+     * Numéro du tour dont l'action a déjà été choisie (les choix suivants du tour
+     * ne sont pas des actions)
+     */
+    private int dernierTourResolu = -1;
+
+    /**
+     * @param strategie  la stratégie utilisée avant le dernier tour
+     * @param dureeMaxMs temps accordé à la recherche à chaque tour
+     * @param graine     graine des tirages des informations cachées
+     */
+    public StrategieFinDePartie(Strategie strategie, long dureeMaxMs, long graine) {
+        this.strategie = strategie;
+        this.dureeMaxMs = dureeMaxMs;
+        this.graine = graine;
+    }
+
+    public StrategieFinDePartie(Strategie strategie) {
+        this(strategie, DUREE_PAR_DEFAUT_MS, 0);
+    }
+
+    @Override
+    public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser) {
+        Jeu jeu = joueur.getJeu();
+        if (jeu.getNbToursRestants() == 0) {
+            return strategie.choisir(joueur, instruction, choix, peutPasser);
+        }
+        if (jeu.getNbTours() != dernierTourResolu) {
+            // premier choix du tour : l'action
+            dernierTourResolu = jeu.getNbTours();
+            SolveurFinDePartie.Coup coup = new SolveurFinDePartie(jeu, joueur, graine ^ jeu.getNbTours())
+                    .resoudre(dureeMaxMs);
+            if (coup != null && (coup.getNom().isEmpty() ? peutPasser : choix.contains(coup.getNom()))) {
+                return coup.getNom();
+            }
+        } else if (instruction.equals(Joueur.INSTRUCTION_DESTINATIONS)) {
+            return choisirDestination(joueur, choix, peutPasser);
+        }
+        return strategie.choisir(joueur, instruction, choix, peutPasser);
+    }
+
+    /**
+     * Écarte la destination non réalisée qui vaut le plus de points (tant qu'il en
+     * reste une autre à garder), et passe sinon
+     */
+    private String choisirDestination(Joueur joueur, List<String> choix, boolean peutPasser) {
+        EvaluateurDestinations evaluateur = joueur.getJeu().getEvaluateurDestinations();
+        String aEcarter = null;
+        int valeurMax = Integer.MIN_VALUE;
+        boolean uneRealisee = false;
+        for (String nom : choix) {
+            Matcher m = StrategieGloutonne.DESTINATION.matcher(nom);
+            if (!m.matches()) {
+                continue;
+            }
+            Destination destination = new Destination(m.group(1), m.group(2), Integer.parseInt(m.group(3)));
+            if (evaluateur.estimerCout(joueur, List.of(destination)) == 0) {
+                uneRealisee = true;
+            } else if (destination.getValeur() > valeurMax) {
+                aEcarter = nom;
+                valeurMax = destination.getValeur();
+            }
+        }
+        if (aEcarter != null && (uneRealisee || choix.size() > 1)) {
+            return aEcarter;
+        }
+        return peutPasser || choix.isEmpty() ? "" : choix.get(0);
+    }
+}
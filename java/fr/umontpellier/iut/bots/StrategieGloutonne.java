@@ -0,0 +1,237 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bot glouton, qui ne regarde qu'un coup à l'avance :
+ * <ul>
+ * <li>il capture la route qui rapproche le plus ses destinations (estimation de
+ * {@code EvaluateurDestinations}), en départageant par les points de la
+ * route ;</li>
+ * <li>si aucune route ne rapproche ses destinations, il pioche des cartes de la
+ * couleur qu'il possède déjà le plus (ou une carte cachée), et capture la route
+ * qui rapporte le plus de points lorsqu'il ne peut plus piocher ;</li>
+ * <li>il écarte les destinations qui coûtent trop de wagons par point, et ne
+ * construit jamais de gare.</li>
+ * </ul>
+ * L'intérêt des routes peut être évalué par un {@code OrdonnanceurBots}, partagé
+ * entre plusieurs parties, plutôt que sur le thread de la partie. Avec un cache
+ * de {@code CheminsDestinations}, seules les routes des plus courts chemins
+ * encore praticables de ses destinations sont évaluées (toutes le sont si le
+ * cache ne couvre pas la position).
+ */
+public class StrategieGloutonne implements Strategie {
+    /**
+     * Format du nom d'une destination ({@code Destination.toString()})
+     */
+    static final Pattern DESTINATION = Pattern.compile("(.+) - (.+) \\((\\d+)\\)");
+    /**
+     * Nombre de wagons par point au-delà duquel une destination est écartée
+     */
+    private static final double COUT_PAR_POINT_MAX = 1.5;
+    /**
+     * Nombre minimal de destinations gardées lors du choix initial
+     */
+    private static final int DESTINATIONS_MIN = 2;
+
+    /**
+     * Ordonnanceur qui évalue les routes ({@code null} si elles sont évaluées sur
+     * le thread de la partie)
+     */
+    private final OrdonnanceurBots ordonnanceur;
+    /**
+     * Cache des plus courts chemins des destinations ({@code null} si toutes les
+     * routes sont évaluées)
+     */
+    private final CheminsDestinations chemins;
+
+    public StrategieGloutonne() {
+        this(null);
+    }
+
+    public StrategieGloutonne(OrdonnanceurBots ordonnanceur) {
+        this(ordonnanceur, null);
+    }
+
+    public StrategieGloutonne(OrdonnanceurBots ordonnanceur, CheminsDestinations chemins) {
+        this.ordonnanceur = ordonnanceur;
+        this.chemins = chemins;
+    }
+
+    @Override
+    public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser) {
+        if (choix.contains(Joueur.PAIEMENT_AUTOMATIQUE)) {
+            return Joueur.PAIEMENT_AUTOMATIQUE;
+        }
+        if (instruction.equals(Joueur.INSTRUCTION_DESTINATIONS)) {
+            return choisirDestination(joueur, choix, peutPasser);
+        }
+        List<Route> routes = new ArrayList<>();
+        List<Route> candidates = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        List<CouleurWagon> cartes = new ArrayList<>();
+        List<Route> routesPlateau = joueur.getJeu().getRoutes();
+        boolean[] utiles = chemins == null ? null
+                : chemins.routesUtiles(joueur.getJeu().getEvaluateurDestinations(), joueur, joueur.getDestinations());
+        for (int r = 0; r < routesPlateau.size(); r++) {
+            if (choix.contains(routesPlateau.get(r).getNom())) {
+                routes.add(routesPlateau.get(r));
+                if (utiles == null || utiles[r]) {
+                    candidates.add(routesPlateau.get(r));
+                    indices.add(r);
+                }
+            }
+        }
+        for (String c : choix) {
+            try {
+                cartes.add(CouleurWagon.valueOf(c));
+            } catch (IllegalArgumentException e) {
+                // pas une carte
+            }
+        }
+
+        Route route = meilleureRoute(joueur, candidates, indices);
+        if (route != null) {
+            return route.getNom();
+        }
+        CouleurWagon carte = meilleureCarte(joueur, cartes);
+        if (carte != null) {
+            return carte.name();
+        }
+        Route plusLongue = null;
+        for (Route r : routes) {
+            if (plusLongue == null || r.getPoints() > plusLongue.getPoints()) {
+                plusLongue = r;
+            }
+        }
+        if (plusLongue != null) {
+            return plusLongue.getNom();
+        }
+        return peutPasser ? "" : choix.get(0);
+    }
+
+    /**
+     * Renvoie la route qui diminue le plus le nombre de wagons nécessaires pour
+     * réaliser les destinations du joueur (ou {@code null} si aucune ne le diminue)
+     */
+    private Route meilleureRoute(Joueur joueur, List<Route> routes, List<Integer> indices) {
+        if (routes.isEmpty()) {
+            return null;
+        }
+        int[] couts;
+        if (ordonnanceur != null) {
+            couts = ordonnanceur.evaluerCaptures(joueur, indices.stream().mapToInt(Integer::intValue).toArray());
+        } else {
+            couts = evaluerCaptures(joueur, indices);
+        }
+        int coutActuel = couts[0];
+        if (coutActuel == 0 || coutActuel == EvaluateurDestinations.INATTEIGNABLE) {
+            return null;
+        }
+        Route meilleure = null;
+        int meilleurGain = 0;
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            int cout = couts[i + 1];
+            int gain = cout == EvaluateurDestinations.INATTEIGNABLE ? 0 : coutActuel - cout;
+            if (gain > meilleurGain || (gain == meilleurGain && gain > 0
+                    && route.getPoints() > meilleure.getPoints())) {
+                meilleurGain = gain;
+                meilleure = route;
+            }
+        }
+        return meilleure;
+    }
+
+    /**
+     * Estime le coût des destinations du joueur avant et après la capture de
+     * chaque route, sur le thread de la partie (même résultat que
+     * {@code OrdonnanceurBots.evaluerCaptures}, sans modifier le plateau)
+     */
+    private int[] evaluerCaptures(Joueur joueur, List<Integer> indices) {
+        EvaluateurDestinations evaluateur = joueur.getJeu().getEvaluateurDestinations();
+        int[] couts = new int[indices.size() + 1];
+        int[] terminaux = new int[2 * joueur.getDestinations().size()];
+        int nbTerminaux = evaluateur.encoderTerminaux(joueur.getDestinations(), terminaux, 0);
+        if (nbTerminaux < 0) {
+            Arrays.fill(couts, EvaluateurDestinations.INATTEIGNABLE);
+            return couts;
+        }
+        byte[] etats = evaluateur.encoderRoutes(joueur, new byte[joueur.getJeu().getRoutes().size()], 0);
+        EvaluateurDestinations.EspaceCalcul espace = new EvaluateurDestinations.EspaceCalcul(0);
+        couts[0] = evaluateur.estimerCout(etats, 0, terminaux, 0, nbTerminaux, espace);
+        if (couts[0] == 0 || couts[0] == EvaluateurDestinations.INATTEIGNABLE) {
+            return couts;
+        }
+        for (int i = 0; i < indices.size(); i++) {
+            // la route est capturée le temps de l'estimation (dans l'encodage seulement)
+            int r = indices.get(i);
+            byte etat = etats[r];
+            etats[r] = EvaluateurDestinations.POSSEDEE;
+            couts[i + 1] = evaluateur.estimerCout(etats, 0, terminaux, 0, nbTerminaux, espace);
+            etats[r] = etat;
+        }
+        return couts;
+    }
+
+    /**
+     * Choisit la carte visible de la couleur que le joueur a le plus en main, ou la
+     * pioche cachée (GRIS), et ne prend une locomotive visible qu'en dernier recours
+     *
+     * @return la carte à piocher, ou {@code null} si aucune carte ne peut être piochée
+     */
+    private CouleurWagon meilleureCarte(Joueur joueur, List<CouleurWagon> cartes) {
+        int[] main = joueur.getCompteursCartesWagon();
+        CouleurWagon meilleure = null;
+        for (CouleurWagon c : cartes) {
+            if (c == CouleurWagon.GRIS || c == CouleurWagon.LOCOMOTIVE) {
+                continue;
+            }
+            if (main[c.ordinal()] > 0 && (meilleure == null || main[c.ordinal()] > main[meilleure.ordinal()])) {
+                meilleure = c;
+            }
+        }
+        if (meilleure == null && cartes.contains(CouleurWagon.GRIS)) {
+            meilleure = CouleurWagon.GRIS;
+        }
+        if (meilleure == null && !cartes.isEmpty()) {
+            meilleure = cartes.contains(CouleurWagon.LOCOMOTIVE) ? CouleurWagon.LOCOMOTIVE : cartes.get(0);
+        }
+        return meilleure;
+    }
+
+    /**
+     * Écarte la destination qui coûte le plus de wagons par point si ce coût est
+     * trop élevé, et passe sinon
+     */
+    private String choisirDestination(Joueur joueur, List<String> choix, boolean peutPasser) {
+        EvaluateurDestinations evaluateur = joueur.getJeu().getEvaluateurDestinations();
+        String pire = null;
+        double pireCout = 0;
+        for (String nom : choix) {
+            Matcher m = DESTINATION.matcher(nom);
+            if (!m.matches()) {
+                continue;
+            }
+            Destination destination = new Destination(m.group(1), m.group(2), Integer.parseInt(m.group(3)));
+            int cout = evaluateur.estimerCout(joueur, List.of(destination));
+            double coutParPoint = cout == EvaluateurDestinations.INATTEIGNABLE
+                    ? Double.POSITIVE_INFINITY
+                    : (double) cout / destination.getValeur();
+            if (pire == null || coutParPoint > pireCout) {
+                pire = nom;
+                pireCout = coutParPoint;
+            }
+        }
+        if (peutPasser && (pireCout <= COUT_PAR_POINT_MAX || choix.size() <= DESTINATIONS_MIN)) {
+            return "";
+        }
+        return pire;
+    }
+}
@@ -0,0 +1,197 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.analyse.ExportColonnes;
+import fr.umontpellier.iut.rails.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Tournoi entre stratégies de bots.
+ * <p>
+ * Chaque ronde fait jouer toutes les paires de stratégies (toutes ronde), chaque
+ * paire jouant deux parties pour que chaque stratégie commence une fois. Les
+ * parties sont réparties sur tous les cœurs. Chaque résultat est écrit dans un
+ * fichier CSV dès que la partie se termine (rien n'est gardé en mémoire) et met
+ * à jour le classement Elo des stratégies. À la fin, le programme affiche le
+ * classement et le nombre de parties jouées par seconde.
+ * <p>
+ * Les parties peuvent aussi être exportées au format de {@code ExportColonnes}
+ * pour être analysées ensuite (un nom de fichier {@code -} désactive l'export).
+ * Avec un fichier de {@code CheminsDestinations}, le tournoi ajoute un bot
+ * glouton qui n'évalue que les routes des plus courts chemins de ses
+ * destinations (le fichier est créé s'il n'existe pas).
+ * <p>
+ * Utilisation : {@code Tournoi [nbRondes] [fichier CSV] [nbThreads] [nbToursMax] [fichier d'export]
+ * [fichier de chemins]}
+ */
+public class Tournoi {
+    /**
+     * En-tête du fichier de résultats
+     */
+    public static final String EN_TETE = "partie,strategie1,strategie2,score1,score2,resultat1,tours,duree_ms,elo1,elo2";
+
+    /**
+     * Stratégies disponibles, indexées par nom (chaque partie crée ses propres
+     * instances)
+     */
+    private final Map<String, Supplier<Strategie>> strategies;
+    private final ClassementElo classement = new ClassementElo(16);
+    private final BufferedWriter sortie;
+    private final int nbToursMax;
+    /**
+     * Export des parties terminées ({@code null} si les parties ne sont pas exportées)
+     */
+    private ExportColonnes export;
+    private long nbParties;
+
+    public Tournoi(Map<String, Supplier<Strategie>> strategies, BufferedWriter sortie, int nbToursMax) {
+        this.strategies = strategies;
+        this.sortie = sortie;
+        this.nbToursMax = nbToursMax;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nbRondes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        Path fichier = Path.of(args.length > 1 ? args[1] : "tournoi.csv");
+        int nbThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int nbToursMax = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        Map<String, Supplier<Strategie>> strategies = new LinkedHashMap<>();
+        strategies.put("aleatoire", () -> new StrategieAleatoire(new Random(ThreadLocalRandom.current().nextLong())));
+        strategies.put("glouton", StrategieGloutonne::new);
+        if (args.length > 5) {
+            Plateau plateau = Plateau.makePlateauEurope();
+            List<Destination> destinations = new ArrayList<>(plateau.getDestinations());
+            destinations.addAll(plateau.getDestinationsLongues());
+            CheminsDestinations chemins = CheminsDestinations.ouvrir(Path.of(args[5]),
+                    new EvaluateurDestinations(plateau.getVilles(), plateau.getRoutes()), destinations,
+                    CheminsDestinations.K_PAR_DEFAUT);
+            strategies.put("glouton-chemins", () -> new StrategieGloutonne(null, chemins));
+        }
+
+        try (BufferedWriter sortie = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8)) {
+            Tournoi tournoi = new Tournoi(strategies, sortie, nbToursMax);
+            if (args.length > 4 && !args[4].equals("-")) {
+                Plateau plateau = Plateau.makePlateauEurope();
+                tournoi.setExport(new ExportColonnes(Path.of(args[4]), plateau.getVilles(), plateau.getRoutes()));
+            }
+            long debut = System.nanoTime();
+            tournoi.jouer(nbRondes, nbThreads);
+            double secondes = (System.nanoTime() - debut) / 1e9;
+            tournoi.afficherClassement(secondes);
+            if (tournoi.export != null) {
+                tournoi.export.close();
+            }
+        }
+    }
+
+    /**
+     * Exporte les parties terminées (au fur et à mesure) dans un fichier par colonnes
+     */
+    public void setExport(ExportColonnes export) {
+        this.export = export;
+    }
+
+    /**
+     * Joue toutes les rondes du tournoi
+     *
+     * @param nbRondes  nombre de rondes (chaque ronde fait jouer deux parties à
+     *                  chaque paire de stratégies)
+     * @param nbThreads nombre de parties jouées en parallèle
+     */
+    public void jouer(int nbRondes, int nbThreads) throws Exception {
+        ecrire(EN_TETE);
+        List<String> noms = new ArrayList<>(strategies.keySet());
+        ExecutorService executeur = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<?>> parties = new ArrayList<>();
+            int numero = 0;
+            for (int ronde = 0; ronde < nbRondes; ronde++) {
+                for (String a : noms) {
+                    for (String b : noms) {
+                        if (!a.equals(b)) {
+                            int partie = numero++;
+                            parties.add(executeur.submit(() -> jouerPartie(partie, a, b)));
+                        }
+                    }
+                }
+            }
+            for (Future<?> partie : parties) {
+                partie.get();
+            }
+        } finally {
+            executeur.shutdown();
+        }
+    }
+
+    /**
+     * Joue une partie entre deux stratégies et enregistre son résultat
+     */
+    private void jouerPartie(int numero, String strategie1, String strategie2) {
+        long debut = System.nanoTime();
+        Jeu jeu = new Jeu(new String[]{strategie1 + "-1", strategie2 + "-2"});
+        jeu.setSilencieux(true);
+        jeu.setNbToursMax(nbToursMax);
+        List<Joueur> joueurs = jeu.getJoueurs();
+        joueurs.get(0).setStrategie(strategies.get(strategie1).get());
+        joueurs.get(1).setStrategie(strategies.get(strategie2).get());
+        jeu.run();
+        long dureeMs = (System.nanoTime() - debut) / 1_000_000;
+
+        List<ScoreFinal> scores = jeu.getScoresFinaux();
+        int score1 = scores.get(0).getTotal();
+        int score2 = scores.get(1).getTotal();
+        double resultat = score1 > score2 ? 1 : score1 == score2 ? 0.5 : 0;
+        synchronized (this) {
+            classement.enregistrer(strategie1, strategie2, resultat);
+            nbParties++;
+            ecrire(String.format(Locale.ROOT, "%d,%s,%s,%d,%d,%.1f,%d,%d,%.1f,%.1f", numero, strategie1, strategie2,
+                    score1, score2, resultat, jeu.getNbTours(), dureeMs, classement.getClassement(strategie1),
+                    classement.getClassement(strategie2)));
+        }
+        if (export != null) {
+            try {
+                export.ajouter(jeu);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Écrit une ligne dans le fichier de résultats (et la transmet immédiatement
+     * au système, pour pouvoir suivre le tournoi pendant qu'il se déroule)
+     */
+    private synchronized void ecrire(String ligne) {
+        try {
+            sortie.write(ligne);
+            sortie.newLine();
+            sortie.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public ClassementElo getClassement() {
+        return classement;
+    }
+
+    private void afficherClassement(double secondes) {
+        System.out.printf("%d parties en %.1f s (%.1f parties/s)%n", nbParties, secondes, nbParties / secondes);
+        for (String strategie : classement.getStrategies()) {
+            System.out.printf(Locale.ROOT, "%-12s %7.1f (%d parties)%n", strategie,
+                    classement.getClassement(strategie), classement.getNbParties(strategie));
+        }
+    }
+}
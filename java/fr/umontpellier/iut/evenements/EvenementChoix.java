@@ -0,0 +1,42 @@
+package fr.umontpellier.iut.evenements;
+
+import jdk.jfr.*;
+
+/**
+ * Événement JFR couvrant l'attente d'un choix dans {@code Joueur.choisir} (de
+ * l'envoi du prompt jusqu'à la réception d'une entrée valide)
+ */
+@Name("fr.umontpellier.iut.Choix")
+@Label("Choix d'un joueur")
+@Category({"Rails", "Partie"})
+@StackTrace(false)
+public class EvenementChoix extends Event {
+    @Label("Joueur")
+    private final String joueur;
+    @Label("Instruction")
+    private final String instruction;
+    @Label("Nombre de choix proposés")
+    private final int nbChoix;
+    /**
+     * Vrai si le choix est fait par la stratégie du joueur (bot), faux s'il est
+     * lu dans la file d'entrées
+     */
+    @Label("Automatique")
+    private final boolean automatique;
+    @Label("Entrées refusées")
+    private int nbRejets;
+
+    public EvenementChoix(String joueur, String instruction, int nbChoix, boolean automatique) {
+        this.joueur = joueur;
+        this.instruction = instruction;
+        this.nbChoix = nbChoix;
+        this.automatique = automatique;
+    }
+
+    /**
+     * Compte une entrée invalide (le joueur doit recommencer)
+     */
+    public void ajouterRejet() {
+        nbRejets++;
+    }
+}
@@ -0,0 +1,53 @@
+package fr.umontpellier.iut.evenements;
+
+import jdk.jfr.*;
+
+/**
+ * Événement JFR couvrant l'envoi de l'état d'une partie à une session (dans
+ * {@code GameServer.setEtatJeu} et à la connexion d'un client)
+ */
+@Name("fr.umontpellier.iut.Envoi")
+@Label("Envoi de l'état")
+@Category({"Rails", "Serveur"})
+@StackTrace(false)
+public class EvenementEnvoi extends Event {
+    @Label("Table")
+    private final String table;
+    @Label("Session")
+    private final String session;
+    /**
+     * Siège de la session, -1 pour un spectateur, -2 pour une session qui suit le
+     * joueur courant
+     */
+    @Label("Rôle")
+    private final int role;
+    @Label("Binaire")
+    private final boolean binaire;
+    @Label("Version de l'état")
+    private final long version;
+    @Label("Taille")
+    @DataAmount
+    private long taille;
+
+    public EvenementEnvoi(String table, String session, Integer role, boolean binaire, long version) {
+        this.table = table;
+        this.session = session;
+        this.role = role == null ? -2 : role;
+        this.binaire = binaire;
+        this.version = version;
+    }
+
+    public void setTaille(long taille) {
+        this.taille = taille;
+    }
+
+    /**
+     * Donne comme taille celle d'un message texte encodé en UTF-8 (calculée
+     * seulement si l'événement est activé)
+     */
+    public void setTaille(String texte) {
+        if (isEnabled()) {
+            taille = EvenementPrompt.tailleUtf8(texte);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package fr.umontpellier.iut.evenements;
+
+import jdk.jfr.*;
+
+/**
+ * Événement JFR émis lorsque les cartes wagon sont remises en jeu : la défausse
+ * qui remplace la pioche vide, ou les cartes visibles remplacées parce qu'elles
+ * contiennent 3 locomotives
+ */
+@Name("fr.umontpellier.iut.Melange")
+@Label("Remise en jeu des cartes wagon")
+@Category({"Rails", "Partie"})
+@StackTrace(false)
+public class EvenementMelange extends Event {
+    public static final String PIOCHE_VIDE = "pioche vide";
+    public static final String TROIS_LOCOMOTIVES = "trois locomotives";
+
+    @Label("Cause")
+    private final String cause;
+    @Label("Nombre de cartes")
+    private final int nbCartes;
+
+    public EvenementMelange(String cause, int nbCartes) {
+        this.cause = cause;
+        this.nbCartes = nbCartes;
+    }
+}
@@ -0,0 +1,81 @@
+package fr.umontpellier.iut.evenements;
+
+import jdk.jfr.*;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Événement JFR couvrant la construction et la sérialisation de l'état d'une
+ * partie dans {@code Jeu.prompt} (toutes les vues JSON ; les vues binaires, qui
+ * sont sinon encodées à la demande, ne le sont ici que si l'événement est activé)
+ */
+@Name("fr.umontpellier.iut.Prompt")
+@Label("Construction de l'état")
+@Category({"Rails", "Serveur"})
+@StackTrace(false)
+public class EvenementPrompt extends Event {
+    @Label("Joueur courant")
+    private final String joueur;
+    @Label("Instruction")
+    private final String instruction;
+    @Label("Version de l'état")
+    private long version;
+    @Label("Nombre de vues")
+    private int nbVues;
+    /**
+     * Taille totale des vues JSON (encodées en UTF-8)
+     */
+    @Label("Taille JSON")
+    @DataAmount
+    private long tailleJson;
+    /**
+     * Taille totale des vues binaires (incrémentales et complètes)
+     */
+    @Label("Taille binaire")
+    @DataAmount
+    private long tailleBinaire;
+
+    public EvenementPrompt(String joueur, String instruction) {
+        this.joueur = joueur;
+        this.instruction = instruction;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Compte une vue JSON (sa taille n'est calculée que si l'événement est activé)
+     */
+    public void ajouterVue(String json) {
+        nbVues++;
+        if (isEnabled()) {
+            tailleJson += tailleUtf8(json);
+        }
+    }
+
+    public void ajouterBinaire(ByteBuffer binaire) {
+        tailleBinaire += binaire.remaining();
+    }
+
+    /**
+     * Nombre d'octets d'une chaîne encodée en UTF-8 (sans l'encoder)
+     */
+    static long tailleUtf8(String chaine) {
+        long taille = 0;
+        for (int i = 0; i < chaine.length(); i++) {
+            char c = chaine.charAt(i);
+            if (c < 0x80) {
+                taille++;
+            } else if (c < 0x800) {
+                taille += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                taille += 4;
+                i++;
+            } else {
+                taille += 3;
+            }
+        }
+        return taille;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.umontpellier.iut.evenements;
+
+import jdk.jfr.*;
+
+/**
+ * Événement JFR couvrant le tour d'un joueur dans {@code Jeu.run()} (du début
+ * du tour jusqu'à sa fin)
+ */
+@Name("fr.umontpellier.iut.Tour")
+@Label("Tour de jeu")
+@Category({"Rails", "Partie"})
+@StackTrace(false)
+public class EvenementTour extends Event {
+    @Label("Joueur")
+    private final String joueur;
+    @Label("Numéro du tour")
+    private final int tour;
+    /**
+     * Phase de la partie : choix des destinations initiales, partie ou dernier tour
+     */
+    @Label("Phase")
+    private final String phase;
+
+    public EvenementTour(String joueur, int tour, String phase) {
+        this.joueur = joueur;
+        this.tour = tour;
+        this.phase = phase;
+    }
+}
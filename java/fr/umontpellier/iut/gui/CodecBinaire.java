@@ -0,0 +1,330 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.rails.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Format binaire compact de l'état de la partie, proposé en alternative au JSON
+ * aux clients qui le demandent ({@code ?format=binaire}).
+ * <p>
+ * Les noms des villes et des routes ne sont transmis qu'une fois, dans une trame
+ * "plateau" envoyée à la connexion. Les trames d'état désignent ensuite villes et
+ * routes par leur position dans ces tables :
+ * <ul>
+ * <li>le propriétaire de chaque route et de chaque ville tient sur 3 bits
+ * (0 si libre, 1 + l'indice de la couleur du joueur sinon) ;</li>
+ * <li>les piles de cartes sont décrites par le nombre de cartes de chaque couleur ;</li>
+ * <li>tous les entiers sont codés en varint (7 bits par octet) ;</li>
+ * <li>seules les entrées du log ajoutées depuis la trame précédente sont
+ * transmises, sauf dans les trames complètes envoyées à la connexion ;</li>
+ * <li>le joueur qui regarde reçoit aussi, pendant qu'il choisit des
+ * destinations, le nombre de wagons estimé pour celles qu'il envisage de garder
+ * (0 hors de ce choix, 1 si elles ne peuvent plus être réalisées, 2 + le nombre
+ * de wagons sinon).</li>
+ * </ul>
+ */
+public class CodecBinaire {
+    /**
+     * Premier octet d'une trame décrivant le plateau (noms des villes et des routes)
+     */
+    public static final byte TRAME_PLATEAU = 'P';
+    /**
+     * Premier octet d'une trame d'état
+     */
+    public static final byte TRAME_ETAT = 'E';
+    /**
+     * Version du format
+     */
+    public static final byte VERSION_FORMAT = 2;
+
+    private static final CouleurWagon[] COULEURS = CouleurWagon.values();
+
+    /**
+     * Encode la table des villes et des routes du plateau (à envoyer une seule fois
+     * à chaque client binaire, avant toute trame d'état)
+     */
+    public static byte[] encoderPlateau(List<Ville> villes, List<Route> routes) {
+        Sortie sortie = new Sortie();
+        sortie.octet(TRAME_PLATEAU);
+        sortie.octet(VERSION_FORMAT);
+        sortie.varint(villes.size());
+        for (Ville ville : villes) {
+            sortie.chaine(ville.getNom());
+        }
+        sortie.varint(routes.size());
+        for (Route route : routes) {
+            sortie.chaine(route.getNom());
+        }
+        return sortie.toByteArray();
+    }
+
+    /**
+     * Relève l'état de la partie nécessaire à l'encodage des trames d'état. Les
+     * trames sont ensuite encodées à partir de l'instantané (voir
+     * {@code Instantane.encoder}), éventuellement plus tard et depuis un autre
+     * thread que celui de la partie.
+     *
+     * @param jeu         la partie
+     * @param version     numéro de version de l'état
+     * @param instruction l'instruction du prompt en cours
+     * @param boutons     les boutons du prompt en cours (transmis seulement au
+     *                    siège du joueur courant : ils peuvent montrer ses
+     *                    destinations)
+     * @param peutPasser  indique si le joueur courant peut passer
+     * @param premierLog  indice de la première entrée du log à transmettre dans les
+     *                    trames qui ne sont pas complètes
+     * @return l'instantané
+     */
+    public static Instantane capturer(Jeu jeu, long version, String instruction, Collection<String> boutons,
+                                      boolean peutPasser, int premierLog) {
+        return new Instantane(jeu, version, instruction, boutons, peutPasser, premierLog);
+    }
+
+    private static int codeProprietaire(Joueur proprietaire) {
+        return proprietaire == null ? 0 : 1 + proprietaire.getCouleur().ordinal();
+    }
+
+    /**
+     * État de la partie à une version donnée, relevé au moment du prompt, à partir
+     * duquel sont encodées les trames d'état de chaque siège
+     */
+    public static class Instantane {
+        private final long version;
+        private final int siegeCourant;
+        private final String instruction;
+        private final List<String> boutons;
+        private final boolean peutPasser;
+        /**
+         * Propriétaire de chaque route puis de chaque ville (voir {@code codeProprietaire})
+         */
+        private final int[] proprietaires;
+        private final int nbRoutes;
+        private final int taillePileCartesWagon;
+        private final int taillePileDestinations;
+        private final int[] defausse;
+        private final int[] visibles;
+        private final String[] noms;
+        private final int[] couleurs;
+        private final int[] scores;
+        private final int[] nbGares;
+        private final int[] nbWagons;
+        /**
+         * Nombre de cartes wagon de chaque couleur dans la main de chaque joueur
+         */
+        private final int[][] cartes;
+        private final int[][] cartesPosees;
+        private final List<List<Destination>> destinations;
+        /**
+         * Coût estimé des destinations envisagées par chaque joueur (voir
+         * {@code Joueur.getCoutDestinationsEnvisagees})
+         */
+        private final int[] coutsDestinations;
+        private final List<String> log;
+        private final int premierLog;
+
+        private Instantane(Jeu jeu, long version, String instruction, Collection<String> boutons,
+                           boolean peutPasser, int premierLog) {
+            List<Joueur> joueurs = jeu.getJoueurs();
+            this.version = version;
+            this.siegeCourant = joueurs.indexOf(jeu.getJoueurCourant());
+            this.instruction = instruction;
+            this.boutons = List.copyOf(boutons);
+            this.peutPasser = peutPasser;
+
+            List<Route> routes = jeu.getRoutes();
+            List<Ville> villes = jeu.getVilles();
+            nbRoutes = routes.size();
+            proprietaires = new int[routes.size() + villes.size()];
+            for (int i = 0; i < routes.size(); i++) {
+                proprietaires[i] = codeProprietaire(routes.get(i).getProprietaire());
+            }
+            for (int i = 0; i < villes.size(); i++) {
+                proprietaires[nbRoutes + i] = codeProprietaire(villes.get(i).getProprietaire());
+            }
+
+            taillePileCartesWagon = jeu.getPileCartesWagon().size();
+            taillePileDestinations = jeu.getPileDestinations().size();
+            defausse = Paiement.compter(jeu.getDefausseCartesWagon());
+            visibles = Paiement.compter(jeu.getCartesWagonVisibles());
+
+            int n = joueurs.size();
+            noms = new String[n];
+            couleurs = new int[n];
+            scores = new int[n];
+            nbGares = new int[n];
+            nbWagons = new int[n];
+            cartes = new int[n][];
+            cartesPosees = new int[n][];
+            destinations = new ArrayList<>(n);
+            coutsDestinations = new int[n];
+            for (int i = 0; i < n; i++) {
+                Joueur joueur = joueurs.get(i);
+                noms[i] = joueur.getNom();
+                couleurs[i] = joueur.getCouleur().ordinal();
+                scores[i] = joueur.getScore();
+                nbGares[i] = joueur.getNbGares();
+                nbWagons[i] = joueur.getNbWagons();
+                cartes[i] = Paiement.compter(joueur.getCartesWagon());
+                cartesPosees[i] = Paiement.compter(joueur.getCartesWagonPosees());
+                destinations.add(List.copyOf(joueur.getDestinations()));
+                coutsDestinations[i] = joueur.getCoutDestinationsEnvisagees();
+            }
+            log = List.copyOf(jeu.getLog());
+            this.premierLog = premierLog;
+        }
+
+        public int getNbJoueurs() {
+            return noms.length;
+        }
+
+        /**
+         * Encode l'état tel que le voit un siège
+         *
+         * @param siege   le siège qui regarde (-1 pour la vue publique)
+         * @param complet si vrai, la trame contient le log complet (sinon seulement
+         *                les entrées ajoutées depuis la trame précédente)
+         * @return la trame encodée
+         */
+        public byte[] encoder(int siege, boolean complet) {
+            Sortie sortie = new Sortie();
+            sortie.octet(TRAME_ETAT);
+            sortie.octet(VERSION_FORMAT);
+            sortie.varint(version);
+            sortie.varint(siege + 1);
+            sortie.varint(siegeCourant);
+
+            // prompt
+            sortie.chaine(instruction);
+            List<String> boutonsSiege = siege >= 0 && siege == siegeCourant ? boutons : List.of();
+            sortie.varint(boutonsSiege.size());
+            for (String bouton : boutonsSiege) {
+                sortie.chaine(bouton);
+            }
+            sortie.octet(peutPasser ? 1 : 0);
+
+            // propriétaires des routes et des villes (3 bits chacun)
+            for (int proprietaire : proprietaires) {
+                sortie.bits(proprietaire, 3);
+            }
+            sortie.alignerOctet();
+
+            // piles
+            sortie.varint(taillePileCartesWagon);
+            sortie.varint(taillePileDestinations);
+            sortie.compteurs(defausse);
+            sortie.compteurs(visibles);
+
+            // joueurs
+            sortie.varint(noms.length);
+            for (int i = 0; i < noms.length; i++) {
+                sortie.chaine(noms[i]);
+                sortie.octet(couleurs[i]);
+                sortie.zigzag(scores[i]);
+                sortie.varint(nbGares[i]);
+                sortie.varint(nbWagons[i]);
+                if (i == siege) {
+                    sortie.octet(1);
+                    sortie.compteurs(cartes[i]);
+                    sortie.varint(destinations.get(i).size());
+                    for (Destination destination : destinations.get(i)) {
+                        sortie.chaine(destination.getVille1());
+                        sortie.chaine(destination.getVille2());
+                        sortie.varint(destination.getValeur());
+                    }
+                    int cout = coutsDestinations[i];
+                    sortie.varint(cout < 0 ? 0 : cout == EvaluateurDestinations.INATTEIGNABLE ? 1 : cout + 2L);
+                } else {
+                    sortie.octet(0);
+                    int nbCartes = 0;
+                    for (int nb : cartes[i]) {
+                        nbCartes += nb;
+                    }
+                    sortie.varint(nbCartes);
+                    sortie.varint(destinations.get(i).size());
+                }
+                sortie.compteurs(cartesPosees[i]);
+            }
+
+            // log (seulement les nouvelles entrées)
+            int debut = complet ? 0 : premierLog;
+            sortie.varint(log.size());
+            sortie.varint(debut);
+            for (int i = debut; i < log.size(); i++) {
+                sortie.chaine(log.get(i));
+            }
+            return sortie.toByteArray();
+        }
+    }
+
+    /**
+     * Tampon d'écriture pour les trames binaires (octets, varints et champs de bits)
+     */
+    private static class Sortie extends ByteArrayOutputStream {
+        /**
+         * Bits en attente d'écriture (pour les champs de bits)
+         */
+        private int bitsEnAttente;
+        /**
+         * Nombre de bits en attente
+         */
+        private int nbBitsEnAttente;
+
+        Sortie() {
+            super(256);
+        }
+
+        void octet(int b) {
+            write(b);
+        }
+
+        void varint(long valeur) {
+            while ((valeur & ~0x7FL) != 0) {
+                write((int) ((valeur & 0x7F) | 0x80));
+                valeur >>>= 7;
+            }
+            write((int) valeur);
+        }
+
+        void zigzag(int valeur) {
+            varint((valeur << 1) ^ (valeur >> 31));
+        }
+
+        void chaine(String s) {
+            byte[] octets = s.getBytes(StandardCharsets.UTF_8);
+            varint(octets.length);
+            write(octets, 0, octets.length);
+        }
+
+        /**
+         * Écrit le nombre de cartes de chaque couleur
+         */
+        void compteurs(int[] compteurs) {
+            for (int n : compteurs) {
+                varint(n);
+            }
+        }
+
+        void bits(int valeur, int nbBits) {
+            bitsEnAttente |= valeur << nbBitsEnAttente;
+            nbBitsEnAttente += nbBits;
+            while (nbBitsEnAttente >= 8) {
+                write(bitsEnAttente & 0xFF);
+                bitsEnAttente >>>= 8;
+                nbBitsEnAttente -= 8;
+            }
+        }
+
+        void alignerOctet() {
+            if (nbBitsEnAttente > 0) {
+                write(bitsEnAttente & 0xFF);
+            }
+            bitsEnAttente = 0;
+            nbBitsEnAttente = 0;
+        }
+    }
+}
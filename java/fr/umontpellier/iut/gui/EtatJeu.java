@@ -0,0 +1,132 @@
+package fr.umontpellier.iut.gui;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Description de l'état d'une partie à une version donnée, telle qu'elle est
+ * envoyée aux clients.
+ * <p>
+ * Chaque vue distincte (une par siège, plus une vue publique pour les
+ * spectateurs) est sérialisée une seule fois par version : toutes les sessions
+ * qui partagent une même vue reçoivent exactement la même chaîne (ou les mêmes
+ * octets pour les clients qui utilisent le format binaire). Les vues binaires ne
+ * sont encodées qu'à la première demande, et seulement si l'état de la partie a
+ * été relevé pour elles (quand la table a des clients binaires, voir
+ * {@code aDesVuesBinaires}).
+ */
+public class EtatJeu {
+    /**
+     * État initial, envoyé aux clients qui se connectent avant le premier prompt
+     */
+    public static final EtatJeu VIDE = new EtatJeu(0, new String[0], "", null, -1);
+
+    /**
+     * Numéro de version de l'état (incrémenté à chaque prompt)
+     */
+    private final long version;
+    /**
+     * Vue de l'état pour chaque siège (le joueur voit ses propres cartes et
+     * destinations, mais seulement le nombre de celles des adversaires)
+     */
+    private final String[] vuesSieges;
+    /**
+     * Vue de l'état pour les spectateurs (aucune information cachée)
+     */
+    private final String vuePublique;
+    /**
+     * État relevé au moment du prompt, à partir duquel sont encodées les vues
+     * binaires ({@code null} pour l'état initial et si la table n'avait aucun
+     * client binaire)
+     */
+    private final CodecBinaire.Instantane instantane;
+    /**
+     * Vues binaires déjà encodées (deux par vue : sans puis avec le log complet,
+     * la vue publique en premier). La plupart des tables n'ont aucun client
+     * binaire : chaque vue n'est encodée que la première fois qu'elle est demandée.
+     */
+    private final byte[][] binaires;
+    /**
+     * Siège du joueur courant
+     */
+    private final int siegeCourant;
+
+    public EtatJeu(long version, String[] vuesSieges, String vuePublique, CodecBinaire.Instantane instantane,
+                   int siegeCourant) {
+        this.version = version;
+        this.vuesSieges = vuesSieges;
+        this.vuePublique = vuePublique;
+        this.instantane = instantane;
+        this.binaires = new byte[2 * (vuesSieges.length + 1)][];
+        this.siegeCourant = siegeCourant;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSiegeCourant() {
+        return siegeCourant;
+    }
+
+    public String getVuePublique() {
+        return vuePublique;
+    }
+
+    /**
+     * Renvoie la vue correspondant à un rôle de session
+     *
+     * @param siege le siège de la session, {@code GameServer.SPECTATEUR} pour un
+     *              spectateur, ou {@code null} pour une session "partagée" qui suit
+     *              le joueur courant (seulement sur une table jouée sur un seul
+     *              écran : {@code Table} donne sinon la vue publique)
+     * @return la description sérialisée de l'état pour ce rôle
+     */
+    public String getVue(Integer siege) {
+        int s = siege(siege);
+        return s < 0 ? vuePublique : vuesSieges[s];
+    }
+
+    /**
+     * Indique si l'état a été relevé pour les vues binaires (sinon
+     * {@code getVueBinaire} renvoie une trame vide)
+     */
+    public boolean aDesVuesBinaires() {
+        return instantane != null;
+    }
+
+    /**
+     * Renvoie la vue binaire correspondant à un rôle de session. Le tampon renvoyé
+     * est une vue en lecture seule sur des octets partagés par toutes les sessions
+     * du même rôle.
+     *
+     * @param siege   le rôle de la session (voir {@code getVue})
+     * @param complet si vrai, la trame contient le log complet (à utiliser pour la
+     *                première trame envoyée à un client)
+     */
+    public ByteBuffer getVueBinaire(Integer siege, boolean complet) {
+        int s = siege(siege);
+        int indice = 2 * (s + 1) + (complet ? 1 : 0);
+        byte[] octets;
+        synchronized (binaires) {
+            octets = binaires[indice];
+            if (octets == null) {
+                octets = instantane == null ? new byte[0] : instantane.encoder(s, complet);
+                binaires[indice] = octets;
+            }
+        }
+        return ByteBuffer.wrap(octets).asReadOnlyBuffer();
+    }
+
+    /**
+     * Renvoie l'indice de la vue à utiliser pour un rôle (-1 pour la vue publique)
+     */
+    private int siege(Integer siege) {
+        if (siege == null) {
+            siege = siegeCourant;
+        }
+        if (siege < 0 || siege >= vuesSieges.length) {
+            return -1;
+        }
+        return siege;
+    }
+}
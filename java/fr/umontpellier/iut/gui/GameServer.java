@@ -1,34 +1,99 @@
 package fr.umontpellier.iut.gui;
 
+import com.google.gson.Gson;
 import fr.umontpellier.iut.rails.Jeu;
 import org.glassfish.tyrus.server.Server;
 
 import javax.websocket.DeploymentException;
 import javax.websocket.Session;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class GameServer {
     /**
-     * Liste des clients connectés au serveur
+     * Rôle d'une session de spectateur (elle ne reçoit que la vue publique)
      */
-    private static ArrayList<Session> clients = new ArrayList<>();
+    public static final int SPECTATEUR = -1;
     /**
-     * Description de l'état du jeu, envoyé aux clients pour la mise à jour de l'interface graphique
+     * Identifiant de la table rejointe par les clients qui n'en précisent pas
      */
-    private static String etatJeu = "";
+    public static final String TABLE_PAR_DEFAUT = "0";
     /**
-     * Instance de jeu exécutée par le serveur
+     * Clé sous laquelle le rôle d'une session est enregistré dans ses propriétés
      */
-    private static Jeu jeu;
+    private static final String ROLE = "siege";
+    /**
+     * Paramètre de connexion qui contient le jeton d'un siège déjà réservé
+     */
+    private static final String JETON = "jeton";
+    /**
+     * Clé sous laquelle est enregistré le fait qu'une session utilise le format binaire
+     */
+    private static final String BINAIRE = "binaire";
+    /**
+     * Clé sous laquelle est enregistrée la table d'une session
+     */
+    private static final String TABLE = "table";
+    /**
+     * Clé sous laquelle est enregistré le limiteur de débit d'une session
+     */
+    private static final String LIMITEUR = "limiteur";
+
+    /**
+     * Nombre de messages qu'une session peut envoyer en rafale
+     */
+    private static double capaciteDebit = 10;
+    /**
+     * Nombre de messages par seconde qu'une session peut envoyer en continu
+     */
+    private static double messagesParSeconde = 5;
+
+    /**
+     * Nombre de messages ignorés parce qu'ils venaient d'un spectateur, d'un siège
+     * dont ce n'était pas le tour ou d'une session sans siège
+     */
+    private static final LongAdder rejetsHorsTour = new LongAdder();
+    /**
+     * Nombre de messages ignorés parce que la session dépassait son débit autorisé
+     */
+    private static final LongAdder rejetsDebit = new LongAdder();
+    /**
+     * Nombre de messages ignorés parce que la file d'entrées de la partie était pleine
+     */
+    private static final LongAdder rejetsFilePleine = new LongAdder();
+
+    /**
+     * Tables hébergées par le serveur, indexées par identifiant
+     */
+    private static final Map<String, Table> tables = new ConcurrentHashMap<>();
+    /**
+     * Tables hébergées par le serveur, indexées par la partie qui y est jouée
+     */
+    private static final Map<Jeu, Table> tablesParJeu = new ConcurrentHashMap<>();
+    /**
+     * Réserve de parties prêtes à l'avance ({@code null} si les parties sont
+     * créées à la demande)
+     */
+    private static volatile ReserveParties reserve;
 
     public static void main(String[] args) {
-        // Lancement de la partie
-        jeu = new Jeu(new String[]{"Guybrush", "Largo", "LeChuck", "Elaine"});
+        // Préparation des parties à l'avance, puis lancement de la partie
+        ReserveParties reserveParties = new ReserveParties(4, 4, System.nanoTime());
+        reserveParties.prechauffer(20);
+        reserveParties.demarrer();
+        setReserve(reserveParties);
+        Table tableParDefaut = creerTable(TABLE_PAR_DEFAUT, new String[]{"Guybrush", "Largo", "LeChuck", "Elaine"});
+        tableParDefaut.setEcranUnique(true);
+        Jeu jeu = tableParDefaut.getJeu();
+        // partie amicale sur un seul écran : les joueurs peuvent annuler le tour précédent
+        jeu.setAnnulationAutorisee(true);
 
         // Prépare le serveur websocket
-        Server server = new Server("localhost", 3232, "/", WebSocketClient.class);
+        Server server = creerServeur("localhost", 3232);
 
         try (Scanner scanner = new Scanner(System.in)) {
             server.start();             // lance le serveur
@@ -45,54 +110,290 @@ public class GameServer {
     }
 
     /**
-     * Ajoute une nouvelle instruction à la file d'instructions
-     * (cette méthode est appelée lorsqu'un message est reçue sur la websocket)
+     * Crée le serveur websocket (qui doit ensuite être démarré avec {@code start()})
+     */
+    public static Server creerServeur(String hote, int port) {
+        return new Server(hote, port, "/", WebSocketClient.class);
+    }
+
+    /**
+     * Ajoute une nouvelle table au serveur. La partie n'est pas démarrée : c'est à
+     * l'appelant d'exécuter {@code jeu.run()} dans un thread.
+     *
+     * @param id  identifiant de la table
+     * @param jeu partie jouée sur la table
+     * @return la table créée
+     */
+    public static Table creerTable(String id, Jeu jeu) {
+        Table table = new Table(id, jeu);
+        tables.put(id, table);
+        tablesParJeu.put(jeu, table);
+        return table;
+    }
+
+    /**
+     * Ajoute une nouvelle table au serveur, avec une partie prise dans la réserve
+     * (ou créée à la demande s'il n'y a pas de réserve pour ce nombre de joueurs).
+     * Comme pour {@code creerTable(String, Jeu)}, la partie n'est pas démarrée.
+     *
+     * @param id         identifiant de la table
+     * @param nomJoueurs noms des joueurs de la partie
+     * @return la table créée
+     */
+    public static Table creerTable(String id, String[] nomJoueurs) {
+        ReserveParties r = reserve;
+        Jeu jeu = r != null && r.getNbJoueurs() == nomJoueurs.length ? r.prendre(nomJoueurs) : new Jeu(nomJoueurs);
+        return creerTable(id, jeu);
+    }
+
+    /**
+     * Utilise une réserve de parties prêtes à l'avance pour les tables créées
+     * par {@code creerTable(String, String[])}
+     */
+    public static void setReserve(ReserveParties reserveParties) {
+        reserve = reserveParties;
+    }
+
+    /**
+     * Retire une table du serveur
+     */
+    public static void supprimerTable(Table table) {
+        tables.remove(table.getId());
+        tablesParJeu.remove(table.getJeu());
+    }
+
+    public static Table getTable(String id) {
+        return tables.get(id);
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions de la table par défaut
      * 
      * @param message l'instruction à ajouter
      */
     public static void addInput(String message) {
-        jeu.addInput(message);
+        Table table = tables.get(TABLE_PAR_DEFAUT);
+        if (table != null) {
+            table.addInput(message);
+        }
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions de la table d'une session
+     * (cette méthode est appelée lorsqu'un message est reçue sur la websocket)
+     * <p>
+     * Le message est ignoré (et comptabilisé) s'il provient d'un spectateur, d'un
+     * siège dont ce n'est pas le tour ou d'une session sans siège (sauf sur une
+     * table jouée sur un seul écran), si la session dépasse son débit autorisé ou
+     * si la file d'instructions de la partie est pleine.
+     *
+     * @param session la session qui a envoyé l'instruction
+     * @param message l'instruction à ajouter
+     */
+    public static void addInput(Session session, String message) {
+        Table table = getTable(session);
+        if (table == null) {
+            return;
+        }
+        Integer role = getRole(session);
+        boolean horsTour = role == null ? !table.isEcranUnique() : role != table.getSiegeCourant();
+        if (horsTour) {
+            rejetsHorsTour.increment();
+        } else if (!((LimiteurDebit) session.getUserProperties().get(LIMITEUR)).autoriser()) {
+            rejetsDebit.increment();
+        } else if (!table.addInput(message)) {
+            rejetsFilePleine.increment();
+        }
     }
 
     /**
-     * Met à jour l'état de la partie, et envoie le nouvel état à tous les clients connectés
+     * Modifie le débit autorisé pour les sessions qui se connecteront ensuite
+     *
+     * @param capacite          nombre de messages autorisés en rafale
+     * @param messagesParSeconde nombre de messages par seconde autorisés en continu
+     */
+    public static void setLimiteDebit(double capacite, double messagesParSeconde) {
+        GameServer.capaciteDebit = capacite;
+        GameServer.messagesParSeconde = messagesParSeconde;
+    }
+
+    public static long getRejetsHorsTour() {
+        return rejetsHorsTour.sum();
+    }
+
+    public static long getRejetsDebit() {
+        return rejetsDebit.sum();
+    }
+
+    public static long getRejetsFilePleine() {
+        return rejetsFilePleine.sum();
+    }
+
+    /**
+     * Met à jour l'état d'une partie, et envoie à chaque client connecté à sa table
+     * la vue qui correspond à son rôle
      * 
+     * @param jeu     la partie dont l'état a changé
      * @param etatJeu l'état de la partie
      */
-    public static void setEtatJeu(String etatJeu) {
-        GameServer.etatJeu = etatJeu;
-        // Envoie l'état de la partie à tous les clients
-        try {
-            for (Session session : clients) {
-                session.getBasicRemote().sendText(etatJeu);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    public static void setEtatJeu(Jeu jeu, EtatJeu etatJeu) {
+        Table table = tablesParJeu.get(jeu);
+        if (table != null) {
+            table.setEtatJeu(etatJeu);
         }
     }
 
     /**
-     * Ajoute un nouveau client à la liste, et lui transmet l'état actuel de la partie
+     * Indique si la table d'une partie a des clients qui reçoivent l'état au format
+     * binaire (la partie ne relève alors l'instantané des vues binaires qu'à cette
+     * condition)
+     */
+    public static boolean aDesClientsBinaires(Jeu jeu) {
+        Table table = tablesParJeu.get(jeu);
+        return table != null && table.aDesClientsBinaires();
+    }
+
+    /**
+     * Envoie un court message de refus aux sessions du joueur courant d'une partie
+     * (lorsqu'une entrée n'est pas un choix valide)
+     *
+     * @param jeu    la partie
+     * @param entree l'entrée refusée
+     */
+    public static void rejeterEntree(Jeu jeu, String entree) {
+        Table table = tablesParJeu.get(jeu);
+        if (table != null) {
+            table.rejeterEntree(entree);
+        }
+    }
+
+    /**
+     * Ajoute un nouveau client à une table, et lui transmet l'état actuel de la partie
      * (cette méthode est appelée lorsqu'une nouvelle connexion est établie)
+     * <p>
+     * Le rôle du client est lu dans les paramètres de connexion :
+     * {@code ?siege=n} pour occuper le siège n, {@code ?spectateur} pour suivre la
+     * partie sans voir les informations cachées. Le premier client qui demande un
+     * siège le réserve et reçoit un jeton ({@code Table.reserverSiege}) ; un client
+     * qui demande ensuite ce siège doit ajouter {@code jeton=...}, sinon il devient
+     * spectateur. Sans paramètre, le client ne voit le joueur courant et ne peut
+     * jouer pour lui que si la table est jouée sur un seul écran
+     * ({@code Table.setEcranUnique}) ; il est sinon traité comme un spectateur. Le paramètre
+     * {@code format=binaire} permet de recevoir l'état au format de
+     * {@code CodecBinaire} plutôt qu'en JSON, et le paramètre {@code table} de
+     * choisir la table à rejoindre (par défaut {@code TABLE_PAR_DEFAUT}). Un
+     * client qui se reconnecte ajoute {@code depuis=n}, où n est la version du
+     * dernier état qu'il a reçu, pour ne recevoir que les états manqués (voir
+     * {@code Table.addClient(Session, Long)}).
      * 
      * @param session la session du nouveau client
      */
     public static void addClient(Session session) {
-        GameServer.clients.add(session);
+        List<String> format = session.getRequestParameterMap().get("format");
+        if (format != null && format.contains(BINAIRE)) {
+            session.getUserProperties().put(BINAIRE, true);
+        }
+        session.getUserProperties().put(LIMITEUR, new LimiteurDebit(capaciteDebit, messagesParSeconde));
+        List<String> id = session.getRequestParameterMap().get(TABLE);
+        Table table = tables.get(id == null || id.isEmpty() ? TABLE_PAR_DEFAUT : id.get(0));
+        if (table != null) {
+            Integer role = lireRole(session);
+            if (role != null && role != SPECTATEUR) {
+                // le siège n'est accordé qu'au client qui l'a réservé (sinon, spectateur)
+                List<String> jeton = session.getRequestParameterMap().get(JETON);
+                String jetonSiege = table.reserverSiege(role, jeton == null || jeton.isEmpty() ? null : jeton.get(0));
+                role = jetonSiege == null ? SPECTATEUR : role;
+                envoyerJeton(session, role, jetonSiege);
+            }
+            if (role != null) {
+                session.getUserProperties().put(ROLE, role);
+            }
+            session.getUserProperties().put(TABLE, table);
+            table.addClient(session, lireDepuis(session));
+        }
+    }
+
+    /**
+     * Indique à un client qui a demandé un siège le rôle qui lui est accordé, et
+     * le jeton à présenter pour occuper de nouveau ce siège (message de la forme
+     * {@code {"siege": n, "jeton": "..."}}, sans jeton si le siège est refusé)
+     */
+    private static void envoyerJeton(Session session, int role, String jeton) {
+        Map<String, Object> message = jeton == null ? Map.of("siege", role) : Map.of("siege", role, "jeton", jeton);
         try {
-            session.getBasicRemote().sendText(etatJeu);
+            session.getBasicRemote().sendText(new Gson().toJson(message));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Retire un client de la liste
+     * Retire un client de sa table
      * (cette méthode est appelée lorsqu'une connexion est fermée)
      * 
      * @param session la session du client à retirer
      */
     public static void removeClient(Session session) {
-        GameServer.clients.remove(session);
+        Table table = getTable(session);
+        if (table != null) {
+            table.removeClient(session);
+        }
+    }
+
+    /**
+     * Renvoie la table à laquelle une session est connectée (ou {@code null})
+     */
+    public static Table getTable(Session session) {
+        return (Table) session.getUserProperties().get(TABLE);
+    }
+
+    /**
+     * Renvoie le rôle d'une session (siège, {@code SPECTATEUR}, ou {@code null}
+     * si la session suit le joueur courant)
+     */
+    public static Integer getRole(Session session) {
+        return (Integer) session.getUserProperties().get(ROLE);
+    }
+
+    /**
+     * Indique si une session a demandé le format binaire
+     */
+    static boolean estBinaire(Session session) {
+        return session.getUserProperties().containsKey(BINAIRE);
+    }
+
+    /**
+     * Lit la version du dernier état reçu par un client qui se reconnecte
+     * ({@code null} pour un nouveau client ou une valeur invalide)
+     */
+    private static Long lireDepuis(Session session) {
+        List<String> depuis = session.getRequestParameterMap().get("depuis");
+        if (depuis != null && !depuis.isEmpty()) {
+            try {
+                return Long.parseLong(depuis.get(0));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Détermine le rôle demandé par un client à partir des paramètres de sa
+     * requête de connexion
+     */
+    private static Integer lireRole(Session session) {
+        List<String> siege = session.getRequestParameterMap().get("siege");
+        if (siege != null && !siege.isEmpty()) {
+            try {
+                return Integer.parseInt(siege.get(0));
+            } catch (NumberFormatException e) {
+                return SPECTATEUR;
+            }
+        }
+        if (session.getRequestParameterMap().containsKey("spectateur")) {
+            return SPECTATEUR;
+        }
+        return null;
     }
 }
@@ -0,0 +1,49 @@
+package fr.umontpellier.iut.gui;
+
+/**
+ * Limiteur de débit à seau de jetons : le seau contient au plus {@code capacite}
+ * jetons et se remplit de {@code jetonsParSeconde} jetons par seconde. Chaque
+ * message consomme un jeton ; un message qui arrive quand le seau est vide est
+ * refusé.
+ */
+public class LimiteurDebit {
+    /**
+     * Nombre maximal de jetons (taille des rafales autorisées)
+     */
+    private final double capacite;
+    /**
+     * Nombre de jetons ajoutés par seconde
+     */
+    private final double jetonsParSeconde;
+    /**
+     * Nombre de jetons disponibles
+     */
+    private double jetons;
+    /**
+     * Instant (en nanosecondes) du dernier remplissage du seau
+     */
+    private long dernierRemplissage;
+
+    public LimiteurDebit(double capacite, double jetonsParSeconde) {
+        this.capacite = capacite;
+        this.jetonsParSeconde = jetonsParSeconde;
+        jetons = capacite;
+        dernierRemplissage = System.nanoTime();
+    }
+
+    /**
+     * Consomme un jeton s'il y en a un de disponible
+     *
+     * @return vrai si le message est autorisé, faux s'il doit être refusé
+     */
+    public synchronized boolean autoriser() {
+        long maintenant = System.nanoTime();
+        jetons = Math.min(capacite, jetons + (maintenant - dernierRemplissage) * jetonsParSeconde / 1e9);
+        dernierRemplissage = maintenant;
+        if (jetons < 1) {
+            return false;
+        }
+        jetons--;
+        return true;
+    }
+}
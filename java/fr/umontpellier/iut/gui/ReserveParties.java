@@ -0,0 +1,157 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.bots.StrategieAleatoire;
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Plateau;
+
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Réserve de parties déjà initialisées (plateau créé, cartes et destinations
+ * distribuées), remplie en arrière-plan, pour qu'une nouvelle table puisse
+ * démarrer immédiatement.
+ * <p>
+ * Chaque partie reçoit sa propre graine, tirée d'un générateur qui ne sert qu'à
+ * cela : les parties sont indépendantes les unes des autres. Les noms des
+ * joueurs ne sont connus qu'au moment où une partie est prise dans la réserve.
+ * <p>
+ * {@code prechauffer()} joue quelques parties entre bots avant l'ouverture du
+ * serveur, pour que les méthodes les plus utilisées (création d'une partie,
+ * tours de jeu, paiements, décompte final, encodage de l'état) soient déjà
+ * compilées par la JVM lorsque les premiers joueurs arrivent.
+ */
+public class ReserveParties {
+    /**
+     * Nombre de tours joués par chaque partie de préchauffage
+     */
+    private static final int TOURS_PRECHAUFFAGE = 200;
+
+    private final int nbJoueurs;
+    private final BlockingQueue<Jeu> parties;
+    /**
+     * Générateur des graines des parties
+     */
+    private final SplittableRandom graines;
+    /**
+     * Nombre de parties prises alors que la réserve était vide (et donc créées à
+     * la demande)
+     */
+    private final LongAdder nbManques = new LongAdder();
+    private Thread remplissage;
+
+    /**
+     * @param nbJoueurs nombre de joueurs des parties de la réserve
+     * @param capacite  nombre maximal de parties prêtes à l'avance
+     * @param graine    graine du générateur des graines des parties
+     */
+    public ReserveParties(int nbJoueurs, int capacite, long graine) {
+        this.nbJoueurs = nbJoueurs;
+        this.parties = new ArrayBlockingQueue<>(capacite);
+        this.graines = new SplittableRandom(graine);
+    }
+
+    /**
+     * Démarre le thread qui remplit la réserve (il se met en attente tant que la
+     * réserve est pleine)
+     */
+    public synchronized void demarrer() {
+        if (remplissage != null) {
+            return;
+        }
+        remplissage = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    parties.put(creerPartie());
+                }
+            } catch (InterruptedException e) {
+                // arrêt de la réserve
+            }
+        }, "reserve-parties");
+        remplissage.setDaemon(true);
+        remplissage.start();
+    }
+
+    /**
+     * Arrête le remplissage de la réserve
+     */
+    public synchronized void arreter() {
+        if (remplissage != null) {
+            remplissage.interrupt();
+            remplissage = null;
+        }
+    }
+
+    /**
+     * Prend une partie prête dans la réserve (ou la crée si la réserve est vide)
+     * et donne leurs noms aux joueurs
+     *
+     * @param nomJoueurs noms des joueurs (autant que le nombre de joueurs de la réserve)
+     */
+    public Jeu prendre(String[] nomJoueurs) {
+        if (nomJoueurs.length != nbJoueurs) {
+            throw new IllegalArgumentException(String.format("La réserve contient des parties à %d joueurs",
+                    nbJoueurs));
+        }
+        Jeu jeu = parties.poll();
+        if (jeu == null) {
+            nbManques.increment();
+            jeu = creerPartie();
+        }
+        jeu.setNomsJoueurs(nomJoueurs);
+        return jeu;
+    }
+
+    /**
+     * Joue des parties silencieuses entre bots et encode leur état, pour que la
+     * JVM compile les méthodes utilisées pendant une partie
+     *
+     * @param nbParties nombre de parties jouées
+     */
+    public void prechauffer(int nbParties) {
+        for (int p = 0; p < nbParties; p++) {
+            Jeu jeu = creerPartie();
+            jeu.setSilencieux(true);
+            jeu.setNbToursMax(TOURS_PRECHAUFFAGE);
+            Random aleatoire = new Random(p);
+            for (Joueur joueur : jeu.getJoueurs()) {
+                joueur.setStrategie(new StrategieAleatoire(new Random(aleatoire.nextLong())));
+            }
+            jeu.run();
+            CodecBinaire.encoderPlateau(jeu.getVilles(), jeu.getRoutes());
+            CodecBinaire.Instantane instantane = CodecBinaire.capturer(jeu, 1, "", List.of(), false, 0);
+            for (int siege = -1; siege < nbJoueurs; siege++) {
+                instantane.encoder(siege, true);
+            }
+        }
+    }
+
+    public int getNbJoueurs() {
+        return nbJoueurs;
+    }
+
+    public int getNbPrets() {
+        return parties.size();
+    }
+
+    public long getNbManques() {
+        return nbManques.sum();
+    }
+
+    private Jeu creerPartie() {
+        long graine;
+        synchronized (graines) {
+            graine = graines.nextLong();
+        }
+        String[] noms = new String[nbJoueurs];
+        for (int i = 0; i < nbJoueurs; i++) {
+            noms[i] = "Joueur " + (i + 1);
+        }
+        return new Jeu(noms, Plateau.makePlateauEurope(), graine);
+    }
+}
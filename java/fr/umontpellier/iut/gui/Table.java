@@ -0,0 +1,330 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.Gson;
+import fr.umontpellier.iut.evenements.EvenementEnvoi;
+import fr.umontpellier.iut.rails.Jeu;
+
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Une table de jeu hébergée par le serveur : une partie et les clients qui y
+ * sont connectés (joueurs et spectateurs)
+ */
+public class Table {
+    /**
+     * Nombre d'états gardés pour resynchroniser les clients qui se reconnectent
+     */
+    public static final int TAILLE_HISTORIQUE = 32;
+    /**
+     * Générateur des jetons des sièges
+     */
+    private static final SecureRandom ALEATOIRE = new SecureRandom();
+
+    /**
+     * Identifiant de la table (paramètre {@code table} de la requête de connexion)
+     */
+    private final String id;
+    /**
+     * Partie jouée sur la table
+     */
+    private final Jeu jeu;
+    /**
+     * Liste des clients connectés à la table
+     */
+    private final List<Session> clients = new CopyOnWriteArrayList<>();
+    /**
+     * Description de l'état du jeu, envoyé aux clients pour la mise à jour de l'interface graphique
+     */
+    private volatile EtatJeu etatJeu = EtatJeu.VIDE;
+    /**
+     * Description binaire du plateau, envoyée une fois à chaque client binaire
+     */
+    private final byte[] plateauBinaire;
+    /**
+     * Derniers états envoyés, rangés à l'indice {@code version % TAILLE_HISTORIQUE}
+     */
+    private final EtatJeu[] historique = new EtatJeu[TAILLE_HISTORIQUE];
+    /**
+     * Vrai si la partie est jouée sur un seul écran : les sessions sans siège
+     * voient alors la vue du joueur courant et jouent pour lui (sinon, elles
+     * reçoivent la vue publique et ne peuvent pas jouer)
+     */
+    private volatile boolean ecranUnique;
+    /**
+     * Jeton de chaque siège ({@code null} tant que le siège n'a pas été occupé) :
+     * seul le client qui l'a reçu peut ensuite occuper ce siège
+     */
+    private final String[] jetons;
+    /**
+     * Clients binaires qui attendent une trame complète : ils ont reçu (ou
+     * auraient dû recevoir) un état sans vues binaires, relevé avant que la table
+     * n'ait de client binaire
+     */
+    private final Set<Session> attenteTrameComplete = ConcurrentHashMap.newKeySet();
+
+    public Table(String id, Jeu jeu) {
+        this.id = id;
+        this.jeu = jeu;
+        plateauBinaire = CodecBinaire.encoderPlateau(jeu.getVilles(), jeu.getRoutes());
+        jetons = new String[jeu.getJoueurs().size()];
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Jeu getJeu() {
+        return jeu;
+    }
+
+    public List<Session> getClients() {
+        return clients;
+    }
+
+    public boolean isEcranUnique() {
+        return ecranUnique;
+    }
+
+    /**
+     * Autorise (ou non) les sessions sans siège à voir la vue du joueur courant et
+     * à jouer pour lui (partie jouée sur un seul écran)
+     */
+    public void setEcranUnique(boolean ecranUnique) {
+        this.ecranUnique = ecranUnique;
+    }
+
+    /**
+     * Indique si un des clients connectés reçoit l'état au format binaire
+     */
+    public boolean aDesClientsBinaires() {
+        for (Session session : clients) {
+            if (GameServer.estBinaire(session)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Réserve un siège pour un client. Le premier client qui demande un siège le
+     * réserve et reçoit un jeton ; les clients suivants doivent présenter ce jeton
+     * (par exemple pour se reconnecter) pour occuper le même siège.
+     *
+     * @param siege le siège demandé
+     * @param jeton le jeton présenté par le client ({@code null} s'il n'en a pas)
+     * @return le jeton du siège, ou {@code null} si le siège n'existe pas ou si le
+     * jeton présenté n'est pas le sien
+     */
+    public synchronized String reserverSiege(int siege, String jeton) {
+        if (siege < 0 || siege >= jetons.length) {
+            return null;
+        }
+        if (jetons[siege] == null) {
+            byte[] octets = new byte[16];
+            ALEATOIRE.nextBytes(octets);
+            jetons[siege] = Base64.getUrlEncoder().withoutPadding().encodeToString(octets);
+        } else if (!jetons[siege].equals(jeton)) {
+            return null;
+        }
+        return jetons[siege];
+    }
+
+    /**
+     * Renvoie le siège du joueur dont c'est le tour (lu dans le dernier instantané
+     * publié par la partie, sans accéder à son état courant depuis un thread du
+     * serveur)
+     */
+    public int getSiegeCourant() {
+        return jeu.getInstantane().getEtat().getJoueurCourant();
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions de la partie
+     *
+     * @param message l'instruction à ajouter
+     * @return faux si l'instruction a été ignorée parce que la file est pleine
+     */
+    public boolean addInput(String message) {
+        return jeu.addInput(message);
+    }
+
+    /**
+     * Met à jour l'état de la partie, et envoie à chaque client connecté la vue
+     * qui correspond à son rôle
+     *
+     * @param etatJeu l'état de la partie
+     */
+    public synchronized void setEtatJeu(EtatJeu etatJeu) {
+        this.etatJeu = etatJeu;
+        historique[(int) (etatJeu.getVersion() % TAILLE_HISTORIQUE)] = etatJeu;
+        for (Session session : clients) {
+            envoyer(session, etatJeu, false);
+        }
+    }
+
+    /**
+     * Envoie un message de refus (de la forme {@code {"rejet": entree}}) aux
+     * sessions qui jouent pour le joueur courant
+     *
+     * @param entree l'entrée refusée
+     */
+    public void rejeterEntree(String entree) {
+        String message = new Gson().toJson(Map.of("rejet", entree));
+        int siegeCourant = getSiegeCourant();
+        for (Session session : clients) {
+            Integer role = GameServer.getRole(session);
+            if (role == null ? ecranUnique : role == siegeCourant) {
+                try {
+                    session.getBasicRemote().sendText(message);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ajoute un nouveau client à la table, et lui transmet l'état actuel de la partie
+     *
+     * @param session la session du nouveau client
+     */
+    public void addClient(Session session) {
+        addClient(session, null);
+    }
+
+    /**
+     * Ajoute un client à la table. Un client qui se reconnecte indique la version
+     * du dernier état qu'il a reçu : un client binaire ne reçoit alors que les
+     * trames qu'il a manquées (dans l'ordre, chacune ne contenant que les
+     * nouvelles entrées du log), ou une trame complète s'il a manqué plus d'états
+     * que n'en garde l'historique. Un client JSON, dont chaque état est complet,
+     * ne reçoit que l'état actuel. Le client est ajouté et resynchronisé sans qu'un nouvel état
+     * puisse être envoyé entre les deux.
+     *
+     * @param session la session du client
+     * @param depuis  version du dernier état reçu par le client, ou {@code null}
+     *                pour un nouveau client
+     */
+    public synchronized void addClient(Session session, Long depuis) {
+        clients.add(session);
+        if (depuis != null) {
+            resynchroniser(session, depuis);
+        } else if (GameServer.estBinaire(session)) {
+            try {
+                session.getBasicRemote().sendBinary(ByteBuffer.wrap(plateauBinaire).asReadOnlyBuffer());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (etatJeu != EtatJeu.VIDE) {
+                envoyer(session, etatJeu, true);
+            }
+        } else {
+            envoyer(session, etatJeu, true);
+        }
+    }
+
+    /**
+     * Envoie à un client qui se reconnecte les états qu'il a manqués depuis la
+     * version {@code depuis} (seulement l'état actuel pour un client JSON), ou
+     * l'état complet s'ils ne sont plus tous dans l'historique
+     */
+    private void resynchroniser(Session session, long depuis) {
+        EtatJeu courant = etatJeu;
+        long version = courant.getVersion();
+        if (depuis == version) {
+            return;
+        }
+        List<EtatJeu> manques = new ArrayList<>();
+        if (!GameServer.estBinaire(session)) {
+            // les vues JSON sont des états complets : seul le dernier compte
+            manques = null;
+        } else if (depuis >= 0 && depuis < version && version - depuis <= TAILLE_HISTORIQUE) {
+            for (long v = depuis + 1; v <= version; v++) {
+                EtatJeu etat = historique[(int) (v % TAILLE_HISTORIQUE)];
+                if (etat == null || etat.getVersion() != v || !etat.aDesVuesBinaires()) {
+                    manques = null;
+                    break;
+                }
+                manques.add(etat);
+            }
+        } else {
+            manques = null;
+        }
+        if (manques == null) {
+            if (courant != EtatJeu.VIDE) {
+                envoyer(session, courant, true);
+            }
+        } else {
+            for (EtatJeu etat : manques) {
+                envoyer(session, etat, false);
+            }
+        }
+    }
+
+    /**
+     * Retire un client de la table
+     *
+     * @param session la session du client à retirer
+     */
+    public void removeClient(Session session) {
+        clients.remove(session);
+        attenteTrameComplete.remove(session);
+    }
+
+    /**
+     * Renvoie le rôle dont une session reçoit la vue : une session sans siège ne
+     * suit le joueur courant (et ne voit ses informations cachées) que sur une
+     * table jouée sur un seul écran, comme pour ses entrées ; elle reçoit sinon la
+     * vue publique
+     */
+    private Integer roleVue(Integer role) {
+        return role == null && !ecranUnique ? Integer.valueOf(GameServer.SPECTATEUR) : role;
+    }
+
+    /**
+     * Envoie à une session la vue de l'état qui correspond à son rôle et à son
+     * format. Un client binaire ne peut pas recevoir un état relevé sans vues
+     * binaires : la partie est alors priée de renvoyer son état, et le client
+     * recevra une trame complète du prochain état.
+     *
+     * @param complet pour les clients binaires, indique s'il faut envoyer le log complet
+     */
+    private void envoyer(Session session, EtatJeu etatJeu, boolean complet) {
+        Integer role = roleVue(GameServer.getRole(session));
+        boolean binaire = GameServer.estBinaire(session);
+        if (binaire) {
+            if (!etatJeu.aDesVuesBinaires()) {
+                attenteTrameComplete.add(session);
+                jeu.demanderActualisation();
+                return;
+            }
+            complet |= attenteTrameComplete.remove(session);
+        }
+        EvenementEnvoi evenement = new EvenementEnvoi(id, session.getId(), role, binaire, etatJeu.getVersion());
+        evenement.begin();
+        try {
+            if (binaire) {
+                ByteBuffer vue = etatJeu.getVueBinaire(role, complet);
+                evenement.setTaille(vue.remaining());
+                session.getBasicRemote().sendBinary(vue);
+            } else {
+                String vue = etatJeu.getVue(role);
+                evenement.setTaille(vue);
+                session.getBasicRemote().sendText(vue);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        evenement.commit();
+    }
+}
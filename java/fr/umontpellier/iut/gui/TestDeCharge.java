@@ -0,0 +1,348 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import fr.umontpellier.iut.rails.*;
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.server.Server;
+
+import javax.websocket.*;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Générateur de charge pour le serveur de jeu.
+ * <p>
+ * Le programme démarre un serveur sur localhost avec plusieurs tables, puis
+ * ouvre pour chaque table une session websocket par siège et un nombre donné de
+ * sessions de spectateurs. Les sessions assises jouent des coups aléatoires
+ * (choisis parmi les coups valides, déduits du prompt et de l'état reçus) à
+ * travers le vrai point d'entrée {@code WebSocketClient}. À la fin, le programme affiche les
+ * percentiles de latence entre l'envoi d'une action et la réception de l'état
+ * suivant, ceux des allers-retours terminés par un refus (mesurés à part), le
+ * nombre de trames par seconde et le volume reçu par client.
+ * <p>
+ * Utilisation : {@code TestDeCharge [nbTables] [nbSpectateursParTable] [durée en secondes] [port]}
+ */
+public class TestDeCharge {
+    /**
+     * Noms des joueurs de chaque table
+     */
+    private static final String[] NOMS = {"Bot1", "Bot2", "Bot3", "Bot4"};
+    /**
+     * Début de l'instruction d'un début de tour ({@code Joueur.jouerTour})
+     */
+    private static final String INSTRUCTION_ACTION = "Quelle action";
+    /**
+     * Début de l'instruction du choix de la seconde carte ({@code Joueur.piocherWagons})
+     */
+    private static final String INSTRUCTION_SECONDE_CARTE = "Piochez une seconde carte";
+    /**
+     * Routes du plateau joué par les tables, par nom (seules leur longueur et leur
+     * couleur sont lues, pour savoir si la main d'un client permet de les capturer)
+     */
+    private static final Map<String, Route> ROUTES = new HashMap<>();
+
+    static {
+        for (Route route : Plateau.makePlateauEurope().getRoutes()) {
+            ROUTES.put(route.getNom(), route);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nbTables = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int nbSpectateurs = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int duree = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 3233;
+
+        // les clients simulés jouent dès qu'ils reçoivent un état : on ne veut
+        // mesurer que le serveur, pas la limitation de débit
+        GameServer.setLimiteDebit(1000, 1000);
+        Server server = GameServer.creerServeur("localhost", port);
+        server.start();
+        ClientManager clientManager = ClientManager.createClient();
+        List<ClientSimule> clients = new ArrayList<>();
+        try {
+            for (int t = 0; t < nbTables; t++) {
+                Jeu jeu = new Jeu(NOMS);
+                GameServer.creerTable("charge-" + t, jeu);
+                Thread thread = new Thread(jeu);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            for (int t = 0; t < nbTables; t++) {
+                for (int siege = 0; siege < NOMS.length; siege++) {
+                    clients.add(connecter(clientManager, port, t, siege));
+                }
+                for (int i = 0; i < nbSpectateurs; i++) {
+                    clients.add(connecter(clientManager, port, t, GameServer.SPECTATEUR));
+                }
+            }
+            System.out.printf("%d tables, %d sessions ouvertes%n", nbTables, clients.size());
+
+            long debut = System.nanoTime();
+            Thread.sleep(duree * 1000L);
+            double secondes = (System.nanoTime() - debut) / 1e9;
+
+            afficherRapport(clients, secondes);
+        } finally {
+            for (ClientSimule client : clients) {
+                client.fermer();
+            }
+            clientManager.shutdown();
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private static ClientSimule connecter(ClientManager clientManager, int port, int table, int siege)
+            throws DeploymentException, IOException {
+        String role = siege == GameServer.SPECTATEUR ? "spectateur" : "siege=" + siege;
+        URI uri = URI.create(String.format("ws://localhost:%d/?table=charge-%d&%s", port, table, role));
+        ClientSimule client = new ClientSimule(siege, new Random(31L * table + siege));
+        clientManager.connectToServer(client, uri);
+        return client;
+    }
+
+    private static void afficherRapport(List<ClientSimule> clients, double secondes) {
+        long nbTrames = 0;
+        long nbOctets = 0;
+        long[] latences = new long[0];
+        long[] latencesRefus = new long[0];
+        for (ClientSimule client : clients) {
+            synchronized (client) {
+                nbTrames += client.nbTrames;
+                nbOctets += client.nbOctets;
+                latences = concatener(latences, client.latences, client.nbLatences);
+                latencesRefus = concatener(latencesRefus, client.latencesRefus, client.nbLatencesRefus);
+            }
+        }
+        Arrays.sort(latences);
+        Arrays.sort(latencesRefus);
+
+        System.out.printf("Durée : %.1f s%n", secondes);
+        System.out.printf("Actions jouées : %d (%.1f/s)%n", latences.length, latences.length / secondes);
+        if (latences.length > 0) {
+            System.out.printf("Latence action -> état (ms) : p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                    percentile(latences, 0.50), percentile(latences, 0.90), percentile(latences, 0.99),
+                    latences[latences.length - 1] / 1e6);
+        }
+        System.out.printf("Actions refusées : %d%n", latencesRefus.length);
+        if (latencesRefus.length > 0) {
+            System.out.printf("Latence action -> refus (ms) : p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                    percentile(latencesRefus, 0.50), percentile(latencesRefus, 0.90),
+                    percentile(latencesRefus, 0.99), latencesRefus[latencesRefus.length - 1] / 1e6);
+        }
+        System.out.printf("Trames reçues : %d (%.1f/s)%n", nbTrames, nbTrames / secondes);
+        System.out.printf("Octets reçus par client : %.0f (%.0f octets/s)%n", (double) nbOctets / clients.size(),
+                nbOctets / secondes / clients.size());
+        System.out.printf("Messages ignorés : %d hors tour, %d débit, %d file pleine%n",
+                GameServer.getRejetsHorsTour(), GameServer.getRejetsDebit(), GameServer.getRejetsFilePleine());
+    }
+
+    /**
+     * Renvoie un tableau contenant les éléments de {@code debut} suivis des
+     * {@code n} premiers éléments de {@code suite}
+     */
+    private static long[] concatener(long[] debut, long[] suite, int n) {
+        long[] resultat = Arrays.copyOf(debut, debut.length + n);
+        System.arraycopy(suite, 0, resultat, debut.length, n);
+        return resultat;
+    }
+
+    /**
+     * Renvoie le percentile p (entre 0 et 1) d'un tableau trié de durées en
+     * nanosecondes, converti en millisecondes
+     */
+    private static double percentile(long[] tries, double p) {
+        int indice = (int) Math.min(tries.length - 1, Math.ceil(p * tries.length) - 1);
+        return tries[Math.max(0, indice)] / 1e6;
+    }
+
+    /**
+     * Client websocket simulé. Une session assise joue un coup aléatoire à chaque
+     * fois qu'elle reçoit un état où c'est à son siège de jouer ; une session de
+     * spectateur se contente de recevoir les trames.
+     */
+    @ClientEndpoint
+    public static class ClientSimule {
+        /**
+         * Siège occupé (ou {@code GameServer.SPECTATEUR})
+         */
+        private final int siege;
+        private final Random aleatoire;
+        private Session session;
+        /**
+         * Dernier état de la partie reçu
+         */
+        private JsonObject dernierEtat;
+        /**
+         * Instant d'envoi de la dernière action sans réponse (0 si aucune)
+         */
+        private long envoi;
+        private long nbTrames;
+        private long nbOctets;
+        /**
+         * Latences mesurées entre une action et l'état suivant (en nanosecondes)
+         */
+        private long[] latences = new long[64];
+        private int nbLatences;
+        /**
+         * Latences mesurées entre une action et son refus (en nanosecondes)
+         */
+        private long[] latencesRefus = new long[16];
+        private int nbLatencesRefus;
+
+        public ClientSimule(int siege, Random aleatoire) {
+            this.siege = siege;
+            this.aleatoire = aleatoire;
+        }
+
+        @OnOpen
+        public void onOpen(Session session) {
+            this.session = session;
+        }
+
+        @OnMessage
+        public synchronized void onMessage(String message) {
+            long maintenant = System.nanoTime();
+            nbTrames++;
+            nbOctets += message.getBytes(StandardCharsets.UTF_8).length;
+            if (siege != GameServer.SPECTATEUR && !message.isEmpty()) {
+                JsonObject objet = JsonParser.parseString(message).getAsJsonObject();
+                if (envoi != 0) {
+                    // un refus n'est pas la réponse à une action jouée : il est compté à part
+                    if (objet.has("rejet")) {
+                        latencesRefus = ajouter(latencesRefus, nbLatencesRefus++, maintenant - envoi);
+                    } else {
+                        latences = ajouter(latences, nbLatences++, maintenant - envoi);
+                    }
+                    envoi = 0;
+                }
+                if (objet.has("prompt")) {
+                    dernierEtat = objet;
+                }
+                // après un refus, on rejoue un autre coup à partir du dernier état reçu
+                String action = dernierEtat == null ? null : choisirAction(dernierEtat);
+                if (action != null) {
+                    envoi = System.nanoTime();
+                    session.getAsyncRemote().sendText(action);
+                }
+            }
+        }
+
+        @OnError
+        public void onError(Session session, Throwable exception) {
+            System.err.println("Erreur du client " + session.getId() + " : " + exception);
+        }
+
+        /**
+         * Ajoute une durée à un tableau de latences, en l'agrandissant si besoin
+         *
+         * @return le tableau (éventuellement agrandi)
+         */
+        private static long[] ajouter(long[] latences, int indice, long duree) {
+            if (indice == latences.length) {
+                latences = Arrays.copyOf(latences, 2 * indice);
+            }
+            latences[indice] = duree;
+            return latences;
+        }
+
+        /**
+         * Choisit une action valide au hasard si c'est au tour du siège du client.
+         * Le prompt ne transmet que les boutons : les autres choix valides (cartes,
+         * routes, villes, destinations) sont déduits de l'état reçu, comme le ferait
+         * une interface graphique.
+         *
+         * @return l'action à envoyer, ou {@code null} si ce n'est pas au tour du client
+         */
+        private String choisirAction(JsonObject etat) {
+            JsonObject prompt = etat.getAsJsonObject("prompt");
+            JsonObject moi = etat.getAsJsonArray("joueurs").get(siege).getAsJsonObject();
+            if (!moi.get("nom").getAsString().equals(prompt.get("nomJoueurCourant").getAsString())) {
+                return null;
+            }
+
+            List<String> candidats = new ArrayList<>();
+            for (JsonElement bouton : prompt.getAsJsonArray("boutons")) {
+                candidats.add(bouton.getAsString());
+            }
+            if (prompt.get("peutPasser").getAsBoolean()) {
+                candidats.add("");
+            }
+            String instruction = prompt.get("instruction").getAsString();
+            JsonObject piles = etat.getAsJsonObject("piles");
+            if (instruction.startsWith(INSTRUCTION_ACTION)) {
+                ajouterActions(candidats, etat, moi);
+            } else if (instruction.startsWith(INSTRUCTION_SECONDE_CARTE)) {
+                for (JsonElement carte : piles.getAsJsonArray("cartesWagonVisibles")) {
+                    if (!carte.getAsString().equals(CouleurWagon.LOCOMOTIVE.name())) {
+                        candidats.add(carte.getAsString());
+                    }
+                }
+                candidats.add(CouleurWagon.GRIS.name());
+            }
+            // les autres prompts (paiements, destinations) se jouent avec les boutons
+            if (candidats.isEmpty()) {
+                return null;
+            }
+            return candidats.get(aleatoire.nextInt(candidats.size()));
+        }
+
+        /**
+         * Ajoute aux candidats les actions valides d'un début de tour : cartes
+         * visibles, pioche, destinations, routes et villes que la main du joueur
+         * permet de payer (voir {@code Joueur.jouerTour})
+         */
+        private static void ajouterActions(List<String> candidats, JsonObject etat, JsonObject moi) {
+            JsonObject piles = etat.getAsJsonObject("piles");
+            for (JsonElement carte : piles.getAsJsonArray("cartesWagonVisibles")) {
+                candidats.add(carte.getAsString());
+            }
+            if (piles.get("pileCartesWagon").getAsInt() > 0) {
+                candidats.add(CouleurWagon.GRIS.name());
+            }
+            if (piles.get("pileDestinations").getAsInt() > 0) {
+                candidats.add("destinations");
+            }
+
+            List<CouleurWagon> main = new ArrayList<>();
+            for (JsonElement carte : moi.getAsJsonArray("cartesWagon")) {
+                main.add(CouleurWagon.valueOf(carte.getAsString()));
+            }
+            SolveurPaiement solveur = new SolveurPaiement(Paiement.compter(main));
+            int nbWagons = moi.get("nbWagons").getAsInt();
+            for (JsonElement element : etat.getAsJsonArray("routes")) {
+                JsonObject route = element.getAsJsonObject();
+                Route plan = ROUTES.get(route.get("nom").getAsString());
+                if (!route.has("proprietaire") && plan != null && plan.getLongueur() <= nbWagons
+                        && solveur.peutCapturer(plan)) {
+                    candidats.add(plan.getNom());
+                }
+            }
+            int nbGares = moi.get("nbGares").getAsInt();
+            if (nbGares > 0 && solveur.peutPayer(Paiement.pourGare(nbGares))) {
+                for (JsonElement element : etat.getAsJsonArray("villes")) {
+                    JsonObject ville = element.getAsJsonObject();
+                    if (!ville.has("proprietaire")) {
+                        candidats.add(ville.get("nom").getAsString());
+                    }
+                }
+            }
+        }
+
+        void fermer() {
+            try {
+                if (session != null && session.isOpen()) {
+                    session.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
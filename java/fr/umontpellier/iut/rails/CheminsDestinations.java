@@ -0,0 +1,490 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Cache des k plus courts chemins (sans cycle) entre les villes de chaque
+ * destination d'un plateau, sur le plateau vide.
+ * <p>
+ * Les chemins ne dépendent que de la structure du plateau : ils sont calculés
+ * une fois (algorithme de Yen, sur le graphe des villes où deux villes voisines
+ * sont séparées par la plus courte des routes qui les relient), puis enregistrés
+ * dans un fichier qui est projeté en mémoire en lecture seule. Toutes les parties
+ * d'un processus partagent la même projection, et plusieurs processus qui ouvrent
+ * le même fichier partagent les mêmes pages. Les destinations qui ne sont pas
+ * encore dans le fichier sont calculées et ajoutées à la demande : le fichier
+ * complété est écrit à côté puis renommé à la place de l'ancien, si bien qu'un
+ * lecteur voit toujours un fichier complet.
+ * <p>
+ * Format du fichier :
+ * <pre>
+ *   "RAILSKSP" (8 octets), version (int), empreinte du plateau (long), k (int)
+ *   nbPaires (int), puis pour chaque paire, par clé croissante : clé (long :
+ *     ville1 * nbVilles + ville2, avec ville1 &lt; ville2), position (int)
+ *   à chaque position : nbChemins (int), puis pour chaque chemin, par longueur
+ *     croissante : longueur (int), nbVilles (int), villes (int chacune)
+ * </pre>
+ * La lecture n'utilise que des lectures absolues sur le tampon projeté, qui ne
+ * modifient pas son état : un même cache peut être lu par tous les threads.
+ * <p>
+ * Utilisation (précalcul) : {@code CheminsDestinations plateau chemins.bin [k]}
+ */
+public class CheminsDestinations {
+    public static final byte[] MAGIQUE = "RAILSKSP".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 2;
+    /**
+     * Nombre de chemins gardés par destination par défaut
+     */
+    public static final int K_PAR_DEFAUT = 8;
+
+    private static final int TAILLE_EN_TETE = MAGIQUE.length + 4 + 8 + 4 + 4;
+    /**
+     * Taille d'une entrée de l'index (clé et position)
+     */
+    private static final int TAILLE_ENTREE = 8 + 4;
+
+    private final Path fichier;
+    private final EvaluateurDestinations plateau;
+    private final int k;
+    /**
+     * Contenu du fichier projeté en mémoire (remplacé lorsque le fichier est
+     * complété)
+     */
+    private volatile ByteBuffer donnees;
+
+    private CheminsDestinations(Path fichier, EvaluateurDestinations plateau, int k, ByteBuffer donnees) {
+        this.fichier = fichier;
+        this.plateau = plateau;
+        this.k = k;
+        this.donnees = donnees;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Plateau plateau = FormatPlateau.charger(Path.of(args[0]));
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : K_PAR_DEFAUT;
+        List<Destination> destinations = new ArrayList<>(plateau.getDestinations());
+        destinations.addAll(plateau.getDestinationsLongues());
+        long debut = System.nanoTime();
+        CheminsDestinations chemins = ouvrir(Path.of(args[1]),
+                new EvaluateurDestinations(plateau.getVilles(), plateau.getRoutes()), destinations, k);
+        System.out.printf("%d destinations, %d chemins au plus par destination, %.1f ms%n", chemins.getNbPaires(), k,
+                (System.nanoTime() - debut) / 1e6);
+    }
+
+    /**
+     * Ouvre le cache enregistré dans un fichier, en le créant (ou en le
+     * remplaçant s'il a été calculé pour un autre plateau ou une autre valeur de
+     * k) et en le complétant si nécessaire
+     *
+     * @param plateau      la structure du plateau (seules les parties dont
+     *                     l'évaluateur a la même empreinte peuvent utiliser le
+     *                     cache)
+     * @param destinations les destinations qui doivent être dans le cache
+     * @param k            nombre maximal de chemins par destination
+     */
+    public static CheminsDestinations ouvrir(Path fichier, EvaluateurDestinations plateau,
+                                             Collection<Destination> destinations, int k) throws IOException {
+        if (k < 1) {
+            throw new IllegalArgumentException("Nombre de chemins invalide : " + k);
+        }
+        ByteBuffer donnees = null;
+        if (Files.exists(fichier)) {
+            donnees = projeter(fichier);
+            if (!estValide(donnees, plateau, k)) {
+                donnees = null;
+            }
+        }
+        CheminsDestinations chemins = new CheminsDestinations(fichier, plateau, k, donnees);
+        chemins.completer(destinations);
+        return chemins;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Nombre de destinations (paires de villes) dans le cache
+     */
+    public int getNbPaires() {
+        ByteBuffer d = donnees;
+        return d == null ? 0 : d.getInt(TAILLE_EN_TETE - 4);
+    }
+
+    /**
+     * Ajoute au cache les destinations qui n'y sont pas encore (le fichier est
+     * réécrit s'il en manque)
+     */
+    public synchronized void completer(Collection<Destination> destinations) throws IOException {
+        int nbVilles = plateau.getNbVilles();
+        TreeMap<Long, List<int[]>> paires = new TreeMap<>();
+        for (Destination destination : destinations) {
+            int v1 = plateau.indiceVille(destination.getVille1());
+            int v2 = plateau.indiceVille(destination.getVille2());
+            if (v1 < 0 || v2 < 0 || v1 == v2) {
+                throw new IllegalArgumentException("Destination hors du plateau : " + destination);
+            }
+            long cle = cle(Math.min(v1, v2), Math.max(v1, v2), nbVilles);
+            if (chercher(donnees, cle) < 0 && !paires.containsKey(cle)) {
+                paires.put(cle, plusCourtsChemins(Math.min(v1, v2), Math.max(v1, v2)));
+            }
+        }
+        if (paires.isEmpty() && donnees != null) {
+            return;
+        }
+        // les chemins déjà calculés sont repris tels quels
+        ByteBuffer d = donnees;
+        int nbAnciennes = d == null ? 0 : d.getInt(TAILLE_EN_TETE - 4);
+        for (int i = 0; i < nbAnciennes; i++) {
+            long cle = d.getLong(TAILLE_EN_TETE + TAILLE_ENTREE * i);
+            paires.put(cle, lireChemins(d, d.getInt(TAILLE_EN_TETE + TAILLE_ENTREE * i + 8)));
+        }
+        enregistrer(paires);
+        donnees = projeter(fichier);
+    }
+
+    /**
+     * Marque les routes libres qui appartiennent à un des chemins encore
+     * praticables (sans route d'un adversaire) de chacune des destinations
+     * données : ce sont les seules routes qui peuvent rapprocher le joueur de ses
+     * destinations tant qu'elles ont chacune un tel chemin.
+     *
+     * @param evaluateur l'évaluateur de la partie du joueur
+     * @return un tableau indiqué par indice de route, ou {@code null} si le cache
+     * ne permet pas de conclure (autre plateau, destination absente du cache, ou
+     * destination dont aucun des k chemins n'est praticable)
+     */
+    public boolean[] routesUtiles(EvaluateurDestinations evaluateur, Joueur joueur,
+                                  Collection<Destination> destinations) {
+        ByteBuffer d = donnees;
+        if (d == null || evaluateur.getEmpreinte() != plateau.getEmpreinte()) {
+            return null;
+        }
+        int nbVilles = evaluateur.getNbVilles();
+        byte[] etats = evaluateur.encoderRoutes(joueur, new byte[evaluateur.getRoutes().size()], 0);
+        boolean[] utiles = new boolean[etats.length];
+        for (Destination destination : destinations) {
+            int v1 = evaluateur.indiceVille(destination.getVille1());
+            int v2 = evaluateur.indiceVille(destination.getVille2());
+            if (v1 < 0 || v2 < 0) {
+                return null;
+            }
+            int position = chercher(d, cle(Math.min(v1, v2), Math.max(v1, v2), nbVilles));
+            if (position < 0 || !marquerChemins(evaluateur, d, position, etats, utiles)) {
+                return null;
+            }
+        }
+        return utiles;
+    }
+
+    /**
+     * Marque les routes libres des chemins praticables d'une destination
+     *
+     * @return {@code true} si au moins un chemin est praticable
+     */
+    private static boolean marquerChemins(EvaluateurDestinations evaluateur, ByteBuffer d, int position,
+                                          byte[] etats, boolean[] utiles) {
+        boolean praticable = false;
+        int nbChemins = d.getInt(position);
+        position += 4;
+        for (int c = 0; c < nbChemins; c++) {
+            int nbVillesChemin = d.getInt(position + 4);
+            position += 8;
+            int debut = position;
+            position += 4 * nbVillesChemin;
+            boolean libre = true;
+            for (int i = debut; i < position - 4 && libre; i += 4) {
+                libre = troncon(evaluateur, d.getInt(i), d.getInt(i + 4), etats, null);
+            }
+            if (libre) {
+                praticable = true;
+                for (int i = debut; i < position - 4; i += 4) {
+                    troncon(evaluateur, d.getInt(i), d.getInt(i + 4), etats, utiles);
+                }
+            }
+        }
+        return praticable;
+    }
+
+    /**
+     * Indique si deux villes voisines sont reliées par une route qui n'est pas à
+     * un adversaire, et marque les routes libres qui les relient
+     *
+     * @param utiles le tableau où les routes libres sont marquées ({@code null}
+     *               pour ne rien marquer)
+     */
+    private static boolean troncon(EvaluateurDestinations evaluateur, int ville1, int ville2, byte[] etats,
+                                   boolean[] utiles) {
+        boolean praticable = false;
+        for (int r : evaluateur.getAdjacence(ville1)) {
+            if (evaluateur.getAutreExtremite(r, ville1) == ville2 && etats[r] != EvaluateurDestinations.BLOQUEE) {
+                praticable = true;
+                if (utiles != null && etats[r] == EvaluateurDestinations.LIBRE) {
+                    utiles[r] = true;
+                }
+            }
+        }
+        return praticable;
+    }
+
+    /**
+     * Calcule les k plus courts chemins sans cycle entre deux villes (algorithme
+     * de Yen), par longueur croissante puis par suite de villes croissante
+     *
+     * @return chaque chemin sous la forme {longueur, ville1, ..., ville2}
+     */
+    private List<int[]> plusCourtsChemins(int depart, int arrivee) {
+        Comparator<int[]> ordre = (a, b) -> Arrays.compare(a, b);
+        List<int[]> chemins = new ArrayList<>();
+        TreeSet<int[]> candidats = new TreeSet<>(ordre);
+        int[] premier = plusCourtChemin(depart, arrivee, new boolean[plateau.getNbVilles()], Set.of());
+        if (premier == null) {
+            return chemins;
+        }
+        chemins.add(premier);
+        while (chemins.size() < k) {
+            int[] precedent = chemins.get(chemins.size() - 1);
+            boolean[] interdites = new boolean[plateau.getNbVilles()];
+            int longueurRacine = 0;
+            for (int i = 1; i < precedent.length - 1; i++) {
+                // déviation à partir de la i-ème ville du chemin précédent
+                Set<Long> aretesInterdites = new HashSet<>();
+                for (int[] chemin : chemins) {
+                    if (chemin.length > i + 1 && Arrays.equals(chemin, 1, i + 1, precedent, 1, i + 1)) {
+                        aretesInterdites.add(arete(chemin[i], chemin[i + 1]));
+                    }
+                }
+                int[] deviation = plusCourtChemin(precedent[i], arrivee, interdites, aretesInterdites);
+                if (deviation != null) {
+                    int[] chemin = new int[i + deviation.length - 1];
+                    chemin[0] = longueurRacine + deviation[0];
+                    System.arraycopy(precedent, 1, chemin, 1, i - 1);
+                    System.arraycopy(deviation, 1, chemin, i, deviation.length - 1);
+                    candidats.add(chemin);
+                }
+                interdites[precedent[i]] = true;
+                longueurRacine += distance(precedent[i], precedent[i + 1]);
+            }
+            // un candidat peut avoir été retenu entre-temps par une autre déviation
+            int[] suivant;
+            do {
+                suivant = candidats.pollFirst();
+            } while (suivant != null && contient(chemins, suivant));
+            if (suivant == null) {
+                break;
+            }
+            chemins.add(suivant);
+        }
+        return chemins;
+    }
+
+    private static boolean contient(List<int[]> chemins, int[] chemin) {
+        for (int[] c : chemins) {
+            if (Arrays.equals(c, chemin)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plus court chemin entre deux villes (Dijkstra) qui évite des villes et des
+     * liaisons entre villes voisines
+     *
+     * @return le chemin sous la forme {longueur, depart, ..., arrivee}, ou
+     * {@code null} s'il n'y en a pas
+     */
+    private int[] plusCourtChemin(int depart, int arrivee, boolean[] villesInterdites, Set<Long> aretesInterdites) {
+        int nbVilles = plateau.getNbVilles();
+        int[] distances = new int[nbVilles];
+        int[] precedentes = new int[nbVilles];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        distances[depart] = 0;
+        PriorityQueue<int[]> file = new PriorityQueue<>(Comparator.comparingInt((int[] e) -> e[0])
+                .thenComparingInt(e -> e[1]));
+        file.add(new int[]{0, depart});
+        while (!file.isEmpty()) {
+            int[] element = file.poll();
+            int v = element[1];
+            if (element[0] > distances[v]) {
+                continue;
+            }
+            if (v == arrivee) {
+                break;
+            }
+            for (int r : plateau.getAdjacence(v)) {
+                int voisin = plateau.getAutreExtremite(r, v);
+                if (villesInterdites[voisin] || aretesInterdites.contains(arete(v, voisin))) {
+                    continue;
+                }
+                int distance = distances[v] + plateau.getLongueur(r);
+                if (distance < distances[voisin]) {
+                    distances[voisin] = distance;
+                    precedentes[voisin] = v;
+                    file.add(new int[]{distance, voisin});
+                }
+            }
+        }
+        if (distances[arrivee] == Integer.MAX_VALUE) {
+            return null;
+        }
+        int nb = 1;
+        for (int v = arrivee; v != depart; v = precedentes[v]) {
+            nb++;
+        }
+        int[] chemin = new int[nb + 1];
+        chemin[0] = distances[arrivee];
+        for (int v = arrivee, i = nb; i > 0; v = precedentes[v], i--) {
+            chemin[i] = v;
+        }
+        return chemin;
+    }
+
+    /**
+     * Longueur de la plus courte route entre deux villes voisines
+     */
+    private int distance(int ville1, int ville2) {
+        int distance = Integer.MAX_VALUE;
+        for (int r : plateau.getAdjacence(ville1)) {
+            if (plateau.getAutreExtremite(r, ville1) == ville2) {
+                distance = Math.min(distance, plateau.getLongueur(r));
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Clé d'une paire de villes dans l'index du fichier
+     */
+    private static long cle(int ville1, int ville2, int nbVilles) {
+        return (long) ville1 * nbVilles + ville2;
+    }
+
+    private static long arete(int ville1, int ville2) {
+        return ((long) Math.min(ville1, ville2) << 32) | Math.max(ville1, ville2);
+    }
+
+    /**
+     * Recherche dichotomique d'une paire de villes dans l'index du fichier
+     *
+     * @return la position des chemins de la paire, ou -1 si elle n'est pas dans
+     * le cache
+     */
+    private static int chercher(ByteBuffer d, long cle) {
+        if (d == null) {
+            return -1;
+        }
+        int bas = 0;
+        int haut = d.getInt(TAILLE_EN_TETE - 4) - 1;
+        while (bas <= haut) {
+            int milieu = (bas + haut) >>> 1;
+            long c = d.getLong(TAILLE_EN_TETE + TAILLE_ENTREE * milieu);
+            if (c < cle) {
+                bas = milieu + 1;
+            } else if (c > cle) {
+                haut = milieu - 1;
+            } else {
+                return d.getInt(TAILLE_EN_TETE + TAILLE_ENTREE * milieu + 8);
+            }
+        }
+        return -1;
+    }
+
+    private static List<int[]> lireChemins(ByteBuffer d, int position) {
+        int nbChemins = d.getInt(position);
+        position += 4;
+        List<int[]> chemins = new ArrayList<>(nbChemins);
+        for (int c = 0; c < nbChemins; c++) {
+            int[] chemin = new int[d.getInt(position + 4) + 1];
+            chemin[0] = d.getInt(position);
+            position += 8;
+            for (int i = 1; i < chemin.length; i++, position += 4) {
+                chemin[i] = d.getInt(position);
+            }
+            chemins.add(chemin);
+        }
+        return chemins;
+    }
+
+    /**
+     * Écrit le cache dans un fichier temporaire du même répertoire, puis le
+     * renomme à la place du fichier du cache
+     */
+    private void enregistrer(SortedMap<Long, List<int[]>> paires) throws IOException {
+        long taille = TAILLE_EN_TETE + (long) TAILLE_ENTREE * paires.size();
+        for (List<int[]> chemins : paires.values()) {
+            taille += 4;
+            for (int[] chemin : chemins) {
+                taille += 8 + 4L * (chemin.length - 1);
+            }
+        }
+        if (taille > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache de chemins trop grand : " + taille + " octets");
+        }
+        ByteBuffer sortie = ByteBuffer.allocate((int) taille);
+        sortie.put(MAGIQUE);
+        sortie.putInt(VERSION);
+        sortie.putLong(plateau.getEmpreinte());
+        sortie.putInt(k);
+        sortie.putInt(paires.size());
+        int position = TAILLE_EN_TETE + TAILLE_ENTREE * paires.size();
+        for (Map.Entry<Long, List<int[]>> paire : paires.entrySet()) {
+            sortie.putLong(paire.getKey());
+            sortie.putInt(position);
+            sortie.mark();
+            sortie.position(position);
+            sortie.putInt(paire.getValue().size());
+            for (int[] chemin : paire.getValue()) {
+                sortie.putInt(chemin[0]);
+                sortie.putInt(chemin.length - 1);
+                for (int i = 1; i < chemin.length; i++) {
+                    sortie.putInt(chemin[i]);
+                }
+            }
+            position = sortie.position();
+            sortie.reset();
+        }
+
+        Path repertoire = fichier.toAbsolutePath().getParent();
+        Path temporaire = Files.createTempFile(repertoire, fichier.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaire, sortie.array());
+            Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    private static ByteBuffer projeter(Path fichier) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+    }
+
+    /**
+     * Indique si un fichier projeté est un cache complet pour ce plateau et cette
+     * valeur de k
+     */
+    private static boolean estValide(ByteBuffer d, EvaluateurDestinations plateau, int k) {
+        if (d.capacity() < TAILLE_EN_TETE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIQUE.length; i++) {
+            if (d.get(i) != MAGIQUE[i]) {
+                return false;
+            }
+        }
+        return d.getInt(MAGIQUE.length) == VERSION
+                && d.getLong(MAGIQUE.length + 4) == plateau.getEmpreinte()
+                && d.getInt(MAGIQUE.length + 12) == k
+                && d.capacity() >= TAILLE_EN_TETE + (long) TAILLE_ENTREE * d.getInt(TAILLE_EN_TETE - 4);
+    }
+}
@@ -0,0 +1,340 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.*;
+
+/**
+ * Version immuable de l'état d'une partie, enregistrée au début de chaque tour
+ * (et publiée après chaque coup, voir {@code InstantanePartie}).
+ * <p>
+ * Les versions successives partagent tout ce qui n'a pas changé : les
+ * propriétaires des routes et des villes et la pile de destinations sont des
+ * {@code VecteurPersistant}, mis à jour à partir des coups du journal joués
+ * depuis la version précédente, et l'état d'un joueur qui n'a pas changé est
+ * réutilisé tel quel. Une nouvelle version coûte donc un temps proportionnel
+ * à ce qui a changé pendant le tour, et non à la taille du plateau.
+ * <p>
+ * La version ne garde aucune référence aux objets {@code Joueur} de la partie
+ * (qui continuent d'être modifiés par le thread de la partie) : les joueurs y
+ * sont désignés par leur siège (indice dans {@code Jeu.getJoueurs()}).
+ * <p>
+ * Les cartes wagon ne sont pas ordonnées (elles sont tirées au hasard, voir
+ * {@code PaquetCartesWagon}) : seuls les nombres de cartes de chaque couleur
+ * sont gardés.
+ */
+public final class EtatPartie {
+    /**
+     * Position de la version dans l'historique de la partie (les instantanés
+     * publiés pendant un tour ont le numéro de la version du début du tour)
+     */
+    private final int numero;
+    private final int nbTours;
+    /**
+     * Indice du joueur dont c'est le tour
+     */
+    private final int joueurCourant;
+    /**
+     * Nombre de coups du journal au moment de la version
+     */
+    private final int nbCoups;
+    /**
+     * Siège du propriétaire de chaque route et de chaque ville ({@code null} si
+     * elle est libre). Les sièges sont de petits entiers, tous partagés par
+     * {@code Integer.valueOf} : {@code VecteurPersistant.comparer} peut donc les
+     * comparer par référence.
+     */
+    private final VecteurPersistant<Integer> proprietairesRoutes;
+    private final VecteurPersistant<Integer> proprietairesVilles;
+    private final EtatJoueur[] joueurs;
+    private final int[] pioche;
+    private final int[] defausse;
+    private final CouleurWagon[] visibles;
+    /**
+     * Pile de destinations : les éléments de {@code debutPile} à la fin du vecteur
+     * (les destinations piochées restent au début du vecteur, pour que la pioche
+     * et la remise sous la pile ne recopient rien)
+     */
+    private final VecteurPersistant<Destination> pileDestinations;
+    private final int debutPile;
+    /**
+     * Nombre total de destinations piochées depuis le début de la partie
+     */
+    private final long nbDestinationsPiochees;
+    /**
+     * Graine du générateur aléatoire de la partie au début du tour
+     */
+    private final long graineTour;
+
+    private EtatPartie(int numero, Jeu jeu, int nbCoups, VecteurPersistant<Integer> proprietairesRoutes,
+                       VecteurPersistant<Integer> proprietairesVilles, EtatJoueur[] joueurs,
+                       VecteurPersistant<Destination> pileDestinations, int debutPile) {
+        this.numero = numero;
+        this.nbTours = jeu.getNbTours();
+        this.joueurCourant = jeu.getJoueurs().indexOf(jeu.getJoueurCourant());
+        this.nbCoups = nbCoups;
+        this.proprietairesRoutes = proprietairesRoutes;
+        this.proprietairesVilles = proprietairesVilles;
+        this.joueurs = joueurs;
+        this.pioche = jeu.getCompteursPioche();
+        this.defausse = jeu.getCompteursDefausse();
+        this.visibles = jeu.getCartesWagonVisibles().toArray(new CouleurWagon[0]);
+        this.pileDestinations = pileDestinations;
+        this.debutPile = debutPile;
+        this.nbDestinationsPiochees = jeu.getNbDestinationsPiochees();
+        this.graineTour = jeu.getGraineTour();
+    }
+
+    /**
+     * Enregistre la première version d'une partie (en parcourant tout le plateau)
+     */
+    static EtatPartie initiale(Jeu jeu) {
+        List<Integer> routes = new ArrayList<>();
+        for (Route route : jeu.getRoutes()) {
+            routes.add(siege(jeu, route.getProprietaire()));
+        }
+        List<Integer> villes = new ArrayList<>();
+        for (Ville ville : jeu.getVilles()) {
+            villes.add(siege(jeu, ville.getProprietaire()));
+        }
+        EtatJoueur[] joueurs = new EtatJoueur[jeu.getJoueurs().size()];
+        for (int j = 0; j < joueurs.length; j++) {
+            joueurs[j] = new EtatJoueur(jeu.getJoueurs().get(j));
+        }
+        return new EtatPartie(0, jeu, jeu.getJournal().getNbCoups(), VecteurPersistant.de(routes),
+                VecteurPersistant.de(villes), joueurs, VecteurPersistant.de(jeu.getPileDestinations()), 0);
+    }
+
+    /**
+     * Renvoie le siège d'un joueur, ou {@code null} pour {@code null}
+     */
+    private static Integer siege(Jeu jeu, Joueur joueur) {
+        return joueur == null ? null : Integer.valueOf(jeu.getJoueurs().indexOf(joueur));
+    }
+
+    /**
+     * Renvoie le joueur assis à un siège, ou {@code null} pour {@code null}
+     */
+    private static Joueur joueur(Jeu jeu, Integer siege) {
+        return siege == null ? null : jeu.getJoueurs().get(siege);
+    }
+
+    /**
+     * Enregistre la version qui suit celle-ci, en ne considérant que ce qui a
+     * changé depuis : les routes et gares du journal, l'état des joueurs et les
+     * destinations piochées ou remises sous la pile
+     */
+    EtatPartie suivante(Jeu jeu) {
+        return suivante(jeu, numero + 1);
+    }
+
+    /**
+     * Enregistre une version ultérieure à celle-ci, avec le numéro donné
+     */
+    EtatPartie suivante(Jeu jeu, int numeroSuivante) {
+        List<Joueur> listeJoueurs = jeu.getJoueurs();
+        JournalCoups journal = jeu.getJournal();
+        VecteurPersistant<Integer> routes = proprietairesRoutes;
+        VecteurPersistant<Integer> villes = proprietairesVilles;
+        for (int c = nbCoups; c < journal.getNbCoups(); c++) {
+            Integer siege = Integer.valueOf(journal.getJoueur(c));
+            switch (journal.getType(c)) {
+                case ROUTE -> routes = routes.set(journal.getElement(c), siege);
+                case GARE -> villes = villes.set(journal.getElement(c), siege);
+                default -> {
+                }
+            }
+        }
+
+        EtatJoueur[] etatsJoueurs = new EtatJoueur[joueurs.length];
+        for (int j = 0; j < joueurs.length; j++) {
+            EtatJoueur etat = new EtatJoueur(listeJoueurs.get(j));
+            etatsJoueurs[j] = etat.equals(joueurs[j]) ? joueurs[j] : etat;
+        }
+
+        // la pile n'est modifiée qu'en piochant sur le dessus et en remettant des
+        // destinations dessous
+        List<Destination> pile = jeu.getPileDestinations();
+        int piochees = (int) (jeu.getNbDestinationsPiochees() - nbDestinationsPiochees);
+        int restantes = pileDestinations.size() - debutPile - piochees;
+        VecteurPersistant<Destination> nouvellePile = pileDestinations;
+        int nouveauDebut = debutPile + piochees;
+        if (restantes < 0 || restantes > pile.size()) {
+            nouvellePile = VecteurPersistant.de(pile);
+            nouveauDebut = 0;
+        } else {
+            for (int d = restantes; d < pile.size(); d++) {
+                nouvellePile = nouvellePile.ajouter(pile.get(d));
+            }
+        }
+        return new EtatPartie(numeroSuivante, jeu, journal.getNbCoups(), routes, villes, etatsJoueurs, nouvellePile,
+                nouveauDebut);
+    }
+
+    /**
+     * Remet la partie dans l'état de cette version
+     *
+     * @param actuel la version qui correspond à l'état actuel de la partie (seuls
+     *               les routes et les villes qui diffèrent entre les deux versions
+     *               sont modifiées)
+     */
+    void restaurer(Jeu jeu, EtatPartie actuel) {
+        List<Route> routes = jeu.getRoutes();
+        actuel.proprietairesRoutes.comparer(proprietairesRoutes,
+                r -> routes.get(r).setProprietaire(joueur(jeu, proprietairesRoutes.get(r))));
+        List<Ville> villes = jeu.getVilles();
+        actuel.proprietairesVilles.comparer(proprietairesVilles,
+                v -> villes.get(v).setProprietaire(joueur(jeu, proprietairesVilles.get(v))));
+        for (int j = 0; j < joueurs.length; j++) {
+            joueurs[j].restaurer(jeu.getJoueurs().get(j));
+        }
+        List<Destination> pile = new ArrayList<>(pileDestinations.size() - debutPile);
+        for (int d = debutPile; d < pileDestinations.size(); d++) {
+            pile.add(pileDestinations.get(d));
+        }
+        jeu.restaurerCartesEtPiles(pioche, defausse, Arrays.asList(visibles), pile, nbDestinationsPiochees);
+        jeu.getJournal().tronquer(nbCoups);
+        jeu.restaurerTour(nbTours, jeu.getJoueurs().get(joueurCourant), graineTour);
+    }
+
+    public int getNumero() {
+        return numero;
+    }
+
+    public int getNbTours() {
+        return nbTours;
+    }
+
+    public int getJoueurCourant() {
+        return joueurCourant;
+    }
+
+    /**
+     * Renvoie le siège du propriétaire d'une route dans cette version
+     *
+     * @param route indice de la route dans {@code Jeu.getRoutes()}
+     * @return le siège du propriétaire, ou -1 si la route est libre
+     */
+    public int getProprietaireRoute(int route) {
+        Integer siege = proprietairesRoutes.get(route);
+        return siege == null ? -1 : siege;
+    }
+
+    /**
+     * Renvoie le siège du propriétaire d'une ville (voir
+     * {@code getProprietaireRoute})
+     */
+    public int getProprietaireVille(int ville) {
+        Integer siege = proprietairesVilles.get(ville);
+        return siege == null ? -1 : siege;
+    }
+
+    public EtatJoueur getJoueur(int joueur) {
+        return joueurs[joueur];
+    }
+
+    public int getTaillePileDestinations() {
+        return pileDestinations.size() - debutPile;
+    }
+
+    /**
+     * Description de la version pour un navigateur d'historique (sans les
+     * informations cachées : seuls les nombres de cartes et de destinations des
+     * joueurs sont donnés)
+     */
+    public Object asPOJO() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("numero", numero);
+        data.put("nbTours", nbTours);
+        data.put("joueurCourant", joueurCourant);
+        List<Integer> routes = new ArrayList<>();
+        for (int r = 0; r < proprietairesRoutes.size(); r++) {
+            routes.add(proprietairesRoutes.get(r));
+        }
+        data.put("proprietairesRoutes", routes);
+        List<Integer> villes = new ArrayList<>();
+        for (int v = 0; v < proprietairesVilles.size(); v++) {
+            villes.add(proprietairesVilles.get(v));
+        }
+        data.put("proprietairesVilles", villes);
+        List<Object> etatsJoueurs = new ArrayList<>();
+        for (EtatJoueur joueur : joueurs) {
+            etatsJoueurs.add(Map.of(
+                    "nbWagons", joueur.nbWagons,
+                    "nbGares", joueur.nbGares,
+                    "score", joueur.score,
+                    "nbCartesWagon", Arrays.stream(joueur.cartesWagon).sum(),
+                    "nbDestinations", joueur.destinations.length));
+        }
+        data.put("joueurs", etatsJoueurs);
+        data.put("cartesWagonVisibles", Arrays.asList(visibles));
+        data.put("pileDestinations", getTaillePileDestinations());
+        return data;
+    }
+
+    /**
+     * État immuable d'un joueur
+     */
+    public static final class EtatJoueur {
+        private final int nbWagons;
+        private final int nbGares;
+        private final int score;
+        /**
+         * Nombre de cartes de chaque couleur dans la main du joueur (indicé par
+         * {@code CouleurWagon.ordinal()})
+         */
+        private final int[] cartesWagon;
+        private final Destination[] destinations;
+
+        EtatJoueur(Joueur joueur) {
+            nbWagons = joueur.getNbWagons();
+            nbGares = joueur.getNbGares();
+            score = joueur.getScore();
+            cartesWagon = Paiement.compter(joueur.getCartesWagon());
+            destinations = joueur.getDestinations().toArray(new Destination[0]);
+        }
+
+        /**
+         * Remet un joueur dans cet état
+         */
+        void restaurer(Joueur joueur) {
+            joueur.restaurer(nbWagons, nbGares, score, cartesWagon, Arrays.asList(destinations));
+        }
+
+        public int getNbWagons() {
+            return nbWagons;
+        }
+
+        public int getNbGares() {
+            return nbGares;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getNbCartesWagon(CouleurWagon couleur) {
+            return cartesWagon[couleur.ordinal()];
+        }
+
+        public List<Destination> getDestinations() {
+            return List.of(destinations);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EtatJoueur)) {
+                return false;
+            }
+            EtatJoueur autre = (EtatJoueur) o;
+            return nbWagons == autre.nbWagons && nbGares == autre.nbGares && score == autre.score
+                    && Arrays.equals(cartesWagon, autre.cartesWagon) && Arrays.equals(destinations, autre.destinations);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nbWagons, nbGares, score, Arrays.hashCode(cartesWagon), Arrays.hashCode(destinations));
+        }
+    }
+}
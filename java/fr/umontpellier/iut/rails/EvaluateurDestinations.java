@@ -0,0 +1,475 @@
+package fr.umontpellier.iut.rails;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Estime le nombre de wagons qu'il faut encore poser pour réaliser conjointement
+ * un ensemble de destinations.
+ * <p>
+ * L'estimation est une approximation d'arbre de Steiner (heuristique du plus
+ * proche terminal) : on part du réseau déjà construit par le joueur, puis on y
+ * raccorde successivement la ville de destination la plus proche par un plus
+ * court chemin. Les routes du joueur coûtent 0, les routes libres coûtent leur
+ * longueur et les routes des adversaires sont infranchissables.
+ * <p>
+ * La structure du graphe (index des villes et listes d'adjacence) est calculée
+ * une seule fois à la création de l'évaluateur, si bien qu'une estimation ne
+ * coûte que quelques parcours de Dijkstra sur le plateau.
+ * <p>
+ * Une estimation travaille sur une position encodée dans des tableaux (l'état
+ * de chaque route vis-à-vis du joueur et les villes à relier), ce qui permet
+ * d'évaluer des positions de plusieurs parties hors de leur thread et par lots
+ * (voir {@code OrdonnanceurBots}).
+ */
+public class EvaluateurDestinations {
+    /**
+     * Valeur renvoyée lorsque les destinations ne peuvent plus être reliées
+     */
+    public static final int INATTEIGNABLE = Integer.MAX_VALUE;
+    /**
+     * État d'une route libre dans une position encodée (voir {@code encoderRoutes})
+     */
+    public static final byte LIBRE = 0;
+    /**
+     * État d'une route du joueur dans une position encodée
+     */
+    public static final byte POSSEDEE = 1;
+    /**
+     * État d'une route d'un adversaire (infranchissable) dans une position encodée
+     */
+    public static final byte BLOQUEE = 2;
+
+    /**
+     * Villes du plateau (l'indice d'une ville dans cette liste sert d'identifiant)
+     */
+    private final List<Ville> villes;
+    /**
+     * Routes du plateau (l'indice d'une route dans cette liste sert d'identifiant)
+     */
+    private final List<Route> routes;
+    /**
+     * Indice de chaque ville du plateau, indexé par nom en minuscules
+     */
+    private final Map<String, Integer> indicesVilles;
+    /**
+     * Pour chaque ville, les indices des routes qui en partent
+     */
+    private final int[][] adjacence;
+    /**
+     * Pour chaque route, l'indice de sa première extrémité
+     */
+    private final int[] extremites1;
+    /**
+     * Pour chaque route, l'indice de sa deuxième extrémité
+     */
+    private final int[] extremites2;
+    /**
+     * Longueur de chaque route
+     */
+    private final int[] longueurs;
+    /**
+     * Empreinte de la structure du plateau (villes, extrémités et longueurs des
+     * routes, dans l'ordre des indices)
+     */
+    private final long empreinte;
+
+    public EvaluateurDestinations(List<Ville> villes, List<Route> routes) {
+        this.villes = villes;
+        this.routes = routes;
+        indicesVilles = new HashMap<>();
+        Map<Ville, Integer> indices = new HashMap<>();
+        for (int i = 0; i < villes.size(); i++) {
+            indicesVilles.put(villes.get(i).getNom().toLowerCase(), i);
+            indices.put(villes.get(i), i);
+        }
+
+        extremites1 = new int[routes.size()];
+        extremites2 = new int[routes.size()];
+        longueurs = new int[routes.size()];
+        int[] degres = new int[villes.size()];
+        for (int r = 0; r < routes.size(); r++) {
+            extremites1[r] = indices.get(routes.get(r).getVille1());
+            extremites2[r] = indices.get(routes.get(r).getVille2());
+            longueurs[r] = routes.get(r).getLongueur();
+            degres[extremites1[r]]++;
+            degres[extremites2[r]]++;
+        }
+        adjacence = new int[villes.size()][];
+        for (int v = 0; v < villes.size(); v++) {
+            adjacence[v] = new int[degres[v]];
+            degres[v] = 0;
+        }
+        for (int r = 0; r < routes.size(); r++) {
+            adjacence[extremites1[r]][degres[extremites1[r]]++] = r;
+            adjacence[extremites2[r]][degres[extremites2[r]]++] = r;
+        }
+
+        // empreinte FNV-1a 64 bits
+        long h = 0xcbf29ce484222325L;
+        for (Ville ville : villes) {
+            for (byte b : ville.getNom().getBytes(StandardCharsets.UTF_8)) {
+                h = (h ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            h = (h ^ 0xff) * 0x100000001b3L;
+        }
+        for (int r = 0; r < routes.size(); r++) {
+            h = (h ^ extremites1[r]) * 0x100000001b3L;
+            h = (h ^ extremites2[r]) * 0x100000001b3L;
+            h = (h ^ longueurs[r]) * 0x100000001b3L;
+        }
+        empreinte = h;
+    }
+
+    /**
+     * Renvoie l'indice de la ville correspondant au nom donné (sans tenir
+     * compte de la casse), ou -1 si la
+     * ville est inconnue
+     */
+    public int indiceVille(String nom) {
+        Integer indice = indicesVilles.get(nom.toLowerCase());
+        return indice == null ? -1 : indice;
+    }
+
+    /**
+     * Nombre de villes du plateau
+     */
+    int getNbVilles() {
+        return adjacence.length;
+    }
+
+    /**
+     * Routes du plateau (l'indice d'une route dans cette liste est celui utilisé
+     * par {@code getAdjacence} et {@code getAutreExtremite})
+     */
+    List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Indices des routes qui partent d'une ville
+     */
+    int[] getAdjacence(int ville) {
+        return adjacence[ville];
+    }
+
+    /**
+     * Renvoie l'extrémité d'une route qui n'est pas la ville donnée
+     */
+    int getAutreExtremite(int route, int ville) {
+        return extremites1[route] == ville ? extremites2[route] : extremites1[route];
+    }
+
+    int getExtremite1(int route) {
+        return extremites1[route];
+    }
+
+    int getExtremite2(int route) {
+        return extremites2[route];
+    }
+
+    int getLongueur(int route) {
+        return longueurs[route];
+    }
+
+    /**
+     * Empreinte de la structure du plateau : deux évaluateurs de même empreinte
+     * donnent les mêmes indices aux mêmes villes et aux mêmes routes
+     */
+    long getEmpreinte() {
+        return empreinte;
+    }
+
+    /**
+     * Estime le nombre de wagons que le joueur doit encore poser pour relier
+     * toutes les villes des destinations données.
+     *
+     * @param joueur       le joueur dont on considère le réseau
+     * @param destinations les destinations à réaliser ensemble
+     * @return le nombre de wagons estimé, ou {@code INATTEIGNABLE} si une des
+     * destinations ne peut plus être réalisée
+     */
+    public int estimerCout(Joueur joueur, Collection<Destination> destinations) {
+        int[] terminaux = new int[2 * destinations.size()];
+        int nbTerminaux = encoderTerminaux(destinations, terminaux, 0);
+        if (nbTerminaux < 0) {
+            return INATTEIGNABLE;
+        }
+        byte[] etats = encoderRoutes(joueur, new byte[routes.size()], 0);
+        return estimerCout(etats, 0, terminaux, 0, nbTerminaux, new EspaceCalcul(adjacence.length));
+    }
+
+    /**
+     * Encode l'état des routes du point de vue d'un joueur ({@code POSSEDEE},
+     * {@code LIBRE} ou {@code BLOQUEE}, dans l'ordre des routes du plateau)
+     *
+     * @param etats tableau dans lequel les états sont écrits
+     * @param debut indice de l'état de la première route dans {@code etats}
+     * @return le tableau {@code etats}
+     */
+    public byte[] encoderRoutes(Joueur joueur, byte[] etats, int debut) {
+        for (int r = 0; r < routes.size(); r++) {
+            Joueur proprietaire = routes.get(r).getProprietaire();
+            etats[debut + r] = proprietaire == joueur ? POSSEDEE : proprietaire == null ? LIBRE : BLOQUEE;
+        }
+        return etats;
+    }
+
+    /**
+     * Encode l'état des routes du point de vue d'un joueur (voir
+     * {@code encoderRoutes}) à partir de propriétaires déjà encodés
+     *
+     * @param siege         le siège du joueur
+     * @param proprietaires les propriétaires des routes (voir
+     *                      {@code encoderProprietairesRoutes})
+     */
+    byte[] encoderRoutes(int siege, int[] proprietaires, byte[] etats, int debut) {
+        for (int r = 0; r < routes.size(); r++) {
+            int proprietaire = proprietaires[r];
+            etats[debut + r] = proprietaire == siege ? POSSEDEE : proprietaire < 0 ? LIBRE : BLOQUEE;
+        }
+        return etats;
+    }
+
+    /**
+     * Encode le propriétaire de chaque route du plateau : son siège (indice dans
+     * {@code joueurs}), ou -1 si la route est libre
+     */
+    int[] encoderProprietairesRoutes(List<Joueur> joueurs) {
+        int[] proprietaires = new int[routes.size()];
+        for (int r = 0; r < routes.size(); r++) {
+            proprietaires[r] = joueurs.indexOf(routes.get(r).getProprietaire());
+        }
+        return proprietaires;
+    }
+
+    /**
+     * Encode le propriétaire de chaque ville du plateau (voir
+     * {@code encoderProprietairesRoutes})
+     */
+    int[] encoderProprietairesVilles(List<Joueur> joueurs) {
+        int[] proprietaires = new int[villes.size()];
+        for (int v = 0; v < villes.size(); v++) {
+            proprietaires[v] = joueurs.indexOf(villes.get(v).getProprietaire());
+        }
+        return proprietaires;
+    }
+
+    /**
+     * Écrit les indices des villes des destinations données (avec d'éventuels
+     * doublons)
+     *
+     * @param villes tableau dans lequel les indices sont écrits
+     * @param debut  indice du premier élément écrit dans {@code villes}
+     * @return le nombre d'indices écrits, ou -1 si une des villes est inconnue
+     */
+    public int encoderTerminaux(Collection<Destination> destinations, int[] villes, int debut) {
+        int n = 0;
+        for (Destination destination : destinations) {
+            for (String nom : new String[]{destination.getVille1(), destination.getVille2()}) {
+                int v = indiceVille(nom);
+                if (v < 0) {
+                    return -1;
+                }
+                villes[debut + n++] = v;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Estime le nombre de wagons à poser pour relier des villes, dans une position
+     * encodée par {@code encoderRoutes} et {@code encoderTerminaux}. Cette méthode
+     * ne lit que les tableaux donnés et la structure du plateau (qui ne change
+     * jamais) : elle peut être appelée depuis n'importe quel thread, et plusieurs
+     * positions rangées dans les mêmes tableaux peuvent être évaluées à la suite
+     * avec le même espace de calcul.
+     *
+     * @param etats       états des routes
+     * @param debutEtats  indice de l'état de la première route dans {@code etats}
+     * @param terminaux   indices des villes à relier
+     * @param debut       indice de la première ville à relier dans {@code terminaux}
+     * @param nbTerminaux nombre de villes à relier
+     * @param espace      tableaux de travail (qui ne doivent pas être utilisés par
+     *                    un autre thread pendant le calcul)
+     * @return le nombre de wagons estimé, ou {@code INATTEIGNABLE}
+     */
+    public int estimerCout(byte[] etats, int debutEtats, int[] terminaux, int debut, int nbTerminaux,
+                           EspaceCalcul espace) {
+        int nbVilles = adjacence.length;
+        espace.preparer(nbVilles);
+        boolean[] terminal = espace.terminal;
+        boolean[] dansArbre = espace.dansArbre;
+        int nbDistincts = 0;
+        int depart = -1;
+        for (int t = debut; t < debut + nbTerminaux; t++) {
+            int v = terminaux[t];
+            if (!terminal[v]) {
+                terminal[v] = true;
+                nbDistincts++;
+                depart = v;
+            }
+        }
+        int cout = 0;
+        if (nbDistincts > 0) {
+            dansArbre[depart] = true;
+            int nbRelies = 1;
+            int[] distances = espace.distances;
+            while (nbRelies < nbDistincts) {
+                int cible = plusProcheTerminal(etats, debutEtats, espace);
+                if (cible < 0) {
+                    cout = INATTEIGNABLE;
+                    break;
+                }
+                cout += distances[cible];
+                // ajoute le chemin trouvé à l'arbre (ainsi que les villes reliées gratuitement)
+                for (int v = 0; v < nbVilles; v++) {
+                    if (!dansArbre[v] && distances[v] == 0) {
+                        dansArbre[v] = true;
+                        if (terminal[v]) {
+                            nbRelies++;
+                        }
+                    }
+                }
+                int v = cible;
+                while (!dansArbre[v]) {
+                    dansArbre[v] = true;
+                    if (terminal[v]) {
+                        nbRelies++;
+                    }
+                    int r = espace.routePrecedente[v];
+                    v = extremites1[r] == v ? extremites2[r] : extremites1[r];
+                }
+            }
+        }
+        Arrays.fill(terminal, 0, nbVilles, false);
+        Arrays.fill(dansArbre, 0, nbVilles, false);
+        return cout;
+    }
+
+    /**
+     * Exécute un parcours de Dijkstra depuis toutes les villes de l'arbre et
+     * renvoie le terminal non encore relié le plus proche (ou -1 s'il n'y en a
+     * aucun d'accessible). Les tableaux {@code distances} et
+     * {@code routePrecedente} de l'espace de calcul sont remplis pour permettre
+     * de reconstruire le chemin.
+     */
+    private int plusProcheTerminal(byte[] etats, int debutEtats, EspaceCalcul espace) {
+        int[] distances = espace.distances;
+        int[] routePrecedente = espace.routePrecedente;
+        boolean[] dansArbre = espace.dansArbre;
+        boolean[] terminal = espace.terminal;
+        Arrays.fill(distances, 0, adjacence.length, INATTEIGNABLE);
+        espace.viderFile();
+        for (int v = 0; v < adjacence.length; v++) {
+            if (dansArbre[v]) {
+                distances[v] = 0;
+                espace.ajouter(0, v);
+            }
+        }
+        while (!espace.fileVide()) {
+            long element = espace.retirer();
+            int v = (int) element;
+            if ((element >>> 32) > distances[v]) {
+                continue;
+            }
+            if (terminal[v] && !dansArbre[v]) {
+                return v;
+            }
+            for (int r : adjacence[v]) {
+                int poids;
+                byte etat = etats[debutEtats + r];
+                if (etat == POSSEDEE) {
+                    poids = 0;
+                } else if (etat == LIBRE) {
+                    poids = longueurs[r];
+                } else {
+                    continue;
+                }
+                int voisin = extremites1[r] == v ? extremites2[r] : extremites1[r];
+                if (distances[v] + poids < distances[voisin]) {
+                    distances[voisin] = distances[v] + poids;
+                    routePrecedente[voisin] = r;
+                    espace.ajouter(distances[voisin], voisin);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tableaux de travail d'une estimation, réutilisables d'une estimation à
+     * l'autre (et agrandis si nécessaire) pour ne rien allouer pendant le calcul.
+     * La file de priorité du parcours de Dijkstra est un tas de {@code long} (la
+     * distance dans les 32 bits de poids fort, la ville dans les 32 bits de poids
+     * faible), ordonné sur la distance seule.
+     */
+    public static final class EspaceCalcul {
+        private boolean[] terminal;
+        private boolean[] dansArbre;
+        private int[] distances;
+        private int[] routePrecedente;
+        private long[] file = new long[64];
+        private int tailleFile;
+
+        /**
+         * @param nbVilles nombre de villes des plateaux sur lesquels l'espace sera
+         *                 utilisé (il est agrandi si un plateau en a plus)
+         */
+        public EspaceCalcul(int nbVilles) {
+            terminal = new boolean[nbVilles];
+            dansArbre = new boolean[nbVilles];
+            distances = new int[nbVilles];
+            routePrecedente = new int[nbVilles];
+        }
+
+        private void preparer(int nbVilles) {
+            if (distances.length < nbVilles) {
+                terminal = new boolean[nbVilles];
+                dansArbre = new boolean[nbVilles];
+                distances = new int[nbVilles];
+                routePrecedente = new int[nbVilles];
+            }
+        }
+
+        private void viderFile() {
+            tailleFile = 0;
+        }
+
+        private boolean fileVide() {
+            return tailleFile == 0;
+        }
+
+        private void ajouter(long distance, int ville) {
+            if (tailleFile == file.length) {
+                file = Arrays.copyOf(file, 2 * tailleFile);
+            }
+            long element = distance << 32 | ville;
+            int i = tailleFile++;
+            while (i > 0 && (file[(i - 1) / 2] >>> 32) > distance) {
+                file[i] = file[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            file[i] = element;
+        }
+
+        private long retirer() {
+            long premier = file[0];
+            long dernier = file[--tailleFile];
+            int i = 0;
+            while (2 * i + 1 < tailleFile) {
+                int fils = 2 * i + 1;
+                if (fils + 1 < tailleFile && (file[fils] >>> 32) > (file[fils + 1] >>> 32)) {
+                    fils++;
+                }
+                if ((dernier >>> 32) <= (file[fils] >>> 32)) {
+                    break;
+                }
+                file[i] = file[fils];
+                i = fils;
+            }
+            file[i] = dernier;
+            return premier;
+        }
+    }
+}
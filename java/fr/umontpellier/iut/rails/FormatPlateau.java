@@ -0,0 +1,320 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Lecture des plateaux de jeu (villes, routes et destinations) depuis un fichier
+ * de données, et compilation dans un format binaire.
+ * <p>
+ * Le format texte est décrit en tête de {@code plateaux/europe.txt}. Il est
+ * entièrement validé à la lecture (mots-clés, nombre de champs, villes connues,
+ * couleurs, longueurs...), puis le plateau peut être compilé dans un format
+ * binaire qui se décode sans aucune vérification ni analyse de texte :
+ * <pre>
+ *   "RAILSMAP" (8 octets), version (int)
+ *   nbVilles (int), puis pour chaque ville : nom (short longueur + UTF-8)
+ *   nbRoutes (int), puis pour chaque route : type (byte : 0 route, 1 tunnel,
+ *     2 ferry), ville1 (int), ville2 (int), longueur (byte), couleur (byte),
+ *     nbLocomotives (byte)
+ *   nbDestinations (int), puis pour chaque destination : ville1 (int),
+ *     ville2 (int), valeur (short), longue (byte)
+ * </pre>
+ * Un fichier binaire est projeté en mémoire pour être chargé.
+ * <p>
+ * Utilisation (compilation) : {@code FormatPlateau fichier.txt fichier.bin}
+ */
+public class FormatPlateau {
+    public static final byte[] MAGIQUE = "RAILSMAP".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+
+    private static final byte TYPE_ROUTE = 0;
+    private static final byte TYPE_TUNNEL = 1;
+    private static final byte TYPE_FERRY = 2;
+    private static final CouleurWagon[] COULEURS = CouleurWagon.values();
+
+    public static void main(String[] args) throws IOException {
+        Plateau plateau;
+        try (Reader lecteur = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8)) {
+            plateau = lireTexte(lecteur);
+        }
+        Files.write(Path.of(args[1]), compiler(plateau));
+        System.out.printf("%d villes, %d routes, %d destinations%n", plateau.getVilles().size(),
+                plateau.getRoutes().size(), plateau.getDestinations().size() + plateau.getDestinationsLongues().size());
+    }
+
+    /**
+     * Charge un plateau depuis un fichier, au format binaire (reconnu à son en-tête)
+     * ou texte
+     */
+    public static Plateau charger(Path fichier) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            ByteBuffer donnees = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (estBinaire(donnees)) {
+                return decoder(donnees);
+            }
+        }
+        try (Reader lecteur = Files.newBufferedReader(fichier, StandardCharsets.UTF_8)) {
+            return lireTexte(lecteur);
+        }
+    }
+
+    /**
+     * Lit et valide un plateau au format texte depuis une ressource du paquetage
+     * {@code rails} (par exemple {@code "plateaux/europe.txt"})
+     */
+    static Plateau lireRessource(String nom) {
+        InputStream flux = FormatPlateau.class.getResourceAsStream(nom);
+        if (flux == null) {
+            throw new IllegalStateException("Plateau introuvable : " + nom);
+        }
+        try (Reader lecteur = new InputStreamReader(flux, StandardCharsets.UTF_8)) {
+            return lireTexte(lecteur);
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossible de lire le plateau " + nom, e);
+        }
+    }
+
+    /**
+     * Lit et valide un plateau au format texte
+     *
+     * @throws IllegalArgumentException si le fichier est invalide (le message
+     *                                  indique la ligne en cause)
+     */
+    public static Plateau lireTexte(Reader lecteur) throws IOException {
+        BufferedReader lignes = new BufferedReader(lecteur);
+        Map<String, Ville> villes = new LinkedHashMap<>();
+        List<Route> routes = new ArrayList<>();
+        List<Destination> destinations = new ArrayList<>();
+        List<Destination> destinationsLongues = new ArrayList<>();
+        String ligne;
+        int numero = 0;
+        while ((ligne = lignes.readLine()) != null) {
+            numero++;
+            ligne = ligne.strip();
+            if (ligne.isEmpty() || ligne.startsWith("#")) {
+                continue;
+            }
+            String[] champs = ligne.split("\\s+");
+            try {
+                switch (champs[0]) {
+                    case "ville" -> {
+                        verifierNbChamps(champs, 2);
+                        if (villes.containsKey(champs[1])) {
+                            throw new IllegalArgumentException("ville déclarée deux fois : " + champs[1]);
+                        }
+                        villes.put(champs[1], new Ville(champs[1]));
+                    }
+                    case "route", "tunnel", "ferry" -> {
+                        verifierNbChamps(champs, champs[0].equals("ferry") ? 6 : 5);
+                        Ville ville1 = lireVille(villes, champs[1]);
+                        Ville ville2 = lireVille(villes, champs[2]);
+                        if (ville1 == ville2) {
+                            throw new IllegalArgumentException("route d'une ville vers elle-même");
+                        }
+                        int longueur = lireEntier(champs[3], 1, 127);
+                        CouleurWagon couleur = lireCouleur(champs[4]);
+                        routes.add(switch (champs[0]) {
+                            case "tunnel" -> new Tunnel(ville1, ville2, longueur, couleur);
+                            case "ferry" -> new Ferry(ville1, ville2, longueur, couleur,
+                                    lireEntier(champs[5], 1, longueur));
+                            default -> new Route(ville1, ville2, longueur, couleur);
+                        });
+                    }
+                    case "destination", "longue" -> {
+                        verifierNbChamps(champs, 4);
+                        lireVille(villes, champs[1]);
+                        lireVille(villes, champs[2]);
+                        Destination destination = new Destination(champs[1], champs[2],
+                                lireEntier(champs[3], 1, Short.MAX_VALUE));
+                        (champs[0].equals("longue") ? destinationsLongues : destinations).add(destination);
+                    }
+                    default -> throw new IllegalArgumentException("déclaration inconnue : " + champs[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("ligne %d : %s", numero, e.getMessage()), e);
+            }
+        }
+        nommerRoutesDoubles(routes);
+        return new Plateau(new ArrayList<>(villes.values()), routes, destinations, destinationsLongues);
+    }
+
+    /**
+     * Compile un plateau au format binaire
+     */
+    public static byte[] compiler(Plateau plateau) {
+        List<Ville> villes = plateau.getVilles();
+        Map<String, Integer> indices = new HashMap<>();
+        int taille = MAGIQUE.length + 4 + 4 + 4 + 4;
+        for (Ville ville : villes) {
+            indices.put(ville.getNom(), indices.size());
+            taille += 2 + ville.getNom().getBytes(StandardCharsets.UTF_8).length;
+        }
+        taille += 12 * plateau.getRoutes().size();
+        taille += 11 * (plateau.getDestinations().size() + plateau.getDestinationsLongues().size());
+
+        ByteBuffer sortie = ByteBuffer.allocate(taille);
+        sortie.put(MAGIQUE);
+        sortie.putInt(VERSION);
+        sortie.putInt(villes.size());
+        for (Ville ville : villes) {
+            byte[] nom = ville.getNom().getBytes(StandardCharsets.UTF_8);
+            sortie.putShort((short) nom.length);
+            sortie.put(nom);
+        }
+        sortie.putInt(plateau.getRoutes().size());
+        for (Route route : plateau.getRoutes()) {
+            sortie.put(route instanceof Tunnel ? TYPE_TUNNEL : route instanceof Ferry ? TYPE_FERRY : TYPE_ROUTE);
+            sortie.putInt(indices.get(route.getVille1().getNom()));
+            sortie.putInt(indices.get(route.getVille2().getNom()));
+            sortie.put((byte) route.getLongueur());
+            sortie.put((byte) route.getCouleur().ordinal());
+            sortie.put((byte) (route instanceof Ferry ? ((Ferry) route).getNbLocomotives() : 0));
+        }
+        sortie.putInt(plateau.getDestinations().size() + plateau.getDestinationsLongues().size());
+        for (Destination destination : plateau.getDestinations()) {
+            ecrireDestination(sortie, indices, destination, false);
+        }
+        for (Destination destination : plateau.getDestinationsLongues()) {
+            ecrireDestination(sortie, indices, destination, true);
+        }
+        return sortie.array();
+    }
+
+    /**
+     * Indique si des données commencent par l'en-tête du format binaire
+     */
+    public static boolean estBinaire(ByteBuffer donnees) {
+        if (donnees.remaining() < MAGIQUE.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIQUE.length; i++) {
+            if (donnees.get(donnees.position() + i) != MAGIQUE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Décode un plateau compilé par {@code compiler}. Chaque appel crée de
+     * nouvelles villes et routes (sans propriétaire).
+     */
+    public static Plateau decoder(ByteBuffer donnees) {
+        ByteBuffer entree = donnees.duplicate();
+        entree.position(entree.position() + MAGIQUE.length);
+        if (entree.getInt() != VERSION) {
+            throw new IllegalArgumentException("Version de plateau compilé non prise en charge");
+        }
+        Ville[] villes = new Ville[entree.getInt()];
+        byte[] tampon = new byte[64];
+        for (int v = 0; v < villes.length; v++) {
+            int longueur = entree.getShort();
+            if (longueur > tampon.length) {
+                tampon = new byte[longueur];
+            }
+            entree.get(tampon, 0, longueur);
+            villes[v] = new Ville(new String(tampon, 0, longueur, StandardCharsets.UTF_8));
+        }
+        int nbRoutes = entree.getInt();
+        List<Route> routes = new ArrayList<>(nbRoutes);
+        for (int r = 0; r < nbRoutes; r++) {
+            byte type = entree.get();
+            Ville ville1 = villes[entree.getInt()];
+            Ville ville2 = villes[entree.getInt()];
+            int longueur = entree.get();
+            CouleurWagon couleur = COULEURS[entree.get()];
+            int nbLocomotives = entree.get();
+            routes.add(switch (type) {
+                case TYPE_TUNNEL -> new Tunnel(ville1, ville2, longueur, couleur);
+                case TYPE_FERRY -> new Ferry(ville1, ville2, longueur, couleur, nbLocomotives);
+                default -> new Route(ville1, ville2, longueur, couleur);
+            });
+        }
+        nommerRoutesDoubles(routes);
+        int nbDestinations = entree.getInt();
+        List<Destination> destinations = new ArrayList<>();
+        List<Destination> destinationsLongues = new ArrayList<>();
+        for (int d = 0; d < nbDestinations; d++) {
+            String ville1 = villes[entree.getInt()].getNom();
+            String ville2 = villes[entree.getInt()].getNom();
+            Destination destination = new Destination(ville1, ville2, entree.getShort());
+            (entree.get() != 0 ? destinationsLongues : destinations).add(destination);
+        }
+        return new Plateau(new ArrayList<>(Arrays.asList(villes)), routes, destinations, destinationsLongues);
+    }
+
+    /**
+     * Donne un nom unique aux routes doubles (deux routes consécutives entre les
+     * mêmes villes sont suffixées par "(1)" et "(2)")
+     */
+    static void nommerRoutesDoubles(List<Route> routes) {
+        for (int i = 0; i < routes.size() - 1; i++) {
+            Route r1 = routes.get(i);
+            Route r2 = routes.get(i + 1);
+            if (r1.getNom().equals(r2.getNom())) {
+                r1.setNom(r1.getNom() + "(1)");
+                r2.setNom(r2.getNom() + "(2)");
+            }
+        }
+    }
+
+    private static void ecrireDestination(ByteBuffer sortie, Map<String, Integer> indices, Destination destination,
+                                          boolean longue) {
+        sortie.putInt(indices.get(destination.getVille1()));
+        sortie.putInt(indices.get(destination.getVille2()));
+        sortie.putShort((short) destination.getValeur());
+        sortie.put((byte) (longue ? 1 : 0));
+    }
+
+    private static void verifierNbChamps(String[] champs, int attendu) {
+        if (champs.length != attendu) {
+            throw new IllegalArgumentException(String.format("%d champs attendus pour \"%s\", %d trouvés", attendu,
+                    champs[0], champs.length));
+        }
+    }
+
+    private static Ville lireVille(Map<String, Ville> villes, String nom) {
+        Ville ville = villes.get(nom);
+        if (ville == null) {
+            throw new IllegalArgumentException("ville inconnue : " + nom);
+        }
+        return ville;
+    }
+
+    private static int lireEntier(String champ, int min, int max) {
+        int valeur;
+        try {
+            valeur = Integer.parseInt(champ);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("nombre attendu : " + champ);
+        }
+        if (valeur < min || valeur > max) {
+            throw new IllegalArgumentException(String.format("%d n'est pas entre %d et %d", valeur, min, max));
+        }
+        return valeur;
+    }
+
+    private static CouleurWagon lireCouleur(String champ) {
+        CouleurWagon couleur;
+        try {
+            couleur = CouleurWagon.valueOf(champ);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("couleur inconnue : " + champ);
+        }
+        if (couleur == CouleurWagon.LOCOMOTIVE) {
+            throw new IllegalArgumentException("une route ne peut pas être de couleur LOCOMOTIVE");
+        }
+        return couleur;
+    }
+}
@@ -0,0 +1,203 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Générateur de plateaux synthétiques de grande taille, pour mesurer le
+ * comportement du moteur lorsque le nombre de villes et de routes augmente.
+ * <p>
+ * Les villes sont placées sur une grille (avec un léger décalage aléatoire) et
+ * chaque ville est reliée à ses voisines de droite et du dessous, ce qui garantit
+ * que le plateau est connexe, ainsi qu'à certaines voisines en diagonale. La
+ * longueur d'une route dépend de la distance entre ses villes. Les proportions
+ * de ferries, tunnels, routes grises et routes doubles sont proches de celles du
+ * plateau Europe.
+ * <p>
+ * Les destinations relient des villes proches (destinations "normales") ou
+ * éloignées (destinations "longues"). Leur valeur est la longueur d'un chemin
+ * qui existe sur le plateau, donc chaque destination peut être réalisée.
+ * <p>
+ * Un même nombre de villes et une même graine donnent toujours le même plateau.
+ * <p>
+ * Utilisation : {@code GenerateurPlateau nbVilles graine fichier} (le plateau est
+ * écrit au format binaire de {@code FormatPlateau})
+ */
+public class GenerateurPlateau {
+    /**
+     * Proportion de ferries parmi les routes
+     */
+    public static final double PROPORTION_FERRIES = 0.08;
+    /**
+     * Proportion de tunnels parmi les routes
+     */
+    public static final double PROPORTION_TUNNELS = 0.15;
+    /**
+     * Proportion de routes grises (les ferries sont toujours gris)
+     */
+    public static final double PROPORTION_GRISES = 0.3;
+    /**
+     * Proportion de routes (hors ferries) doublées
+     */
+    public static final double PROPORTION_DOUBLES = 0.1;
+    /**
+     * Probabilité qu'une ville soit reliée à sa voisine en diagonale
+     */
+    public static final double PROBABILITE_DIAGONALE = 0.3;
+    /**
+     * Écart maximal (en cases de la grille) entre les villes d'une destination
+     * "normale", et minimal entre celles d'une destination "longue"
+     */
+    private static final int ECART_DESTINATION = 3;
+    /**
+     * Écart maximal entre les villes d'une destination "longue"
+     */
+    private static final int ECART_DESTINATION_LONGUE = 8;
+
+    private final Random aleatoire;
+
+    public GenerateurPlateau(long graine) {
+        aleatoire = new Random(graine);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int nbVilles = Integer.parseInt(args[0]);
+        Plateau plateau = new GenerateurPlateau(Long.parseLong(args[1])).generer(nbVilles);
+        Files.write(Path.of(args[2]), FormatPlateau.compiler(plateau));
+        System.out.printf("%d villes, %d routes, %d destinations%n", plateau.getVilles().size(),
+                plateau.getRoutes().size(), plateau.getDestinations().size() + plateau.getDestinationsLongues().size());
+    }
+
+    /**
+     * Génère un plateau
+     *
+     * @param nbVilles nombre de villes du plateau (au moins 2)
+     */
+    public Plateau generer(int nbVilles) {
+        if (nbVilles < 2) {
+            throw new IllegalArgumentException("Un plateau doit avoir au moins 2 villes");
+        }
+        int cote = (int) Math.ceil(Math.sqrt(nbVilles));
+        String format = "V%0" + String.valueOf(nbVilles - 1).length() + "d";
+        List<Ville> villes = new ArrayList<>(nbVilles);
+        double[] x = new double[nbVilles];
+        double[] y = new double[nbVilles];
+        for (int v = 0; v < nbVilles; v++) {
+            villes.add(new Ville(String.format(format, v)));
+            x[v] = v % cote + 0.6 * (aleatoire.nextDouble() - 0.5);
+            y[v] = v / cote + 0.6 * (aleatoire.nextDouble() - 0.5);
+        }
+
+        // longueur des routes vers la voisine de droite et celle du dessous (0 si
+        // pas de voisine), pour calculer la valeur des destinations
+        int[] longueursDroite = new int[nbVilles];
+        int[] longueursBas = new int[nbVilles];
+        List<Route> routes = new ArrayList<>();
+        for (int v = 0; v < nbVilles; v++) {
+            int colonne = v % cote;
+            if (colonne + 1 < cote && v + 1 < nbVilles) {
+                longueursDroite[v] = ajouterRoute(routes, villes, x, y, v, v + 1);
+            }
+            if (v + cote < nbVilles) {
+                longueursBas[v] = ajouterRoute(routes, villes, x, y, v, v + cote);
+            }
+            if (colonne + 1 < cote && v + cote + 1 < nbVilles && aleatoire.nextDouble() < PROBABILITE_DIAGONALE) {
+                ajouterRoute(routes, villes, x, y, v, v + cote + 1);
+            }
+        }
+        FormatPlateau.nommerRoutesDoubles(routes);
+
+        // même proportion de destinations par ville que le plateau Europe (46
+        // destinations dont 6 longues pour 47 villes)
+        List<Destination> destinations = new ArrayList<>();
+        List<Destination> destinationsLongues = new ArrayList<>();
+        int nbDestinations = Math.max(40, nbVilles * 40 / 47);
+        int nbDestinationsLongues = Math.max(6, nbVilles * 6 / 47);
+        while (destinations.size() < nbDestinations) {
+            ajouterDestination(destinations, villes, cote, longueursDroite, longueursBas, 1, ECART_DESTINATION);
+        }
+        while (destinationsLongues.size() < nbDestinationsLongues) {
+            ajouterDestination(destinationsLongues, villes, cote, longueursDroite, longueursBas, ECART_DESTINATION,
+                    ECART_DESTINATION_LONGUE);
+        }
+        return new Plateau(villes, routes, destinations, destinationsLongues);
+    }
+
+    /**
+     * Ajoute une route (éventuellement double) entre deux villes
+     *
+     * @return la longueur de la route
+     */
+    private int ajouterRoute(List<Route> routes, List<Ville> villes, double[] x, double[] y, int v1, int v2) {
+        double distance = Math.hypot(x[v1] - x[v2], y[v1] - y[v2]);
+        int longueur = Math.max(1, Math.min(6, (int) Math.round(3 * distance + aleatoire.nextGaussian())));
+        Ville ville1 = villes.get(v1);
+        Ville ville2 = villes.get(v2);
+        double tirage = aleatoire.nextDouble();
+        if (tirage < PROPORTION_FERRIES) {
+            routes.add(new Ferry(ville1, ville2, longueur, CouleurWagon.GRIS, 1 + aleatoire.nextInt(Math.min(2,
+                    longueur))));
+            return longueur;
+        }
+        boolean tunnel = tirage < PROPORTION_FERRIES + PROPORTION_TUNNELS;
+        boolean grise = aleatoire.nextDouble() < PROPORTION_GRISES;
+        List<CouleurWagon> couleurs = CouleurWagon.getCouleursSimples();
+        int nbExemplaires = aleatoire.nextDouble() < PROPORTION_DOUBLES ? 2 : 1;
+        for (int i = 0; i < nbExemplaires; i++) {
+            // les deux routes d'une route double grise sont grises, sinon elles
+            // sont de couleurs différentes
+            CouleurWagon couleur = grise ? CouleurWagon.GRIS : couleurs.remove(aleatoire.nextInt(couleurs.size()));
+            routes.add(tunnel ? new Tunnel(ville1, ville2, longueur, couleur)
+                    : new Route(ville1, ville2, longueur, couleur));
+        }
+        return longueur;
+    }
+
+    /**
+     * Ajoute une destination entre une ville tirée au hasard et une ville dont
+     * l'écart (en colonnes plus lignes) est compris entre {@code ecartMin} et
+     * {@code ecartMax}. Si aucune ville ne convient (petit plateau), rien n'est
+     * ajouté.
+     */
+    private void ajouterDestination(List<Destination> destinations, List<Ville> villes, int cote,
+                                    int[] longueursDroite, int[] longueursBas, int ecartMin, int ecartMax) {
+        int nbVilles = villes.size();
+        int depart = aleatoire.nextInt(nbVilles);
+        int dx = aleatoire.nextInt(2 * ecartMax + 1) - ecartMax;
+        int dy = aleatoire.nextInt(2 * ecartMax + 1) - ecartMax;
+        int ecart = Math.abs(dx) + Math.abs(dy);
+        int colonne = depart % cote + dx;
+        int arrivee = depart + dy * cote + dx;
+        if (ecart < ecartMin || ecart > ecartMax || colonne < 0 || colonne >= cote || arrivee < 0
+                || arrivee >= nbVilles) {
+            if (ecartMax >= 2 * cote) {
+                // plateau trop petit pour l'écart demandé : n'importe quelle paire convient
+                arrivee = (depart + 1 + aleatoire.nextInt(nbVilles - 1)) % nbVilles;
+            } else {
+                return;
+            }
+        }
+        // chemin en L : d'abord le long de la ligne la plus haute (toujours
+        // complète sauf si les deux villes sont sur la dernière ligne), puis le
+        // long de la colonne de l'autre ville
+        int haut = Math.min(depart, arrivee);
+        int bas = Math.max(depart, arrivee);
+        int valeur = 0;
+        int v = haut;
+        int pas = Integer.signum(bas % cote - haut % cote);
+        while (v % cote != bas % cote) {
+            valeur += pas > 0 ? longueursDroite[v] : longueursDroite[v - 1];
+            v += pas;
+        }
+        while (v != bas) {
+            valeur += longueursBas[v];
+            v += cote;
+        }
+        destinations.add(new Destination(villes.get(depart).getNom(), villes.get(arrivee).getNom(),
+                Math.max(1, Math.min(Short.MAX_VALUE, valeur))));
+    }
+}
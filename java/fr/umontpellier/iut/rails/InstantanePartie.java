@@ -0,0 +1,71 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Instantané immuable d'une partie, publié par le thread de la partie après
+ * chaque coup (voir {@code Jeu.getInstantane()}).
+ * <p>
+ * Les autres threads (serveur, spectateurs, statistiques...) peuvent lire
+ * l'instantané le plus récent sans verrou et sans risquer de voir un état
+ * incohérent : il n'est jamais modifié après sa publication, et le suivant
+ * est publié d'un seul coup.
+ */
+public final class InstantanePartie {
+    /**
+     * Numéro de l'instantané (incrémenté à chaque publication)
+     */
+    private final long version;
+    private final EtatPartie etat;
+    private final List<String> nomsJoueurs;
+    /**
+     * Décompte final des points ({@code null} tant que la partie n'est pas
+     * terminée), copié sans référence aux joueurs de la partie
+     */
+    private final List<ScoreFinal> scoresFinaux;
+    /**
+     * Versions de la partie enregistrées au début de chaque tour (la dernière
+     * correspond au tour en cours)
+     */
+    private final VecteurPersistant<EtatPartie> historique;
+
+    InstantanePartie(long version, EtatPartie etat, List<String> nomsJoueurs, List<ScoreFinal> scoresFinaux,
+                     VecteurPersistant<EtatPartie> historique) {
+        this.version = version;
+        this.etat = etat;
+        this.nomsJoueurs = List.copyOf(nomsJoueurs);
+        this.scoresFinaux = scoresFinaux == null ? null
+                : scoresFinaux.stream().map(ScoreFinal::publier).collect(Collectors.toUnmodifiableList());
+        this.historique = historique;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public EtatPartie getEtat() {
+        return etat;
+    }
+
+    public List<String> getNomsJoueurs() {
+        return nomsJoueurs;
+    }
+
+    public boolean estTerminee() {
+        return scoresFinaux != null;
+    }
+
+    public List<ScoreFinal> getScoresFinaux() {
+        return scoresFinaux;
+    }
+
+    /**
+     * Renvoie les versions de la partie enregistrées au début de chaque tour, au
+     * moment de l'instantané (par exemple pour permettre aux spectateurs de
+     * parcourir l'historique)
+     */
+    public VecteurPersistant<EtatPartie> getHistorique() {
+        return historique;
+    }
+}
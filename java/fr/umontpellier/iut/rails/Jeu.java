@@ -1,23 +1,50 @@
 package fr.umontpellier.iut.rails;
 
 import com.google.gson.Gson;
+import fr.umontpellier.iut.evenements.EvenementMelange;
+import fr.umontpellier.iut.evenements.EvenementPrompt;
+import fr.umontpellier.iut.evenements.EvenementTour;
+import fr.umontpellier.iut.gui.CodecBinaire;
+import fr.umontpellier.iut.gui.EtatJeu;
 import fr.umontpellier.iut.gui.GameServer;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class Jeu implements Runnable {
+    /**
+     * Nombre maximal d'instructions en attente dans la file d'entrées
+     */
+    public static final int CAPACITE_FILE_ENTREES = 16;
+    /**
+     * Entrée placée dans la file par {@code demanderActualisation} (reconnue par
+     * référence : aucun message reçu par le serveur ne peut être cet objet)
+     */
+    private static final String ACTUALISATION = new String("actualisation");
+    /**
+     * Choix proposé au début d'un tour pour annuler le tour précédent (si
+     * l'annulation est autorisée). Le tour annulé est celui du joueur précédent :
+     * c'est le joueur suivant qui accepte de le lui laisser rejouer. Le tour
+     * rejoué repart de la même graine aléatoire : les cartes piochées à l'aveugle
+     * sont les mêmes, seules les décisions du joueur peuvent changer.
+     */
+    public static final String ANNULER = "annuler";
+
     /**
      * Liste des joueurs
      */
     private List<Joueur> joueurs;
 
     /**
-     * Le joueur dont c'est le tour
+     * Le joueur dont c'est le tour (lu par les threads du serveur pour filtrer les
+     * messages)
      */
-    private Joueur joueurCourant;
+    private volatile Joueur joueurCourant;
     /**
      * Liste des villes représentées sur le plateau de jeu
      */
@@ -29,15 +56,15 @@ public class Jeu implements Runnable {
     /**
      * Pile de pioche (face cachée)
      */
-    private List<CouleurWagon> pileCartesWagon;
+    private PaquetCartesWagon pileCartesWagon;
     /**
      * Cartes de la pioche face visible (normalement il y a 5 cartes face visible)
      */
-    private List<CouleurWagon> cartesWagonVisibles;
+    private PaquetCartesWagon cartesWagonVisibles;
     /**
      * Pile de cartes qui ont été défaussée au cours de la partie
      */
-    private List<CouleurWagon> defausseCartesWagon;
+    private PaquetCartesWagon defausseCartesWagon;
     /**
      * Pile des cartes "Destination" (uniquement les destinations "courtes", les
      * destinations "longues" sont distribuées au début de la partie et ne peuvent
@@ -52,8 +79,131 @@ public class Jeu implements Runnable {
      * Messages d'information du jeu
      */
     private List<String> log;
+    /**
+     * Évaluateur du coût des destinations (construit à partir du plateau de jeu)
+     */
+    private EvaluateurDestinations evaluateurDestinations;
+    /**
+     * Décompte final des points de chaque joueur ({@code null} tant que la partie
+     * n'est pas terminée)
+     */
+    private List<ScoreFinal> scoresFinaux;
+    /**
+     * Journal des coups joués
+     */
+    private final JournalCoups journal = new JournalCoups();
+    /**
+     * Nombre de tours joués depuis le début de la partie (après le choix des
+     * destinations initiales)
+     */
+    private int nbTours;
+    /**
+     * Nombre maximal de tours avant de passer au dernier tour de jeu (0 si la
+     * partie n'est pas limitée)
+     */
+    private int nbToursMax;
+    /**
+     * Si vrai, l'état de la partie n'est ni affiché ni envoyé aux clients (parties
+     * jouées uniquement par des bots)
+     */
+    private boolean silencieux;
+    /**
+     * Générateur aléatoire utilisé pour mélanger les cartes et les couleurs
+     */
+    private final Random aleatoire;
+    /**
+     * Numéro de version de l'état envoyé aux clients
+     */
+    private long versionEtat;
+    /**
+     * Taille du log lors du dernier état relevé pour les clients binaires (les
+     * trames binaires ne contiennent que les entrées ajoutées depuis)
+     */
+    private int tailleLogEnvoye;
+    /**
+     * Vrai si une actualisation de l'état a été demandée et n'a pas encore été
+     * traitée (voir {@code demanderActualisation})
+     */
+    private final AtomicBoolean actualisationDemandee = new AtomicBoolean();
+    /**
+     * Compteur incrémenté à chaque modification de l'état de la partie
+     */
+    private long versionModifications;
+    /**
+     * Valeur de {@code versionModifications} lors du dernier prompt
+     */
+    private long versionDernierPrompt = -1;
+    /**
+     * Contenu du dernier prompt (instruction, boutons, joueur courant...)
+     */
+    private String cleDernierPrompt;
+    /**
+     * Paramètres du dernier prompt, pour renvoyer l'état en cas d'actualisation
+     */
+    private String instructionDernierPrompt;
+    private Collection<String> boutonsDernierPrompt;
+    private boolean peutPasserDernierPrompt;
+    /**
+     * Nombre total de destinations piochées (pour enregistrer les versions de la
+     * pile sans la recopier)
+     */
+    private long nbDestinationsPiochees;
+    /**
+     * Versions de la partie enregistrées au début de chaque tour (vecteur
+     * persistant : chaque instantané publié en garde la version de son moment)
+     */
+    private VecteurPersistant<EtatPartie> historique = VecteurPersistant.vide();
+    /**
+     * Graine du générateur aléatoire au début du tour en cours : une annulation
+     * la remet en place, pour que les cartes piochées à l'aveugle pendant le tour
+     * rejoué soient les mêmes que la première fois
+     */
+    private long graineTour;
+    /**
+     * Version remise en place par la dernière annulation, à partir de laquelle est
+     * construite la version suivante si l'annulation a vidé l'historique
+     * ({@code null} sinon)
+     */
+    private EtatPartie versionRestauree;
+    /**
+     * Si vrai, les joueurs peuvent annuler le tour précédent (parties amicales)
+     */
+    private boolean annulationAutorisee;
+    /**
+     * Vrai si le joueur courant a demandé l'annulation du tour précédent
+     */
+    private boolean annulationDemandee;
+    /**
+     * Vrai pendant la boucle principale de la partie (les tours du dernier tour de
+     * jeu ne peuvent pas être annulés)
+     */
+    private boolean bouclePrincipale;
+    /**
+     * Nombre de tours qui restent à jouer pendant le dernier tour de jeu (y
+     * compris le tour en cours), 0 avant le dernier tour
+     */
+    private int nbToursRestants;
+    /**
+     * Dernier instantané publié, lu sans verrou par les autres threads
+     */
+    private final AtomicReference<InstantanePartie> instantane = new AtomicReference<>();
 
     public Jeu(String[] nomJoueurs) {
+        this(nomJoueurs, Plateau.makePlateauEurope());
+    }
+
+    /**
+     * Crée une partie sur un plateau donné (villes, routes et destinations)
+     */
+    public Jeu(String[] nomJoueurs, Plateau plateau) {
+        this(nomJoueurs, plateau, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Crée une partie dont les tirages (couleurs des joueurs, cartes et
+     * destinations) sont déterminés par une graine
+     */
+    public Jeu(String[] nomJoueurs, Plateau plateau, long graine) {
         /*
          * ATTENTION : Cette méthode est à réécrire.
          *
@@ -63,19 +213,21 @@ public class Jeu implements Runnable {
          * correctement initialisés.
          */
 
+        aleatoire = new Random(graine);
+
         // initialisation des entrées/sorties
-        inputQueue = new LinkedBlockingQueue<>();
+        inputQueue = new LinkedBlockingQueue<>(CAPACITE_FILE_ENTREES);
         log = new ArrayList<>();
 
         // création des cartes
-        pileCartesWagon = new ArrayList<>();
-        cartesWagonVisibles = new ArrayList<>();
-        defausseCartesWagon = new ArrayList<>();
+        pileCartesWagon = new PaquetCartesWagon();
+        cartesWagonVisibles = new PaquetCartesWagon();
+        defausseCartesWagon = new PaquetCartesWagon();
         pileDestinations = new ArrayList<>();
 
         // création des joueurs
         ArrayList<Joueur.Couleur> couleurs = new ArrayList<>(Arrays.asList(Joueur.Couleur.values()));
-        Collections.shuffle(couleurs);
+        Collections.shuffle(couleurs, aleatoire);
         joueurs = new ArrayList<>();
         for (String nom : nomJoueurs) {
             Joueur joueur = new Joueur(nom, this, couleurs.remove(0));
@@ -83,10 +235,10 @@ public class Jeu implements Runnable {
         }
         joueurCourant = joueurs.get(0);
 
-        // création des villes et des routes
-        Plateau plateau = Plateau.makePlateauEurope();
+        // villes et routes du plateau
         villes = plateau.getVilles();
         routes = plateau.getRoutes();
+        evaluateurDestinations = new EvaluateurDestinations(villes, routes);
 
         //ajout des cartes
         for (int i = 0; i < 14; i++) {
@@ -116,16 +268,17 @@ public class Jeu implements Runnable {
         for (int i = 0; i < 12; i++) {
             this.pileCartesWagon.add(CouleurWagon.BLEU);
         }
-        Collections.shuffle(this.pileCartesWagon);
+        // la pioche n'est pas mélangée : chaque carte est tirée au hasard au moment
+        // où elle est piochée
         for (int i = 0; i < 5; i++) {
-            this.cartesWagonVisibles.add(this.pileCartesWagon.remove(0));
+            this.cartesWagonVisibles.add(piocherCarteWagon());
         }
-        this.pileDestinations.addAll(Destination.makeDestinationsEurope());
-        Collections.shuffle(this.pileDestinations);
+        this.pileDestinations.addAll(plateau.getDestinations());
+        Collections.shuffle(this.pileDestinations, aleatoire);
 
         for (Joueur joueur : joueurs) {
             for (int j = 0; j < 4; j++) {
-                joueur.getCartesWagon().add(piocherCarteWagon());
+                joueur.ajouterCarteWagon(piocherCarteWagon());
             }
         }
         for (Joueur joueur : joueurs) {
@@ -133,11 +286,12 @@ public class Jeu implements Runnable {
                 joueur.getDestinations().add(piocherDestination());
             }
         }
-        ArrayList<Destination> destlongue = new ArrayList<>(Destination.makeDestinationsLonguesEurope());
-        Collections.shuffle(destlongue);
+        ArrayList<Destination> destlongue = new ArrayList<>(plateau.getDestinationsLongues());
+        Collections.shuffle(destlongue, aleatoire);
         for (int i = 0; i < joueurs.size(); i++) {
             joueurs.get(i).getDestinations().add(destlongue.get(i));
         }
+        publier(EtatPartie.initiale(this));
     }
 
     public List<CouleurWagon> getPileCartesWagon() {
@@ -156,6 +310,48 @@ public class Jeu implements Runnable {
         return defausseCartesWagon;
     }
 
+    /**
+     * Renvoie le nombre de cartes de chaque couleur de la pioche (indexé par
+     * {@code CouleurWagon.ordinal()}, tenu à jour à chaque modification)
+     */
+    public int[] getCompteursPioche() {
+        return pileCartesWagon.getCompteurs();
+    }
+
+    /**
+     * Renvoie le nombre de cartes de chaque couleur de la défausse
+     */
+    public int[] getCompteursDefausse() {
+        return defausseCartesWagon.getCompteurs();
+    }
+
+    /**
+     * Renvoie le nombre de cartes de chaque couleur parmi les cartes visibles
+     */
+    public int[] getCompteursVisibles() {
+        return cartesWagonVisibles.getCompteurs();
+    }
+
+    /**
+     * Vérifie qu'aucune carte wagon n'a été perdue ni dupliquée : pour chaque
+     * couleur, la pioche, la défausse, les cartes visibles et les cartes des
+     * joueurs contiennent en tout 12 cartes (14 locomotives). La vérification
+     * n'utilise que les compteurs et ne parcourt aucune liste.
+     */
+    public boolean verifierCartesWagon() {
+        for (CouleurWagon c : CouleurWagon.values()) {
+            int total = pileCartesWagon.compter(c) + defausseCartesWagon.compter(c) + cartesWagonVisibles.compter(c);
+            for (Joueur joueur : joueurs) {
+                total += joueur.compterCartesWagon(c);
+            }
+            int attendu = c == CouleurWagon.LOCOMOTIVE ? 14 : c == CouleurWagon.GRIS ? 0 : 12;
+            if (total != attendu) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public List<Ville> getVilles() {
         return villes;
     }
@@ -168,6 +364,139 @@ public class Jeu implements Runnable {
         return joueurCourant;
     }
 
+    public EvaluateurDestinations getEvaluateurDestinations() {
+        return evaluateurDestinations;
+    }
+
+    public List<ScoreFinal> getScoresFinaux() {
+        return scoresFinaux;
+    }
+
+    public JournalCoups getJournal() {
+        return journal;
+    }
+
+    public int getNbTours() {
+        return nbTours;
+    }
+
+    /**
+     * Limite le nombre de tours de la partie : une fois la limite atteinte, le
+     * dernier tour de jeu commence comme si un joueur n'avait plus que 2 wagons
+     * (utile pour des bots qui pourraient ne jamais terminer la partie)
+     *
+     * @param nbToursMax nombre maximal de tours (0 pour ne pas limiter la partie)
+     */
+    public void setNbToursMax(int nbToursMax) {
+        this.nbToursMax = nbToursMax;
+    }
+
+    /**
+     * Change les noms des joueurs d'une partie qui n'a pas encore commencé (par
+     * exemple une partie préparée à l'avance, avant de connaître ses joueurs)
+     *
+     * @param nomJoueurs les nouveaux noms, dans l'ordre des joueurs
+     */
+    public void setNomsJoueurs(String[] nomJoueurs) {
+        if (nomJoueurs.length != joueurs.size()) {
+            throw new IllegalArgumentException(String.format("%d noms pour %d joueurs", nomJoueurs.length,
+                    joueurs.size()));
+        }
+        for (int i = 0; i < nomJoueurs.length; i++) {
+            joueurs.get(i).setNom(nomJoueurs[i]);
+        }
+        signalerModification();
+        publier(instantane.get().getEtat());
+    }
+
+    /**
+     * Autorise ou non les joueurs à annuler le tour précédent (choix
+     * {@code ANNULER} au début de leur tour). N'importe quel joueur peut alors
+     * annuler le tour de son adversaire précédent : l'annulation est réservée aux
+     * parties amicales, où les joueurs se mettent d'accord (la table par défaut du
+     * serveur, jouée sur un seul écran). Le hasard n'est pas tiré de nouveau quand
+     * le tour est rejoué (voir {@code ANNULER}).
+     */
+    public void setAnnulationAutorisee(boolean annulationAutorisee) {
+        this.annulationAutorisee = annulationAutorisee;
+    }
+
+    /**
+     * Indique si le joueur courant peut annuler le tour précédent
+     */
+    boolean peutAnnuler() {
+        return annulationAutorisee && bouclePrincipale && historique.size() >= 2;
+    }
+
+    /**
+     * Demande l'annulation du tour précédent (effectuée à la fin du tour en cours)
+     */
+    void demanderAnnulation() {
+        annulationDemandee = true;
+    }
+
+    /**
+     * Renvoie les versions de la partie enregistrées au début de chaque tour (la
+     * dernière correspond au tour en cours), telles qu'elles ont été publiées avec
+     * le dernier instantané : cette méthode peut être appelée depuis n'importe
+     * quel thread
+     */
+    public VecteurPersistant<EtatPartie> getHistorique() {
+        return instantane.get().getHistorique();
+    }
+
+    /**
+     * Renvoie le nombre de tours qui restent à jouer pendant le dernier tour de
+     * jeu, y compris le tour en cours (0 si le dernier tour n'a pas commencé ou si
+     * la partie est terminée)
+     */
+    public int getNbToursRestants() {
+        return nbToursRestants;
+    }
+
+    /**
+     * Renvoie le dernier instantané publié de la partie. Cette méthode peut être
+     * appelée depuis n'importe quel thread, sans bloquer la partie.
+     */
+    public InstantanePartie getInstantane() {
+        return instantane.get();
+    }
+
+    /**
+     * Publie un instantané de l'état actuel de la partie (appelé par le thread de
+     * la partie après chaque coup)
+     */
+    void publierInstantane() {
+        EtatPartie precedent = instantane.get().getEtat();
+        publier(precedent.suivante(this, precedent.getNumero()));
+    }
+
+    private void publier(EtatPartie etat) {
+        InstantanePartie precedent = instantane.get();
+        List<String> noms = new ArrayList<>();
+        for (Joueur joueur : joueurs) {
+            noms.add(joueur.getNom());
+        }
+        instantane.set(new InstantanePartie(precedent == null ? 0 : precedent.getVersion() + 1, etat, noms,
+                scoresFinaux, historique));
+    }
+
+    long getGraineTour() {
+        return graineTour;
+    }
+
+    long getNbDestinationsPiochees() {
+        return nbDestinationsPiochees;
+    }
+
+    /**
+     * Indique si l'état de la partie doit être affiché et envoyé aux clients à
+     * chaque choix (faux pour une partie jouée uniquement par des bots)
+     */
+    public void setSilencieux(boolean silencieux) {
+        this.silencieux = silencieux;
+    }
+
     /**
      * Exécute la partie
      */
@@ -191,6 +520,9 @@ public class Jeu implements Runnable {
 //         CHOIX DESTINATIONS
         for (Joueur joueur : this.joueurs) {
             joueurCourant = joueur;
+            publierInstantane();
+            EvenementTour evenement = new EvenementTour(joueur.getNom(), nbTours, "destinations initiales");
+            evenement.begin();
             ArrayList<Destination> destinationsPossible;
             boolean passe = false;
             while (!passe && joueurCourant.getDestinations().size() > 2) {
@@ -199,8 +531,9 @@ public class Jeu implements Runnable {
                 for (Destination elt : destinationsPossible) {
                     destinationsAChoisir.add(elt.toString());
                 }
+                joueurCourant.estimerCoutDestinations(destinationsPossible);
                 String choix = joueurCourant.choisir(
-                        "Choisissez les destinations à retirer :",
+                        Joueur.INSTRUCTION_DESTINATIONS,
                         destinationsAChoisir,
                         destinationsAChoisir,
                         true);
@@ -210,47 +543,167 @@ public class Jeu implements Runnable {
                     for (Destination elt : destinationsPossible) {
                         if (choix.equals("" + elt)) {
                             joueurCourant.getDestinations().remove(elt);
+                            signalerModification();
                         }
                     }
+                    publierInstantane();
                 }
             }
+            joueurCourant.estimerCoutDestinations(null);
+            evenement.commit();
         }
 
 //         DEROULEMENT PARTIE
         boolean verifNbWagon = true;
         int i = 0;
         joueurCourant = this.joueurs.get(i);
+        bouclePrincipale = true;
         while (verifNbWagon) {
-            joueurCourant.jouerTour();
+            enregistrerVersion();
+            jouerTourTrace("partie");
+            if (annulationDemandee) {
+                annulerDernierTour();
+                i = this.joueurs.indexOf(joueurCourant);
+                continue;
+            }
+            nbTours++;
             i++;
             if (i >= this.joueurs.size()) {
                 i = 0;
             }
-            if (joueurCourant.getNbWagons() < 3) {
+            if (joueurCourant.getNbWagons() < 3 || (nbToursMax > 0 && nbTours >= nbToursMax)) {
                 verifNbWagon = false;
             }
             joueurCourant = this.joueurs.get(i);
         }
 
+        bouclePrincipale = false;
         for (int j = 1; j < this.joueurs.size(); j++) {
-            joueurCourant.jouerTour();
+            nbToursRestants = this.joueurs.size() - j;
+            enregistrerVersion();
+            jouerTourTrace("dernier tour");
+            nbTours++;
             i++;
             if (i >= this.joueurs.size()) {
                 i = 0;
             }
             joueurCourant = this.joueurs.get(i);
         }
+        nbToursRestants = 0;
         // FIN DU JEU
-        Joueur joueurGagnant = this.joueurs.get(0);
-        for (int j = 1; j < this.joueurs.size(); j++) {
-            if(this.joueurs.get(i).getScore()>joueurGagnant.getScore()){
-                joueurGagnant=this.joueurs.get(i);
+        scoresFinaux = ScoreFinal.calculer(this.joueurs, evaluateurDestinations);
+        int meilleurScore = Integer.MIN_VALUE;
+        for (ScoreFinal score : scoresFinaux) {
+            score.getJoueur().setScore(score.getTotal());
+            meilleurScore = Math.max(meilleurScore, score.getTotal());
+            log(score.toLog());
+        }
+        for (ScoreFinal score : scoresFinaux) {
+            if (score.getTotal() == meilleurScore) {
+                log(score.getJoueur().toLog() + " a gagné.");
             }
         }
-        log(joueurGagnant+" a gagner.");
+        publierInstantane();
         this.prompt("fini",new ArrayList<>(),false);
     }
 
+    /**
+     * Enregistre la version de la partie au début d'un tour
+     */
+    private void enregistrerVersion() {
+        if (versionRestauree == null) {
+            graineTour = aleatoire.nextLong();
+        }
+        // le générateur repart de la graine du tour (celle du tour annulé s'il est
+        // rejoué), et la pioche et la défausse sont rangées comme après une
+        // restauration : un tour rejoué pioche exactement les mêmes cartes
+        aleatoire.setSeed(graineTour);
+        remplir(pileCartesWagon, pileCartesWagon.getCompteurs());
+        remplir(defausseCartesWagon, defausseCartesWagon.getCompteurs());
+        EtatPartie version;
+        if (historique.size() > 0) {
+            version = historique.dernier().suivante(this);
+        } else if (versionRestauree != null) {
+            // l'instantané publié peut être postérieur au tour annulé
+            version = versionRestauree.suivante(this, versionRestauree.getNumero());
+        } else {
+            version = instantane.get().getEtat().suivante(this, 0);
+        }
+        versionRestauree = null;
+        historique = historique.ajouter(version);
+        publier(version);
+    }
+
+    /**
+     * Remet la partie dans l'état où elle était au début du tour précédent (les
+     * deux dernières versions sont retirées de l'historique : celle du tour
+     * précédent sera enregistrée de nouveau quand il sera rejoué). Le log n'est
+     * pas effacé, l'annulation y est simplement signalée.
+     */
+    private void annulerDernierTour() {
+        annulationDemandee = false;
+        EtatPartie actuel = historique.dernier().suivante(this);
+        historique = historique.retirerDernier();
+        EtatPartie cible = historique.dernier();
+        historique = historique.retirerDernier();
+        String demandeur = joueurCourant.toLog();
+        cible.restaurer(this, actuel);
+        versionRestauree = cible;
+        log(demandeur + " annule le tour précédent.");
+    }
+
+    /**
+     * Remet les cartes wagon et la pile de destinations dans un état enregistré
+     */
+    void restaurerCartesEtPiles(int[] pioche, int[] defausse, List<CouleurWagon> visibles,
+                                List<Destination> destinations, long nbDestinationsPiochees) {
+        remplir(pileCartesWagon, pioche);
+        remplir(defausseCartesWagon, defausse);
+        cartesWagonVisibles.clear();
+        cartesWagonVisibles.addAll(visibles);
+        pileDestinations.clear();
+        pileDestinations.addAll(destinations);
+        this.nbDestinationsPiochees = nbDestinationsPiochees;
+        signalerModification();
+    }
+
+    /**
+     * Remet le compteur de tours, le joueur courant et la graine du générateur
+     * aléatoire dans un état enregistré
+     */
+    void restaurerTour(int nbTours, Joueur joueurCourant, long graineTour) {
+        this.nbTours = nbTours;
+        this.joueurCourant = joueurCourant;
+        this.graineTour = graineTour;
+        signalerModification();
+    }
+
+    /**
+     * Remplace le contenu d'un paquet par le nombre de cartes indiqué de chaque
+     * couleur
+     */
+    static void remplir(PaquetCartesWagon paquet, int[] compteurs) {
+        paquet.clear();
+        for (CouleurWagon couleur : CouleurWagon.values()) {
+            for (int n = 0; n < compteurs[couleur.ordinal()]; n++) {
+                paquet.add(couleur);
+            }
+        }
+    }
+
+    /**
+     * Fait jouer son tour au joueur courant, en émettant un événement JFR qui
+     * couvre le tour
+     *
+     * @param phase la phase de la partie (pour l'événement)
+     */
+    private void jouerTourTrace(String phase) {
+        EvenementTour evenement = new EvenementTour(joueurCourant.getNom(), nbTours, phase);
+        evenement.begin();
+        joueurCourant.jouerTour();
+        evenement.commit();
+    }
+
     /**
      * Ajoute une carte dans la pile de défausse.
      * Dans le cas peu probable, où il y a moins de 5 cartes wagon face visibles
@@ -261,6 +714,10 @@ public class Jeu implements Runnable {
      * @param c carte à défausser
      */
     public void defausserCarteWagon(CouleurWagon c) {
+        if (c == null) {
+            return;
+        }
+        signalerModification();
         if (this.cartesWagonVisibles.size() < 5) {
             this.cartesWagonVisibles.add(c);
         } else {
@@ -271,63 +728,73 @@ public class Jeu implements Runnable {
     /**
      * Pioche une carte de la pile de pioche
      * Si la pile est vide, les cartes de la défausse sont replacées dans la pioche
-     * puis mélangées avant de piocher une carte
+     * avant de piocher une carte
+     * <p>
+     * La pioche n'est jamais mélangée : la carte piochée est tirée uniformément au
+     * hasard parmi les cartes restantes (en temps constant), ce qui revient à
+     * piocher la carte du dessus d'une pioche mélangée.
      *
      * @return la carte qui a été piochée (ou null si aucune carte disponible)
      */
     public CouleurWagon piocherCarteWagon() {
-        CouleurWagon carte_pioche = null;
-
+        signalerModification();
         if (this.pileCartesWagon.isEmpty()) {
-
-            if (!this.defausseCartesWagon.isEmpty()) {
-
-                this.pileCartesWagon.addAll(this.defausseCartesWagon);
-                this.defausseCartesWagon.clear();
-                Collections.shuffle(this.pileCartesWagon);
-
-                carte_pioche = this.pileCartesWagon.get(0);
-                this.pileCartesWagon.remove(0);
-            }
-        } else {
-            carte_pioche = this.pileCartesWagon.get(0);
-            this.pileCartesWagon.remove(0);
+            remettreDefausseDansPioche();
         }
-        return carte_pioche;
+        return this.pileCartesWagon.piocher(aleatoire);
+    }
+
+    /**
+     * Replace les cartes de la défausse dans la pioche (vide). Comme les cartes
+     * sont tirées au hasard, il n'est pas nécessaire de les mélanger : les deux
+     * paquets sont simplement échangés.
+     */
+    private void remettreDefausseDansPioche() {
+        new EvenementMelange(EvenementMelange.PIOCHE_VIDE, this.defausseCartesWagon.size()).commit();
+        PaquetCartesWagon pioche = this.pileCartesWagon;
+        this.pileCartesWagon = this.defausseCartesWagon;
+        this.defausseCartesWagon = pioche;
     }
 
     /**
      * Retire une carte wagon de la pile des cartes wagon visibles.
      * Si une carte a été retirée, la pile de cartes wagons visibles est recomplétée
-     * (remise à 5, éventuellement remélangée si 3 locomotives visibles)
+     * (remise à 5, et remplacée entièrement tant qu'il y a 3 locomotives visibles)
      */
     public void retirerCarteWagonVisible(CouleurWagon c) {
-        if (this.pileCartesWagon.isEmpty()) {
-            this.cartesWagonVisibles.remove(c);
-            if (!this.defausseCartesWagon.isEmpty()) {
-                this.pileCartesWagon.addAll(this.defausseCartesWagon);
-                this.defausseCartesWagon.clear();
-                this.cartesWagonVisibles.add(this.pileCartesWagon.get(0));
-                this.pileCartesWagon.remove(0);
-            }
-        } else {
-            this.cartesWagonVisibles.remove(c);
-            this.cartesWagonVisibles.add(this.pileCartesWagon.get(0));
-            this.pileCartesWagon.remove(0);
-        }
-
-        if (this.pileCartesWagon.size() + this.cartesWagonVisibles.size() > 5) {
-            while (Collections.frequency(this.cartesWagonVisibles, CouleurWagon.LOCOMOTIVE) >= 3) {
-                this.pileCartesWagon.addAll(this.cartesWagonVisibles);
-                this.cartesWagonVisibles.clear();
-                Collections.shuffle(this.pileCartesWagon);
-                for (int i = 0; i < 5; i++) {
-                    this.cartesWagonVisibles.add(this.pileCartesWagon.get(0));
-                    this.pileCartesWagon.remove(0);
+        signalerModification();
+        this.cartesWagonVisibles.remove(c);
+        CouleurWagon remplacement = piocherCarteWagon();
+        if (remplacement != null) {
+            this.cartesWagonVisibles.add(remplacement);
+        }
+
+        while (this.cartesWagonVisibles.compter(CouleurWagon.LOCOMOTIVE) >= 3 && peutRemplacerCartesVisibles()) {
+            // les cartes visibles sont défaussées et 5 nouvelles cartes sont piochées
+            new EvenementMelange(EvenementMelange.TROIS_LOCOMOTIVES, this.cartesWagonVisibles.size()).commit();
+            this.defausseCartesWagon.addAll(this.cartesWagonVisibles);
+            this.cartesWagonVisibles.clear();
+            for (int i = 0; i < 5; i++) {
+                CouleurWagon carte = piocherCarteWagon();
+                if (carte != null) {
+                    this.cartesWagonVisibles.add(carte);
                 }
             }
         }
+    }
 
+    /**
+     * Indique s'il est possible d'obtenir des cartes visibles avec moins de 3
+     * locomotives en les remplaçant (c'est-à-dire s'il reste au moins 3 cartes qui
+     * ne sont pas des locomotives parmi la pioche, la défausse et les cartes
+     * visibles). Sinon, remplacer les cartes visibles ne terminerait jamais.
+     */
+    private boolean peutRemplacerCartesVisibles() {
+        int total = this.pileCartesWagon.size() + this.defausseCartesWagon.size() + this.cartesWagonVisibles.size();
+        int locomotives = this.pileCartesWagon.compter(CouleurWagon.LOCOMOTIVE)
+                + this.defausseCartesWagon.compter(CouleurWagon.LOCOMOTIVE)
+                + this.cartesWagonVisibles.compter(CouleurWagon.LOCOMOTIVE);
+        return total - locomotives >= 3;
     }
 
     /**
@@ -337,10 +804,12 @@ public class Jeu implements Runnable {
      * disponible)
      */
     public Destination piocherDestination() {
+        signalerModification();
         Destination res = null;
         if (!this.pileDestinations.isEmpty()) {
             res = this.pileDestinations.get(0);
             this.pileDestinations.remove(0);
+            nbDestinationsPiochees++;
         }
         return res;
     }
@@ -358,18 +827,34 @@ public class Jeu implements Runnable {
         return joiner.toString();
     }
 
+    public List<String> getLog() {
+        return log;
+    }
+
     /**
      * Ajoute un message au log du jeu
      */
     public void log(String message) {
         log.add(message);
+        signalerModification();
     }
 
     /**
-     * Ajoute un message à la file d'entrées
+     * Signale que l'état de la partie a été modifié (le prochain prompt devra donc
+     * renvoyer l'état aux clients)
      */
-    public void addInput(String message) {
-        inputQueue.add(message);
+    public void signalerModification() {
+        versionModifications++;
+    }
+
+    /**
+     * Ajoute un message à la file d'entrées (sauf si la file est pleine)
+     *
+     * @return vrai si le message a été ajouté, faux s'il a été ignoré parce que la
+     * file est pleine
+     */
+    public boolean addInput(String message) {
+        return inputQueue.offer(message);
     }
 
     /**
@@ -382,21 +867,73 @@ public class Jeu implements Runnable {
      */
     public String lireLigne() {
         try {
-            return inputQueue.take();
+            while (true) {
+                String entree = inputQueue.take();
+                if (entree != ACTUALISATION) {
+                    return entree;
+                }
+                actualisationDemandee.set(false);
+                if (instructionDernierPrompt != null) {
+                    envoyerEtat(instructionDernierPrompt, boutonsDernierPrompt, peutPasserDernierPrompt);
+                }
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Demande au thread de la partie de renvoyer l'état du dernier prompt (avec
+     * ses vues binaires) dès qu'il attend une entrée. Sert à un client binaire
+     * qui rejoint une table dont l'état actuel a été envoyé sans vues binaires
+     * (voir {@code Table}). Peut être appelée depuis n'importe quel thread.
+     */
+    public void demanderActualisation() {
+        if (actualisationDemandee.compareAndSet(false, true) && !inputQueue.offer(ACTUALISATION)) {
+            // file pleine : le prochain prompt enverra de toute façon un nouvel état
+            actualisationDemandee.set(false);
+        }
+    }
+
+    /**
+     * Signale au joueur courant que son entrée n'est pas un choix valide (sans
+     * renvoyer l'état de la partie, qui n'a pas changé)
+     *
+     * @param entree l'entrée refusée
+     */
+    public void rejeterEntree(String entree) {
+        if (silencieux) {
+            return;
+        }
+        System.out.printf(">>> Choix invalide : %s <<<%n", entree);
+        GameServer.rejeterEntree(this, entree);
+    }
+
     /**
      * Envoie l'état de la partie pour affichage aux joueurs avant de faire un choix
+     * <p>
+     * Si ni l'état de la partie ni le prompt n'ont changé depuis le dernier envoi,
+     * l'état n'est ni reconstruit ni renvoyé.
      *
      * @param instruction l'instruction qui est donnée au joueur
      * @param boutons     labels des choix proposés s'il y en a
      * @param peutPasser  indique si le joueur peut passer sans faire de choix
      */
     public void prompt(String instruction, Collection<String> boutons, boolean peutPasser) {
+        String cle = joueurCourant.getNom() + "\n" + instruction + "\n" + boutons + "\n" + peutPasser;
+        if (versionModifications == versionDernierPrompt && cle.equals(cleDernierPrompt)) {
+            return;
+        }
+        versionDernierPrompt = versionModifications;
+        cleDernierPrompt = cle;
+        if (silencieux) {
+            return;
+        }
+        instructionDernierPrompt = instruction;
+        boutonsDernierPrompt = List.copyOf(boutons);
+        peutPasserDernierPrompt = peutPasser;
+
         System.out.println();
         System.out.println(this);
         if (boutons.isEmpty()) {
@@ -409,24 +946,102 @@ public class Jeu implements Runnable {
             System.out.printf(">>> %s: %s [%s] <<<%n", joueurCourant.getNom(), instruction, joiner);
         }
 
-        Map<String, Object> data = Map.ofEntries(
-                new AbstractMap.SimpleEntry<String, Object>("prompt", Map.ofEntries(
-                        new AbstractMap.SimpleEntry<String, Object>("instruction", instruction),
-                        new AbstractMap.SimpleEntry<String, Object>("boutons", boutons),
-                        new AbstractMap.SimpleEntry<String, Object>("nomJoueurCourant", getJoueurCourant().getNom()),
-                        new AbstractMap.SimpleEntry<String, Object>("peutPasser", peutPasser))),
+        assert verifierCartesWagon() : "des cartes wagon ont été perdues ou dupliquées";
+        envoyerEtat(instruction, boutons, peutPasser);
+    }
+
+    /**
+     * Construit et envoie aux clients un nouvel état de la partie, avec le prompt
+     * donné
+     */
+    private void envoyerEtat(String instruction, Collection<String> boutons, boolean peutPasser) {
+        EvenementPrompt evenement = new EvenementPrompt(joueurCourant.getNom(), instruction);
+        evenement.begin();
+
+        // parties de l'état communes à toutes les vues (le numéro de version sert de
+        // numéro de séquence aux clients qui se reconnectent)
+        versionEtat++;
+        Map<String, Object> commun = Map.ofEntries(
+                new AbstractMap.SimpleEntry<String, Object>("version", versionEtat),
                 new AbstractMap.SimpleEntry<>("villes",
                         villes.stream().map(Ville::asPOJO).collect(Collectors.toList())),
                 new AbstractMap.SimpleEntry<>("routes",
                         routes.stream().map(Route::asPOJO).collect(Collectors.toList())),
-                new AbstractMap.SimpleEntry<String, Object>("joueurs",
-                        joueurs.stream().map(Joueur::asPOJO).collect(Collectors.toList())),
                 new AbstractMap.SimpleEntry<String, Object>("piles", Map.ofEntries(
                         new AbstractMap.SimpleEntry<String, Object>("pileCartesWagon", pileCartesWagon.size()),
                         new AbstractMap.SimpleEntry<String, Object>("pileDestinations", pileDestinations.size()),
                         new AbstractMap.SimpleEntry<String, Object>("defausseCartesWagon", defausseCartesWagon),
                         new AbstractMap.SimpleEntry<String, Object>("cartesWagonVisibles", cartesWagonVisibles))),
                 new AbstractMap.SimpleEntry<String, Object>("log", log));
-        GameServer.setEtatJeu(new Gson().toJson(data));
+
+        // les boutons ne sont montrés qu'au joueur courant : pendant le choix des
+        // destinations, ce sont ses destinations (cachées aux autres joueurs)
+        int siegeCourant = joueurs.indexOf(joueurCourant);
+        Map<String, Object> promptCourant = Map.of("instruction", instruction, "boutons", boutons,
+                "nomJoueurCourant", joueurCourant.getNom(), "peutPasser", peutPasser);
+        Map<String, Object> promptAutres = Map.of("instruction", instruction, "boutons", List.of(),
+                "nomJoueurCourant", joueurCourant.getNom(), "peutPasser", peutPasser);
+
+        // une vue par siège, plus la vue publique (siège -1), chacune sérialisée une seule fois
+        Gson gson = new Gson();
+        String[] vuesSieges = new String[joueurs.size()];
+        for (int siege = 0; siege < joueurs.size(); siege++) {
+            vuesSieges[siege] = gson.toJson(vue(commun, siege == siegeCourant ? promptCourant : promptAutres, siege));
+            evenement.ajouterVue(vuesSieges[siege]);
+        }
+        String vuePublique = gson.toJson(vue(commun, promptAutres, -1));
+        evenement.ajouterVue(vuePublique);
+
+        // les vues binaires sont encodées à la demande, à partir d'un instantané
+        // de l'état qui n'est relevé que si la table a des clients binaires (ou
+        // si l'événement JFR enregistre les trames). Le dernier état d'une partie
+        // terminée est toujours relevé : il ne pourra plus être actualisé.
+        CodecBinaire.Instantane instantane = null;
+        if (evenement.isEnabled() || scoresFinaux != null || GameServer.aDesClientsBinaires(this)) {
+            instantane = CodecBinaire.capturer(this, versionEtat, instruction, boutons, peutPasser, tailleLogEnvoye);
+            tailleLogEnvoye = log.size();
+        }
+        EtatJeu etat = new EtatJeu(versionEtat, vuesSieges, vuePublique, instantane, siegeCourant);
+        if (evenement.isEnabled()) {
+            for (int siege = -1; siege < joueurs.size(); siege++) {
+                evenement.ajouterBinaire(etat.getVueBinaire(siege, false));
+                evenement.ajouterBinaire(etat.getVueBinaire(siege, true));
+            }
+        }
+        evenement.setVersion(versionEtat);
+        evenement.commit();
+
+        GameServer.setEtatJeu(this, etat);
+    }
+
+    /**
+     * Construit la description de l'état telle que la voit un siège : le joueur
+     * assis à ce siège voit ses cartes et ses destinations, mais pas celles des
+     * autres joueurs, ainsi que les probabilités de surcoût des tunnels qu'il
+     * peut payer.
+     *
+     * @param commun les parties de l'état communes à toutes les vues
+     * @param prompt le prompt tel que le voit ce siège (avec les boutons pour le
+     *               joueur courant seulement)
+     * @param siege  l'indice du joueur qui regarde, ou -1 pour la vue publique
+     */
+    private Map<String, Object> vue(Map<String, Object> commun, Map<String, Object> prompt, int siege) {
+        Map<String, Object> data = new HashMap<>(commun);
+        data.put("prompt", prompt);
+        List<Object> joueursPOJO = new ArrayList<>();
+        for (int i = 0; i < joueurs.size(); i++) {
+            joueursPOJO.add(joueurs.get(i).asPOJO(i == siege));
+        }
+        data.put("joueurs", joueursPOJO);
+        if (scoresFinaux != null) {
+            data.put("scoresFinaux", scoresFinaux.stream().map(ScoreFinal::asPOJO).collect(Collectors.toList()));
+        }
+        if (siege >= 0) {
+            // probabilités de surcoût des tunnels, calculées avec ce que sait ce joueur
+            Joueur joueur = joueurs.get(siege);
+            data.put("tunnels", ProbabiliteTunnel.pourJoueur(this, joueur)
+                    .annoterTunnels(routes, joueur.getCartesWagon()));
+        }
+        return data;
     }
 }
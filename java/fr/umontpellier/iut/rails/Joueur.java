@@ -1,6 +1,9 @@
 package fr.umontpellier.iut.rails;
 
+import fr.umontpellier.iut.evenements.EvenementChoix;
+
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class Joueur {
@@ -13,6 +16,17 @@ public class Joueur {
         JAUNE, ROUGE, BLEU, VERT, ROSE
     }
 
+    /**
+     * Bouton proposé lors d'un paiement pour payer automatiquement avec les cartes
+     * choisies par {@code SolveurPaiement}
+     */
+    public static final String PAIEMENT_AUTOMATIQUE = "Payer automatiquement";
+    /**
+     * Instruction donnée au joueur lorsqu'il choisit les destinations à écarter
+     * (les choix sont alors les noms des destinations)
+     */
+    public static final String INSTRUCTION_DESTINATIONS = "Choisissez les destinations à retirer :";
+
     /**
      * Jeu auquel le joueur est rattaché
      */
@@ -40,16 +54,26 @@ public class Joueur {
     /**
      * Liste des cartes que le joueur a en main
      */
-    private List<CouleurWagon> cartesWagon;
+    private PaquetCartesWagon cartesWagon;
     /**
      * Liste temporaire de cartes wagon que le joueur est en train de jouer pour
      * payer la capture d'une route ou la construction d'une gare
      */
-    private List<CouleurWagon> cartesWagonPosees;
+    private PaquetCartesWagon cartesWagonPosees;
     /**
      * Score courant du joueur (somme des valeurs des routes capturées)
      */
     private int score;
+    /**
+     * Nombre de wagons estimé pour les destinations que le joueur est en train de
+     * choisir (-1 en dehors de ce choix)
+     */
+    private int coutDestinationsEnvisagees = -1;
+    /**
+     * Stratégie qui fait les choix à la place du joueur ({@code null} si les choix
+     * sont lus sur l'entrée du jeu)
+     */
+    private Strategie strategie;
 
     public Joueur(String nom, Jeu jeu, Joueur.Couleur couleur) {
         this.nom = nom;
@@ -57,8 +81,8 @@ public class Joueur {
         this.couleur = couleur;
         nbGares = 3;
         nbWagons = 45;
-        cartesWagon = new ArrayList<>();
-        cartesWagonPosees = new ArrayList<>();
+        cartesWagon = new PaquetCartesWagon();
+        cartesWagonPosees = new PaquetCartesWagon();
         destinations = new ArrayList<>();
         score = 12; // chaque gare non utilisée vaut 4 points
     }
@@ -67,6 +91,10 @@ public class Joueur {
         return nom;
     }
 
+    void setNom(String nom) {
+        this.nom = nom;
+    }
+
     public Couleur getCouleur() {
         return couleur;
     }
@@ -91,6 +119,56 @@ public class Joueur {
         return destinations;
     }
 
+    public Strategie getStrategie() {
+        return strategie;
+    }
+
+    /**
+     * Confie les choix du joueur à une stratégie (bot), ou les rend aux entrées du
+     * jeu si {@code strategie} est {@code null}
+     */
+    public void setStrategie(Strategie strategie) {
+        this.strategie = strategie;
+    }
+
+    /**
+     * Renvoie le nombre de cartes d'une couleur dans la main du joueur et parmi
+     * les cartes qu'il est en train de poser (en temps constant)
+     */
+    public int compterCartesWagon(CouleurWagon c) {
+        return cartesWagon.compter(c) + cartesWagonPosees.compter(c);
+    }
+
+    /**
+     * Renvoie le nombre de cartes de chaque couleur de la main du joueur (indexé
+     * par {@code CouleurWagon.ordinal()})
+     */
+    public int[] getCompteursCartesWagon() {
+        return cartesWagon.getCompteurs();
+    }
+
+    /**
+     * Ajoute une carte wagon à la main du joueur (rien n'est fait si la carte est
+     * {@code null}, c'est-à-dire si la pioche et la défausse étaient vides)
+     */
+    public void ajouterCarteWagon(CouleurWagon c) {
+        if (c == null) {
+            return;
+        }
+        cartesWagon.add(c);
+        jeu.signalerModification();
+    }
+
+    /**
+     * Retire une carte wagon de la main du joueur
+     *
+     * @return vrai si la carte était dans la main du joueur
+     */
+    public boolean retirerCarteWagon(CouleurWagon c) {
+        jeu.signalerModification();
+        return cartesWagon.remove(c);
+    }
+
     /**
      * Attend une entrée de la part du joueur (au clavier ou sur la websocket) et
      * renvoie le choix du joueur.
@@ -99,7 +177,9 @@ public class Joueur {
      * qu'un choix valide (un élément de {@code choix} ou de {@code boutons} ou
      * éventuellement la chaîne vide si l'utilisateur est autorisé à passer) soit
      * reçu.
-     * Lorsqu'un choix valide est obtenu, il est renvoyé par la fonction.
+     * Lorsqu'un choix valide est obtenu, il est renvoyé par la fonction. Une entrée
+     * invalide ne provoque pas de nouvel envoi de l'état, mais seulement un court
+     * message de refus au joueur.
      * <p>
      * Si l'ensemble des choix valides ({@code choix} + {@code boutons}) ne comporte
      * qu'un seul élément et que {@code canPass} est faux, l'unique choix valide est
@@ -108,6 +188,9 @@ public class Joueur {
      * Si l'ensemble des choix est vide, la chaîne vide ("") est automatiquement
      * renvoyée par la méthode (indépendamment de la valeur de {@code canPass}).
      * <p>
+     * Si le joueur est contrôlé par une {@code Strategie}, le choix lui est demandé
+     * directement, sans envoyer l'état ni lire l'entrée du jeu.
+     * <p>
      * Exemple d'utilisation pour demander à un joueur de répondre à une question
      * par "oui" ou "non" :
      * <p>
@@ -141,8 +224,22 @@ public class Joueur {
      */
     public String choisir(String instruction, Collection<String> choix, Collection<String> boutons,
                           boolean peutPasser) {
-        // on retire les doublons de la liste des choix
-        HashSet<String> choixDistincts = new HashSet<>();
+        return choisir(instruction, choix, boutons, peutPasser, entree -> false);
+    }
+
+    /**
+     * Variante de {@code choisir} qui accepte en plus toute entrée pour laquelle
+     * {@code autreChoixValide} renvoie vrai (par exemple un paiement complet envoyé
+     * en un seul message).
+     *
+     * @param autreChoixValide prédicat indiquant si une entrée qui n'est ni dans
+     *                         {@code choix} ni dans {@code boutons} est tout de même
+     *                         valide
+     */
+    public String choisir(String instruction, Collection<String> choix, Collection<String> boutons,
+                          boolean peutPasser, Predicate<String> autreChoixValide) {
+        // on retire les doublons de la liste des choix (en gardant leur ordre)
+        LinkedHashSet<String> choixDistincts = new LinkedHashSet<>();
         choixDistincts.addAll(choix);
         choixDistincts.addAll(boutons);
 
@@ -153,15 +250,33 @@ public class Joueur {
             // Un seul choix possible (renvoyer cet unique élément)
             if (choixDistincts.size() == 1 && !peutPasser)
                 return choixDistincts.iterator().next();
-            else {
+            else if (strategie != null) {
+                EvenementChoix evenement = new EvenementChoix(nom, instruction, choixDistincts.size(), true);
+                evenement.begin();
+                String entree = strategie.choisir(this, instruction, new ArrayList<>(choixDistincts), peutPasser);
+                evenement.commit();
+                if (choixDistincts.contains(entree) || (peutPasser && entree.equals(""))
+                        || (!entree.equals("") && autreChoixValide.test(entree)))
+                    return entree;
+                throw new IllegalStateException(String.format("Choix invalide de la stratégie de %s : \"%s\"",
+                        nom, entree));
+            } else {
                 String entree;
+                EvenementChoix evenement = new EvenementChoix(nom, instruction, choixDistincts.size(), false);
+                jeu.prompt(instruction, boutons, peutPasser);
+                evenement.begin();
                 // Lit l'entrée de l'utilisateur jusqu'à obtenir un choix valide
                 while (true) {
-                    jeu.prompt(instruction, boutons, peutPasser);
                     entree = jeu.lireLigne();
                     // si une réponse valide est obtenue, elle est renvoyée
-                    if (choixDistincts.contains(entree) || (peutPasser && entree.equals("")))
+                    if (choixDistincts.contains(entree) || (peutPasser && entree.equals(""))
+                            || (!entree.equals("") && autreChoixValide.test(entree))) {
+                        evenement.commit();
                         return entree;
+                    }
+                    // sinon l'état n'a pas changé : on se contente de signaler le refus
+                    evenement.ajouterRejet();
+                    jeu.rejeterEntree(entree);
                 }
             }
         }
@@ -201,6 +316,17 @@ public class Joueur {
      * (POJO)
      */
     public Object asPOJO() {
+        return asPOJO(true);
+    }
+
+    /**
+     * Renvoie une représentation du joueur sous la forme d'un objet Java simple
+     * (POJO)
+     *
+     * @param complet si faux, les cartes wagon et les destinations du joueur
+     *                (informations cachées) sont remplacées par leur nombre
+     */
+    public Object asPOJO(boolean complet) {
         HashMap<String, Object> data = new HashMap<>();
         data.put("nom", nom);
         data.put("couleur", couleur);
@@ -208,8 +334,21 @@ public class Joueur {
         data.put("nbGares", nbGares);
         data.put("nbWagons", nbWagons);
         data.put("estJoueurCourant", this == jeu.getJoueurCourant());
-        data.put("destinations", destinations.stream().map(Destination::asPOJO).collect(Collectors.toList()));
-        data.put("cartesWagon", cartesWagon.stream().sorted().map(CouleurWagon::name).collect(Collectors.toList()));
+        if (complet) {
+            data.put("destinations", destinations.stream().map(Destination::asPOJO).collect(Collectors.toList()));
+            if (coutDestinationsEnvisagees >= 0) {
+                boolean realisables = coutDestinationsEnvisagees != EvaluateurDestinations.INATTEIGNABLE;
+                data.put("destinationsRealisables", realisables);
+                if (realisables) {
+                    data.put("coutDestinations", coutDestinationsEnvisagees);
+                }
+            }
+            data.put("cartesWagon",
+                    cartesWagon.stream().sorted().map(CouleurWagon::name).collect(Collectors.toList()));
+        } else {
+            data.put("nbDestinations", destinations.size());
+            data.put("nbCartesWagon", cartesWagon.size());
+        }
         data.put("cartesWagonPosees",
                 cartesWagonPosees.stream().sorted().map(CouleurWagon::name).collect(Collectors.toList()));
         return data;
@@ -244,8 +383,11 @@ public class Joueur {
 
         boolean verif = false;
         while (destinationsPossibles.size() > n && !verif) {
+            List<Destination> gardees = new ArrayList<>(this.destinations);
+            gardees.addAll(destinationsPossibles);
+            estimerCoutDestinations(gardees);
             String choix = this.choisir(
-                    "Choisissez les destinations à retirer :",
+                    INSTRUCTION_DESTINATIONS,
                     destinationsChoisis,
                     destinationsChoisis,
                     true);
@@ -268,22 +410,52 @@ public class Joueur {
             }
         }
         this.destinations.addAll(destinationsPossibles);
+        estimerCoutDestinations(null);
 
 
         return ecarte;
     }
 
+    /**
+     * Estime le nombre de wagons nécessaires pour réaliser ensemble les
+     * destinations que le joueur envisage de garder, en tenant compte des routes
+     * déjà capturées. L'estimation n'est montrée que dans la vue du siège du
+     * joueur (elle renseigne sur ses destinations, qui sont cachées).
+     *
+     * @param destinations les destinations que le joueur envisage de garder, ou
+     *                     {@code null} une fois le choix terminé
+     */
+    public void estimerCoutDestinations(Collection<Destination> destinations) {
+        coutDestinationsEnvisagees = destinations == null ? -1
+                : jeu.getEvaluateurDestinations().estimerCout(this, destinations);
+        jeu.signalerModification();
+    }
+
+    /**
+     * Nombre de wagons estimé pour les destinations que le joueur est en train de
+     * choisir ({@code EvaluateurDestinations.INATTEIGNABLE} si elles ne peuvent
+     * plus être réalisées ensemble, -1 s'il ne choisit pas de destinations)
+     */
+    public int getCoutDestinationsEnvisagees() {
+        return coutDestinationsEnvisagees;
+    }
+
     public void piocherWagons(CouleurWagon c) {
         if (c == CouleurWagon.LOCOMOTIVE) {
             jeu.retirerCarteWagonVisible(c);
-            this.cartesWagon.add(c);
+            ajouterCarteWagon(c);
+            enregistrerCoup(JournalCoups.TypeCoup.CARTE_VISIBLE, c.ordinal(), 0, 0);
+            jeu.publierInstantane();
         } else {
             if (c == CouleurWagon.GRIS) {
-                this.cartesWagon.add(jeu.piocherCarteWagon());
+                ajouterCarteWagon(jeu.piocherCarteWagon());
+                enregistrerCoup(JournalCoups.TypeCoup.CARTE_CACHEE, -1, 0, 0);
             } else {
                 jeu.retirerCarteWagonVisible(c);
-                this.cartesWagon.add(c);
+                ajouterCarteWagon(c);
+                enregistrerCoup(JournalCoups.TypeCoup.CARTE_VISIBLE, c.ordinal(), 0, 0);
             }
+            jeu.publierInstantane();
             ArrayList<String> temp = new ArrayList<>();
             for (int i = 0; i < jeu.getCartesWagonVisibles().size(); i++) {
                 if (jeu.getCartesWagonVisibles().get(i) != CouleurWagon.LOCOMOTIVE)
@@ -297,345 +469,183 @@ public class Joueur {
                     false);
             CouleurWagon c2 = CouleurWagon.valueOf(choix);
             if (choix.equals("GRIS")) {
-                this.cartesWagon.add(jeu.piocherCarteWagon());
+                ajouterCarteWagon(jeu.piocherCarteWagon());
+                enregistrerCoup(JournalCoups.TypeCoup.CARTE_CACHEE, -1, 0, 0);
             } else {
                 jeu.retirerCarteWagonVisible(c2);
-                this.cartesWagon.add(c2);
+                ajouterCarteWagon(c2);
+                enregistrerCoup(JournalCoups.TypeCoup.CARTE_VISIBLE, c2.ordinal(), 0, 0);
             }
+            jeu.publierInstantane();
 
         }
     }
 
-    public void poserWagon(Route route) {
-        List<CouleurWagon> cartesADefausser = new ArrayList<>();
-        Map<Integer, Integer> scoring = new HashMap<>();
-        scoring.put(1, 1);
-        scoring.put(2, 2);
-        scoring.put(3, 4);
-        scoring.put(4, 7);
-        scoring.put(6, 15);
-        scoring.put(8, 21);
-        int compteurCartes = 0;
-        boolean fini = true;
-        String couleur = "GRIS";
-
-
-        log(this.nom + " souhaite poser une route.");
-        //Tunnel
-        if (route instanceof Tunnel) {
-            Tunnel t = (Tunnel) route;
-            if (t.getCouleur() == CouleurWagon.GRIS) { //Tunnel gris
-                couleur = "null";
-                while (compteurCartes < route.getLongueur()) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    String choix = this.choisir(
-                            "Choisissez un wagon :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            true);
-                    if (choix.equals(CouleurWagon.LOCOMOTIVE.name())) {
-                        cartesADefausser.add(CouleurWagon.LOCOMOTIVE);
-                        this.cartesWagon.remove(CouleurWagon.LOCOMOTIVE);
-                        compteurCartes++;
-                        couleur=choix;
-                    } else if (Collections.frequency(this.cartesWagon, CouleurWagon.valueOf(choix)) + compteurCartes + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) >= t.getLongueur() && couleur.equals("null")) {
-                        couleur = choix;
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    } else if (choix.equals(couleur)) {
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    }
-                }
-            }
-            //Tunnel de couleur
-            else {
-                String choix;
-
-                while (compteurCartes < t.getLongueur() && fini) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    choix = this.choisir(
-                            "Choisissez les wagons à retirer :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            true);
-                    if (choix.equals("")) {
-                        // le joueur a choisi une route
-                        fini = false;
-                        log("Aucune route n'a été choisie");
-                    } else if (choix.equals(t.getCouleur().name()) || choix.equals(CouleurWagon.LOCOMOTIVE.name())) {
-
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    }
-                }
-            }
-            ArrayList<CouleurWagon> cartesRevealsTunnels = new ArrayList<>();
-            for (int i = 0; i < 3; i++) {
-                cartesRevealsTunnels.add(jeu.piocherCarteWagon());
-            }
-            for (CouleurWagon cartesRevealsTunnel : cartesRevealsTunnels) {
-                jeu.defausserCarteWagon(cartesRevealsTunnel);
-            }
-            ArrayList<CouleurWagon> test = new ArrayList<>(cartesRevealsTunnels);
-            int compteurRemove = 0;
-            for (int i = 0; i < test.size(); i++) {
-                if (!cartesRevealsTunnels.get(i - compteurRemove).equals(CouleurWagon.valueOf(couleur)) && !cartesRevealsTunnels.get(i - compteurRemove).equals(t.getCouleur())) {
-                    cartesRevealsTunnels.remove(i - compteurRemove);
-                    compteurRemove++;
-                }
-            }
-            while (compteurCartes < t.getLongueur() + cartesRevealsTunnels.size() && fini) {
-                if (t.getCouleur().equals(CouleurWagon.GRIS)) {
-                    if (Collections.frequency(this.cartesWagon, CouleurWagon.valueOf(couleur)) + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) < cartesRevealsTunnels.size()) {
-                        fini = false;
-                        break;
-                    }
-                } else {
-                    if (Collections.frequency(this.cartesWagon, t.getCouleur()) + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) < cartesRevealsTunnels.size()) {
-                        fini = false;
-                        break;
-                    }
-                }
-                String choix;
-                List<String> listeCartesWagon = new ArrayList<>();
-                for (CouleurWagon elt : this.cartesWagon) {
-                    listeCartesWagon.add(elt.name());
-                }
-                log("Les cartes à retirer en plus sont : "+cartesRevealsTunnels.toString());
-                choix = this.choisir(
-                        "Retirez les cartes supplémentaires :",
-                        listeCartesWagon,
-                        new ArrayList<>(),
-                        true);
-                if (choix.equals("")) {
-                    // le joueur a choisi une route
-                    fini = false;
-                    log("Aucune route n'a été choisie");
-                } else if (choix.equals(t.getCouleur().name()) || choix.equals(CouleurWagon.LOCOMOTIVE.name()) || choix.equals(couleur)) {
-                    cartesADefausser.add(CouleurWagon.valueOf(choix));
-                    this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                    compteurCartes++;
+    /**
+     * Demande au joueur les cartes wagon à payer, une par une ou toutes en un seul
+     * message (noms des cartes séparés par {@code Paiement.SEPARATEUR}).
+     * <p>
+     * Les cartes choisies sont retirées de la main du joueur et ajoutées à
+     * {@code cartesWagonPosees}. Seules les cartes qui permettent encore de
+     * terminer le paiement sont proposées, et un paiement en un seul message est
+     * validé en une seule fois. Si le joueur passe, les cartes posées pour ce
+     * paiement sont remises dans sa main. Le bouton {@code PAIEMENT_AUTOMATIQUE}
+     * permet de payer directement avec le paiement calculé par
+     * {@code SolveurPaiement}.
+     *
+     * @param instruction l'instruction à afficher
+     * @param paiement    le paiement à effectuer
+     * @param peutPasser  indique si le joueur peut renoncer au paiement
+     * @return vrai si le paiement a été effectué, faux si le joueur y a renoncé
+     */
+    private boolean payer(String instruction, Paiement paiement, boolean peutPasser) {
+        int debut = cartesWagonPosees.size();
+        List<CouleurWagon> posees = cartesWagonPosees.subList(debut, cartesWagonPosees.size());
+        // le paiement automatique n'est proposé qu'avant la première carte posée :
+        // il est calculé une seule fois, sur la main de départ
+        List<CouleurWagon> paiementAutomatique = new SolveurPaiement(getCompteursCartesWagon()).meilleurPaiement(paiement);
+        while (posees.size() < paiement.getNbCartes()) {
+            Set<String> cartesPossibles = new HashSet<>();
+            for (CouleurWagon c : cartesWagon) {
+                List<CouleurWagon> essai = new ArrayList<>(posees);
+                essai.add(c);
+                if (!cartesPossibles.contains(c.name()) && paiement.peutCompleter(essai, sansCarte(c))) {
+                    cartesPossibles.add(c.name());
                 }
             }
-        } //Ferry
-        else if (route instanceof Ferry) {
-            Ferry f = (Ferry) route;
-            int compteurLocomotives = 0;
-            ArrayList<CouleurWagon> copie = new ArrayList<>(this.cartesWagon);
-            System.out.println(copie);
-            int compteurRemove = 0;
-            for (int i = 0; i < copie.size(); i++) {
-                if (copie.get(i) == CouleurWagon.LOCOMOTIVE) {
-                    compteurLocomotives++;
-                    if (compteurLocomotives <= f.getNbLocomotives()) {
-                        this.cartesWagon.remove(i - compteurRemove);
-                        compteurRemove++;
-                        cartesADefausser.add(CouleurWagon.LOCOMOTIVE);
-                    }
-                }
+            List<String> boutons = new ArrayList<>();
+            if (posees.isEmpty() && paiementAutomatique != null) {
+                boutons.add(PAIEMENT_AUTOMATIQUE);
             }
-
-            if (compteurLocomotives < f.getNbLocomotives()) {
-                fini = false;
-            } else if (f.getLongueur() > compteurLocomotives) {
-                couleur = "null";
-                while (compteurCartes + compteurRemove < route.getLongueur()) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    String choix = this.choisir(
-                            "Choisissez un wagon :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            true);
-                    if (choix.equals(CouleurWagon.LOCOMOTIVE.name())) {
-                        cartesADefausser.add(CouleurWagon.LOCOMOTIVE);
-                        this.cartesWagon.remove(CouleurWagon.LOCOMOTIVE);
-                        compteurCartes++;
-                    } else if (Collections.frequency(this.cartesWagon, CouleurWagon.valueOf(choix)) + compteurCartes + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) + compteurLocomotives >= f.getLongueur() && couleur.equals("null")) {
-                        couleur = choix;
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    } else if (choix.equals(couleur)) {
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    }
+            String choix = choisir(instruction, cartesPossibles, boutons, peutPasser, entree -> {
+                List<CouleurWagon> cartes = Paiement.lireCartes(entree);
+                if (cartes == null || !Paiement.estInclus(cartes, cartesWagon)) {
+                    return false;
                 }
-            }
-            //Si fini = false → tu remets les cartes dans cartes défausser dans la main sinon tu les défausses
-        } else { //Route normal
-            if (route.getCouleur() == CouleurWagon.GRIS) { //Route normal grise
-                couleur = "null";
-                while (compteurCartes < route.getLongueur()) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    String choix = this.choisir(
-                            "Choisissez un wagon :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            true);
-                    if (choix.equals(CouleurWagon.LOCOMOTIVE.name())) {
-                        cartesADefausser.add(CouleurWagon.LOCOMOTIVE);
-                        this.cartesWagon.remove(CouleurWagon.LOCOMOTIVE);
-                        compteurCartes++;
-                    } else if (Collections.frequency(this.cartesWagon, CouleurWagon.valueOf(choix)) + compteurCartes + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) >= route.getLongueur() && couleur.equals("null")) {
-                        couleur = choix;
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    } else if (choix.equals(couleur)) {
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    }
+                List<CouleurWagon> total = new ArrayList<>(posees);
+                total.addAll(cartes);
+                return paiement.estValide(total);
+            });
+            if (choix.equals("")) {
+                for (CouleurWagon c : new ArrayList<>(posees)) {
+                    ajouterCarteWagon(c);
                 }
+                posees.clear();
+                return false;
             }
-            //Route normale de couleur
-            else {
-                String choix;
-                while (compteurCartes < route.getLongueur() && fini) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    choix = this.choisir(
-                            "Choisissez les wagons à retirer :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            true);
-                    if (choix.equals("")) {
-                        // le joueur a choisi une route
-                        fini = false;
-                        log("Aucune route n'a été choisie");
-                    } else if (choix.equals(route.getCouleur().name()) || choix.equals(CouleurWagon.LOCOMOTIVE.name())) {
-                        cartesADefausser.add(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurCartes++;
-                    }
-                }
+            if (choix.equals(PAIEMENT_AUTOMATIQUE)) {
+                choix = SolveurPaiement.enMessage(paiementAutomatique);
             }
-        }
-        if (!fini) {
-            this.cartesWagon.addAll(cartesADefausser);
-        } else {
-            this.score += scoring.get(route.getLongueur());
-            this.nbWagons -= route.getLongueur();
-            route.setProprietaire(this);
-            for (CouleurWagon couleurWagon : cartesADefausser) {
-                jeu.defausserCarteWagon(couleurWagon);
+            for (CouleurWagon c : Paiement.lireCartes(choix)) {
+                retirerCarteWagon(c);
+                posees.add(c);
             }
         }
-        log(this.nom + " a poser une route entre "+route.getVille1()+" et "+route.getVille2());
+        return true;
+    }
 
+    /**
+     * Renvoie une copie de la main du joueur sans une carte de la couleur donnée
+     */
+    private List<CouleurWagon> sansCarte(CouleurWagon c) {
+        List<CouleurWagon> main = new ArrayList<>(cartesWagon);
+        main.remove(c);
+        return main;
     }
 
-    public void poserGare(Ville ville) {
-        int nbloc = Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE);
+    /**
+     * Remet la main du joueur dans l'état où elle était avant un paiement
+     * abandonné (les cartes posées y retournent)
+     *
+     * @param avant l'état du joueur avant le paiement
+     */
+    private void reprendreCartesPosees(EtatPartie.EtatJoueur avant) {
+        cartesWagonPosees.clear();
+        avant.restaurer(this);
+    }
 
-            if (this.nbGares == 3 && this.cartesWagon.size() >= 1) {
-                log(this.nom + " veut poser une gare sur " + ville.getNom());
-                List<String> listeCartesWagon = new ArrayList<>();
-                for (CouleurWagon elt : this.cartesWagon) {
-                    listeCartesWagon.add(elt.name());
-                }
-                String choix = this.choisir(
-                        "Choisissez une carte wagon à retirer :",
-                        listeCartesWagon,
-                        new ArrayList<>(),
-                        false);
-                jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                ville.setProprietaire(this);
-                this.nbGares--;
-                this.score-=4;
-            } else if (this.nbGares == 2 && this.cartesWagon.size() >= 2) {
-
-                log(this.nom + " veut poser une gare sur " + ville.getNom());
-                int compteurChoix = 0;
-                String couleurType = "null";
-                while (compteurChoix < 2) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    String choix = this.choisir(
-                            "Choisissez une carte wagon à retirer :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            false);
-
-                    if (choix.equals("LOCOMOTIVE")) {
-                        jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurChoix++;
-                    } else if (couleurType.equals("null") && Collections.frequency(this.cartesWagon, CouleurWagon.valueOf(choix)) + nbloc > 1) {
-                        couleurType = choix;
-                        jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurChoix++;
-                    } else if (choix.equals(couleurType)) {
-                        jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurChoix++;
-                    }
-                }
-                ville.setProprietaire(this);
-                this.nbGares--;
-                this.score-=4;
+    /**
+     * Remet le joueur dans un état enregistré (voir {@code EtatPartie})
+     */
+    void restaurer(int nbWagons, int nbGares, int score, int[] cartesWagon, List<Destination> destinations) {
+        this.nbWagons = nbWagons;
+        this.nbGares = nbGares;
+        this.score = score;
+        Jeu.remplir(this.cartesWagon, cartesWagon);
+        this.destinations.clear();
+        this.destinations.addAll(destinations);
+    }
 
-            } else if (this.nbGares == 1 && this.cartesWagon.size() >= 3) {
+    /**
+     * Défausse les cartes posées pour un paiement effectué
+     */
+    private void defausserCartesPosees() {
+        for (CouleurWagon c : cartesWagonPosees) {
+            jeu.defausserCarteWagon(c);
+        }
+        cartesWagonPosees.clear();
+    }
 
+    public void poserWagon(Route route) {
+        log(this.nom + " souhaite poser une route.");
+        EtatPartie.EtatJoueur avant = new EtatPartie.EtatJoueur(this);
+        if (!payer("Choisissez les cartes wagon pour capturer la route :", Paiement.pourRoute(route), true)) {
+            log("Aucune route n'a été choisie");
+            return;
+        }
 
-                log(this.nom + " veut poser une gare sur " + ville.getNom());
-                int compteurChoix = 0;
-                String couleurType = "null";
-                while (compteurChoix < 3) {
-                    List<String> listeCartesWagon = new ArrayList<>();
-                    for (CouleurWagon elt : this.cartesWagon) {
-                        listeCartesWagon.add(elt.name());
-                    }
-                    String choix = this.choisir(
-                            "Choisissez une carte wagon à retirer :",
-                            listeCartesWagon,
-                            new ArrayList<>(),
-                            false);
-
-                    if (choix.equals("LOCOMOTIVE")) {
-                        jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurChoix++;
-                    } else if (couleurType.equals("null") && Collections.frequency(this.cartesWagon, CouleurWagon.valueOf(choix)) + nbloc > 2) {
-                        couleurType = choix;
-                        jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurChoix++;
-                    } else if (choix.equals(couleurType)) {
-                        jeu.defausserCarteWagon(CouleurWagon.valueOf(choix));
-                        this.cartesWagon.remove(CouleurWagon.valueOf(choix));
-                        compteurChoix++;
-                    }
+        //Tunnel : on révèle 3 cartes et le joueur doit payer une carte de plus pour chaque carte correspondante
+        if (route instanceof Tunnel) {
+            CouleurWagon couleur = Paiement.couleurUtilisee(cartesWagonPosees);
+            ArrayList<CouleurWagon> cartesRevelees = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                CouleurWagon carte = jeu.piocherCarteWagon();
+                if (carte != null) {
+                    cartesRevelees.add(carte);
+                }
+            }
+            for (CouleurWagon carte : cartesRevelees) {
+                jeu.defausserCarteWagon(carte);
+            }
+            int surcout = Paiement.calculerSurcout(couleur, cartesRevelees);
+            log("Les cartes révélées sont : " + CouleurWagon.listToLog(cartesRevelees));
+            if (surcout > 0) {
+                Paiement supplement = Paiement.pourSurcoutTunnel(couleur, surcout);
+                if (!supplement.peutCompleter(new ArrayList<>(), cartesWagon)
+                        || !payer(String.format("Retirez %d cartes supplémentaires :", surcout), supplement, true)) {
+                    enregistrerCoup(JournalCoups.TypeCoup.TUNNEL_ABANDONNE, jeu.getRoutes().indexOf(route),
+                            cartesWagonPosees.size(), cartesWagonPosees.compter(CouleurWagon.LOCOMOTIVE));
+                    reprendreCartesPosees(avant);
+                    jeu.publierInstantane();
+                    log(this.nom + " renonce au tunnel " + route.toLog());
+                    return;
                 }
-                ville.setProprietaire(this);
-                this.nbGares--;
-                this.score-=4;
             }
+        }
 
-            log(this.nom+" a poser une gare sur "+ville.getNom());
+        this.score += route.getPoints();
+        this.nbWagons -= route.getLongueur();
+        route.setProprietaire(this);
+        enregistrerCoup(JournalCoups.TypeCoup.ROUTE, jeu.getRoutes().indexOf(route), cartesWagonPosees.size(),
+                cartesWagonPosees.compter(CouleurWagon.LOCOMOTIVE));
+        defausserCartesPosees();
+        jeu.publierInstantane();
+        log(this.nom + " a poser une route entre "+route.getVille1()+" et "+route.getVille2());
+    }
+
+    public void poserGare(Ville ville) {
+        log(this.nom + " veut poser une gare sur " + ville.getNom());
+        if (!payer("Choisissez les cartes wagon pour construire la gare :", Paiement.pourGare(this.nbGares), false)) {
+            return;
+        }
+        enregistrerCoup(JournalCoups.TypeCoup.GARE, jeu.getVilles().indexOf(ville), cartesWagonPosees.size(),
+                cartesWagonPosees.compter(CouleurWagon.LOCOMOTIVE));
+        defausserCartesPosees();
+        ville.setProprietaire(this);
+        this.nbGares--;
+        this.score -= 4;
+        jeu.publierInstantane();
+        log(this.nom+" a poser une gare sur "+ville.getNom());
     }
 
 
@@ -652,7 +662,8 @@ public class Joueur {
      * de cartes wagon pour construire la gare) ;
      * - le nom d'une route que le joueur peut capturer (pas déjà capturée, assez de
      * wagons et assez de cartes wagon) ;
-     * - la chaîne de caractères vide pour passer son tour
+     * - la chaîne de caractères vide pour passer son tour ;
+     * - {@code Jeu.ANNULER} pour annuler le tour précédent, si la partie le permet
      * <p>
      * Lorsqu'un choix valide est reçu, l'action est exécutée (il est possible que
      * l'action nécessite d'autres choix de la part de l'utilisateur, comme "choisir
@@ -664,22 +675,12 @@ public class Joueur {
 
         ArrayList<String> listeChoix = new ArrayList<>();
 
+        SolveurPaiement solveur = new SolveurPaiement(getCompteursCartesWagon());
+
         //Liste des villes disponibles
-        boolean couleurNecessaireGare = false;
-        int i = 0;
-        int nbloc = Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE);
-        while (!couleurNecessaireGare && i < CouleurWagon.getCouleursSimples().size()) {
-            if (Collections.frequency(this.cartesWagon, CouleurWagon.getCouleursSimples().get(i)) + nbloc > 3 - this.nbGares) {
-                couleurNecessaireGare = true;
-            }
-            i++;
-        }
-        if (this.nbGares == 0) {
-            couleurNecessaireGare = false;
-        }
         ArrayList<Ville> villes = new ArrayList<>(jeu.getVilles());
         ArrayList<String> villesString = new ArrayList<>();
-        if (couleurNecessaireGare) {
+        if (this.nbGares > 0 && solveur.peutPayer(Paiement.pourGare(this.nbGares))) {
             for (Ville ville : villes) {
                 if (ville.getProprietaire() == null)
                     villesString.add(ville.getNom());
@@ -691,41 +692,8 @@ public class Joueur {
         //Liste des routes disponibles
         ArrayList<Route> routes = new ArrayList<>(jeu.getRoutes());
         ArrayList<String> routesString = new ArrayList<>();
-        boolean routeValide = false;
-        for (Route route : routes) {
-            if (route.getProprietaire() == null) {
-                if(route.getLongueur()<=this.nbWagons){
-                    if (!route.getCouleur().equals(CouleurWagon.GRIS)) {
-                        if (Collections.frequency(this.cartesWagon, route.getCouleur()) + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) >= route.getLongueur()) {
-                            routeValide = true;
-                        }
-                    } else {
-                        if (route instanceof Ferry) {
-                            if (Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) >= ((Ferry) route).getNbLocomotives()) {
-                                i = 0;
-                                while (!routeValide && i < CouleurWagon.getCouleursSimples().size()) {
-                                    if (Collections.frequency(this.cartesWagon, CouleurWagon.getCouleursSimples().get(i)) + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) >= route.getLongueur()) {
-                                        routeValide = true;
-                                    }
-                                    i++;
-                                }
-                            }
-                        } else {
-                            i = 0;
-                            while (!routeValide && i < CouleurWagon.getCouleursSimples().size()) {
-                                if (Collections.frequency(this.cartesWagon, CouleurWagon.getCouleursSimples().get(i)) + Collections.frequency(this.cartesWagon, CouleurWagon.LOCOMOTIVE) >= route.getLongueur()) {
-                                    routeValide = true;
-                                }
-                                i++;
-                            }
-                        }
-                    }
-                }
-            }
-            if (routeValide) {
-                routesString.add(route.getNom());
-                routeValide = false;
-            }
+        for (Route route : solveur.routesAbordables(routes, this.nbWagons)) {
+            routesString.add(route.getNom());
         }
 
         //Liste des cartes
@@ -746,17 +714,23 @@ public class Joueur {
             listeChoix.add("destinations");
         }
 
+        ArrayList<String> boutons = new ArrayList<>();
+        if (jeu.peutAnnuler()) {
+            boutons.add(Jeu.ANNULER);
+        }
+
         //Choix
         String choix = this.choisir(
                 "Quelle action voulez vous réaliser: ",
                 listeChoix,
-                new ArrayList<>(),
+                boutons,
                 true);
 
-        System.out.println(choix);
         //Test sur le choix
 
-        if (villesString.contains(choix)) {
+        if (choix.equals(Jeu.ANNULER) && boutons.contains(Jeu.ANNULER)) {
+            jeu.demanderAnnulation();
+        } else if (villesString.contains(choix)) {
             //Boucle et tu verifies sur quelle villes c'est egal
             for (Ville ville : villes) {
                 if (choix.equals(ville.getNom())) {
@@ -781,16 +755,29 @@ public class Joueur {
             }
         } else if (choix.equals("destinations")) {
             ArrayList<Destination> destinationsPossible = new ArrayList<>();
-            for (i = 0; i < 3; i++) {
+            for (int i = 0; i < 3; i++) {
                 if (!jeu.getPileDestinations().isEmpty()) {
                     destinationsPossible.add(this.jeu.piocherDestination());
                 }
             }
             log(this.nom + " souhaite piocher des destinations.");
+            int nbDestinations = this.destinations.size();
             this.jeu.getPileDestinations().addAll(this.choisirDestinations(destinationsPossible, 1));
+            enregistrerCoup(JournalCoups.TypeCoup.DESTINATIONS, this.destinations.size() - nbDestinations, 0, 0);
+            jeu.publierInstantane();
         }
     }
 
+    /**
+     * Ajoute un coup du joueur au journal de la partie. L'instantané de la partie
+     * n'est publié qu'une fois le coup entièrement joué (cartes défaussées, score
+     * et réserves à jour), par l'appelant.
+     */
+    private void enregistrerCoup(JournalCoups.TypeCoup type, int element, int nbCartes, int nbLocomotives) {
+        jeu.getJournal().enregistrer(jeu.getNbTours(), jeu.getJoueurs().indexOf(this), type, element, nbCartes,
+                nbLocomotives);
+    }
+
     public int getNbGares() {
         return nbGares;
     }
@@ -798,4 +785,12 @@ public class Joueur {
     public int getScore() {
         return this.score;
     }
+
+    /**
+     * Remplace le score du joueur (par son décompte final en fin de partie)
+     */
+    void setScore(int score) {
+        this.score = score;
+        jeu.signalerModification();
+    }
 }
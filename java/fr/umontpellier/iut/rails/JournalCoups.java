@@ -0,0 +1,101 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+
+/**
+ * Journal des coups joués pendant une partie, stocké par colonnes (un tableau de
+ * types primitifs par attribut) pour pouvoir être exporté sans conversion.
+ * <p>
+ * La signification de la colonne {@code element} dépend du type de coup :
+ * indice de la route ({@code ROUTE}, {@code TUNNEL_ABANDONNE}), indice de la ville
+ * ({@code GARE}), couleur de la carte ({@code CARTE_VISIBLE}) ou nombre de
+ * destinations gardées ({@code DESTINATIONS}). Les indices sont ceux des listes
+ * {@code Jeu.getRoutes()} et {@code Jeu.getVilles()}.
+ */
+public class JournalCoups {
+    public enum TypeCoup {
+        CARTE_VISIBLE, CARTE_CACHEE, DESTINATIONS, ROUTE, TUNNEL_ABANDONNE, GARE
+    }
+
+    private static final TypeCoup[] TYPES = TypeCoup.values();
+
+    private int nbCoups;
+    /**
+     * Numéro du tour pendant lequel le coup a été joué
+     */
+    private int[] tours = new int[64];
+    /**
+     * Indice du joueur qui a joué le coup
+     */
+    private byte[] joueurs = new byte[64];
+    private byte[] types = new byte[64];
+    private int[] elements = new int[64];
+    /**
+     * Nombre de cartes wagon payées (routes et gares)
+     */
+    private byte[] cartes = new byte[64];
+    /**
+     * Nombre de locomotives parmi les cartes payées
+     */
+    private byte[] locomotives = new byte[64];
+
+    /**
+     * Ajoute un coup au journal
+     */
+    public void enregistrer(int tour, int joueur, TypeCoup type, int element, int nbCartes, int nbLocomotives) {
+        if (nbCoups == tours.length) {
+            int capacite = 2 * nbCoups;
+            tours = Arrays.copyOf(tours, capacite);
+            joueurs = Arrays.copyOf(joueurs, capacite);
+            types = Arrays.copyOf(types, capacite);
+            elements = Arrays.copyOf(elements, capacite);
+            cartes = Arrays.copyOf(cartes, capacite);
+            locomotives = Arrays.copyOf(locomotives, capacite);
+        }
+        tours[nbCoups] = tour;
+        joueurs[nbCoups] = (byte) joueur;
+        types[nbCoups] = (byte) type.ordinal();
+        elements[nbCoups] = element;
+        cartes[nbCoups] = (byte) nbCartes;
+        locomotives[nbCoups] = (byte) nbLocomotives;
+        nbCoups++;
+    }
+
+    /**
+     * Oublie les coups joués après les {@code nbCoups} premiers (lorsqu'un tour
+     * est annulé)
+     */
+    public void tronquer(int nbCoups) {
+        if (nbCoups < this.nbCoups) {
+            this.nbCoups = nbCoups;
+        }
+    }
+
+    public int getNbCoups() {
+        return nbCoups;
+    }
+
+    public int getTour(int coup) {
+        return tours[coup];
+    }
+
+    public int getJoueur(int coup) {
+        return joueurs[coup];
+    }
+
+    public TypeCoup getType(int coup) {
+        return TYPES[types[coup]];
+    }
+
+    public int getElement(int coup) {
+        return elements[coup];
+    }
+
+    public int getNbCartes(int coup) {
+        return cartes[coup];
+    }
+
+    public int getNbLocomotives(int coup) {
+        return locomotives[coup];
+    }
+}
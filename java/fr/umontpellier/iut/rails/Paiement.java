@@ -0,0 +1,220 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Règle de paiement en cartes wagon : capture d'une route (y compris ferry et
+ * tunnel), surcoût d'un tunnel ou construction d'une gare.
+ * <p>
+ * Un paiement est un ensemble de {@code nbCartes} cartes dont toutes les cartes
+ * qui ne sont pas des locomotives sont de la même couleur. Cette couleur peut
+ * être imposée (route de couleur, surcoût d'un tunnel) et un nombre minimum de
+ * locomotives peut être exigé (ferry).
+ */
+public class Paiement {
+    /**
+     * Séparateur des cartes dans un paiement envoyé en un seul message (par exemple
+     * {@code "ROUGE,ROUGE,LOCOMOTIVE"})
+     */
+    public static final String SEPARATEUR = ",";
+
+    /**
+     * Nombre de cartes à payer
+     */
+    private final int nbCartes;
+    /**
+     * Couleur imposée pour les cartes qui ne sont pas des locomotives ({@code null}
+     * si n'importe quelle couleur convient, {@code LOCOMOTIVE} si seules des
+     * locomotives sont acceptées)
+     */
+    private final CouleurWagon couleurImposee;
+    /**
+     * Nombre minimum de locomotives
+     */
+    private final int nbLocomotivesMin;
+
+    public Paiement(int nbCartes, CouleurWagon couleurImposee, int nbLocomotivesMin) {
+        this.nbCartes = nbCartes;
+        this.couleurImposee = couleurImposee;
+        this.nbLocomotivesMin = nbLocomotivesMin;
+    }
+
+    /**
+     * Paiement nécessaire pour capturer une route (sans le surcoût éventuel d'un tunnel)
+     */
+    public static Paiement pourRoute(Route route) {
+        CouleurWagon couleur = route.getCouleur() == CouleurWagon.GRIS ? null : route.getCouleur();
+        int nbLocomotives = route instanceof Ferry ? ((Ferry) route).getNbLocomotives() : 0;
+        return new Paiement(route.getLongueur(), couleur, nbLocomotives);
+    }
+
+    /**
+     * Paiement du surcoût d'un tunnel
+     *
+     * @param couleurUtilisee la couleur utilisée pour payer le tunnel ({@code null} si
+     *                        le tunnel a été payé uniquement avec des locomotives)
+     * @param surcout         le nombre de cartes supplémentaires à payer
+     */
+    public static Paiement pourSurcoutTunnel(CouleurWagon couleurUtilisee, int surcout) {
+        return new Paiement(surcout, couleurUtilisee == null ? CouleurWagon.LOCOMOTIVE : couleurUtilisee, 0);
+    }
+
+    /**
+     * Paiement nécessaire pour construire une gare
+     *
+     * @param nbGares le nombre de gares qu'il reste au joueur (la première gare coûte
+     *                1 carte, la deuxième 2 et la troisième 3)
+     */
+    public static Paiement pourGare(int nbGares) {
+        return new Paiement(4 - nbGares, null, 0);
+    }
+
+    public int getNbCartes() {
+        return nbCartes;
+    }
+
+    public CouleurWagon getCouleurImposee() {
+        return couleurImposee;
+    }
+
+    public int getNbLocomotivesMin() {
+        return nbLocomotivesMin;
+    }
+
+    /**
+     * Indique si un ensemble de cartes est un paiement complet et valide
+     */
+    public boolean estValide(List<CouleurWagon> cartes) {
+        return cartes.size() == nbCartes && peutCompleter(cartes, cartes);
+    }
+
+    /**
+     * Indique si des cartes déjà posées peuvent être complétées en un paiement
+     * valide avec les cartes d'une main
+     *
+     * @param posees les cartes déjà posées pour ce paiement
+     * @param main   les cartes encore disponibles (si {@code posees} et {@code main}
+     *               sont la même liste, seul le paiement lui-même est vérifié)
+     */
+    public boolean peutCompleter(List<CouleurWagon> posees, List<CouleurWagon> main) {
+        if (posees.size() > nbCartes) {
+            return false;
+        }
+        CouleurWagon couleur = couleurImposee;
+        int locomotivesPosees = 0;
+        for (CouleurWagon c : posees) {
+            if (c == CouleurWagon.LOCOMOTIVE) {
+                locomotivesPosees++;
+            } else if (c == CouleurWagon.GRIS || (couleur != null && c != couleur)) {
+                return false;
+            } else {
+                couleur = c;
+            }
+        }
+        if (posees == main) {
+            return locomotivesPosees >= nbLocomotivesMin;
+        }
+
+        int[] compteurs = compter(main);
+        int reste = nbCartes - posees.size();
+        int locomotives = compteurs[CouleurWagon.LOCOMOTIVE.ordinal()];
+        int locomotivesManquantes = Math.max(0, nbLocomotivesMin - locomotivesPosees);
+        if (locomotives < locomotivesManquantes || locomotivesManquantes > reste) {
+            return false;
+        }
+        if (couleur == null) {
+            // la couleur n'est pas encore choisie : on prend la plus abondante
+            int max = 0;
+            for (CouleurWagon c : CouleurWagon.getCouleursSimples()) {
+                max = Math.max(max, compteurs[c.ordinal()]);
+            }
+            return max + locomotives >= reste;
+        }
+        int autres = couleur == CouleurWagon.LOCOMOTIVE ? 0 : compteurs[couleur.ordinal()];
+        return autres + locomotives >= reste;
+    }
+
+    /**
+     * Renvoie la couleur (autre que locomotive) utilisée dans un paiement, ou
+     * {@code null} s'il n'est composé que de locomotives
+     */
+    public static CouleurWagon couleurUtilisee(List<CouleurWagon> cartes) {
+        for (CouleurWagon c : cartes) {
+            if (c != CouleurWagon.LOCOMOTIVE) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calcule le surcoût d'un tunnel : chaque carte révélée qui est une locomotive
+     * ou de la couleur utilisée pour payer le tunnel coûte une carte de plus.
+     *
+     * @param couleurUtilisee la couleur utilisée pour payer ({@code null} si le
+     *                        tunnel a été payé uniquement avec des locomotives)
+     * @param revelees        les cartes révélées
+     */
+    public static int calculerSurcout(CouleurWagon couleurUtilisee, List<CouleurWagon> revelees) {
+        int surcout = 0;
+        for (CouleurWagon c : revelees) {
+            if (c == CouleurWagon.LOCOMOTIVE || (c != null && c == couleurUtilisee)) {
+                surcout++;
+            }
+        }
+        return surcout;
+    }
+
+    /**
+     * Lit un paiement envoyé en un seul message (noms de cartes séparés par
+     * {@code SEPARATEUR})
+     *
+     * @return la liste des cartes, ou {@code null} si le message n'est pas une liste
+     * de noms de cartes
+     */
+    public static List<CouleurWagon> lireCartes(String message) {
+        if (message == null || message.isEmpty()) {
+            return null;
+        }
+        List<CouleurWagon> cartes = new ArrayList<>();
+        for (String nom : message.split(SEPARATEUR)) {
+            try {
+                cartes.add(CouleurWagon.valueOf(nom.trim()));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return cartes;
+    }
+
+    /**
+     * Indique si toutes les cartes de {@code cartes} sont présentes dans {@code main}
+     * (en tenant compte des répétitions)
+     */
+    public static boolean estInclus(List<CouleurWagon> cartes, List<CouleurWagon> main) {
+        int[] disponibles = compter(main);
+        for (CouleurWagon c : cartes) {
+            if (--disponibles[c.ordinal()] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compte le nombre de cartes de chaque couleur d'une liste (indexé par
+     * {@code CouleurWagon.ordinal()}). Pour un {@code PaquetCartesWagon}, les
+     * compteurs tenus à jour par le paquet sont utilisés directement.
+     */
+    public static int[] compter(List<CouleurWagon> cartes) {
+        if (cartes instanceof PaquetCartesWagon) {
+            return ((PaquetCartesWagon) cartes).getCompteurs();
+        }
+        int[] compteurs = new int[CouleurWagon.values().length];
+        for (CouleurWagon c : cartes) {
+            compteurs[c.ordinal()]++;
+        }
+        return compteurs;
+    }
+}
@@ -0,0 +1,125 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Liste de cartes wagon (pioche, défausse, cartes visibles ou main d'un joueur)
+ * qui tient à jour le nombre de cartes de chaque couleur.
+ * <p>
+ * Toutes les modifications de la liste (y compris par un itérateur, une
+ * sous-liste ou {@code Collections.shuffle}) passent par {@code add}, {@code set}
+ * et {@code remove}, qui mettent à jour les compteurs en temps constant : le
+ * nombre de cartes d'une couleur s'obtient donc sans parcourir la liste.
+ */
+public class PaquetCartesWagon extends AbstractList<CouleurWagon> implements RandomAccess {
+    /**
+     * Cartes du paquet
+     */
+    private final ArrayList<CouleurWagon> cartes = new ArrayList<>();
+    /**
+     * Nombre de cartes de chaque couleur (indexé par {@code CouleurWagon.ordinal()})
+     */
+    private final int[] compteurs = new int[CouleurWagon.values().length];
+
+    public PaquetCartesWagon() {
+    }
+
+    public PaquetCartesWagon(Collection<CouleurWagon> cartes) {
+        addAll(cartes);
+    }
+
+    @Override
+    public CouleurWagon get(int index) {
+        return cartes.get(index);
+    }
+
+    @Override
+    public int size() {
+        return cartes.size();
+    }
+
+    @Override
+    public CouleurWagon set(int index, CouleurWagon c) {
+        CouleurWagon ancienne = cartes.set(index, c);
+        compteurs[ancienne.ordinal()]--;
+        compteurs[c.ordinal()]++;
+        return ancienne;
+    }
+
+    @Override
+    public void add(int index, CouleurWagon c) {
+        cartes.add(index, c);
+        compteurs[c.ordinal()]++;
+        modCount++;
+    }
+
+    @Override
+    public CouleurWagon remove(int index) {
+        CouleurWagon c = cartes.remove(index);
+        compteurs[c.ordinal()]--;
+        modCount++;
+        return c;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof CouleurWagon) || compteurs[((CouleurWagon) o).ordinal()] == 0) {
+            return false;
+        }
+        return super.remove(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof CouleurWagon && compteurs[((CouleurWagon) o).ordinal()] > 0;
+    }
+
+    @Override
+    public void clear() {
+        cartes.clear();
+        Arrays.fill(compteurs, 0);
+        modCount++;
+    }
+
+    /**
+     * Retire et renvoie une carte choisie uniformément au hasard parmi les cartes du
+     * paquet (en temps constant : la carte choisie est remplacée par la dernière
+     * carte du paquet). Piocher ainsi dans un paquet non mélangé revient à piocher
+     * la première carte du paquet après l'avoir mélangé, sans avoir à le mélanger.
+     *
+     * @return la carte piochée, ou {@code null} si le paquet est vide
+     */
+    public CouleurWagon piocher(Random aleatoire) {
+        if (cartes.isEmpty()) {
+            return null;
+        }
+        int derniere = cartes.size() - 1;
+        int indice = aleatoire.nextInt(cartes.size());
+        CouleurWagon c = cartes.get(indice);
+        cartes.set(indice, cartes.get(derniere));
+        cartes.remove(derniere);
+        compteurs[c.ordinal()]--;
+        modCount++;
+        return c;
+    }
+
+    /**
+     * Renvoie le nombre de cartes d'une couleur (en temps constant)
+     */
+    public int compter(CouleurWagon c) {
+        return compteurs[c.ordinal()];
+    }
+
+    /**
+     * Renvoie une copie du nombre de cartes de chaque couleur (indexé par
+     * {@code CouleurWagon.ordinal()})
+     */
+    public int[] getCompteurs() {
+        return compteurs.clone();
+    }
+}
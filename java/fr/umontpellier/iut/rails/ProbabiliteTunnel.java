@@ -0,0 +1,226 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Calcule la loi exacte du surcoût d'un tunnel.
+ * <p>
+ * Lors de la capture d'un tunnel, 3 cartes sont piochées : chacune qui est une
+ * locomotive ou de la couleur utilisée pour payer coûte une carte de plus. Si la
+ * pioche contient moins de 3 cartes, elle est entièrement révélée puis la
+ * défausse est mélangée pour piocher les cartes manquantes. Le surcoût suit donc
+ * une loi hypergéométrique (ou la somme d'une partie connue et d'une loi
+ * hypergéométrique sur la défausse).
+ * <p>
+ * Une instance ne contient que le nombre de cartes de chaque couleur de la pioche
+ * (ou des cartes inconnues du joueur, parmi lesquelles se trouve la pioche) et de
+ * la défausse (lus dans les compteurs tenus à jour par {@code Jeu}) : le
+ * calcul pour un tunnel se fait en temps constant, si bien que tous les tunnels
+ * du plateau peuvent être annotés à chaque tour.
+ */
+public class ProbabiliteTunnel {
+    /**
+     * Nombre de cartes révélées lors de la capture d'un tunnel
+     */
+    public static final int NB_CARTES_REVELEES = 3;
+
+    private static final int LOCOMOTIVE = CouleurWagon.LOCOMOTIVE.ordinal();
+
+    /**
+     * Nombre de cartes de chaque couleur parmi lesquelles la pioche est tirée (la
+     * pioche elle-même, ou toutes les cartes inconnues du joueur)
+     */
+    private final int[] pioche;
+    /**
+     * Nombre total de cartes dans {@code pioche}
+     */
+    private final int nbPioche;
+    /**
+     * Nombre de cartes réellement dans la pioche (les suivantes sont tirées dans la
+     * défausse mélangée)
+     */
+    private final int taillePioche;
+    /**
+     * Nombre de cartes de chaque couleur dans la défausse
+     */
+    private final int[] defausse;
+    /**
+     * Nombre total de cartes dans la défausse
+     */
+    private final int nbDefausse;
+
+    /**
+     * @param pioche   nombre de cartes de chaque couleur dans la pioche (indexé par
+     *                 {@code CouleurWagon.ordinal()})
+     * @param defausse nombre de cartes de chaque couleur dans la défausse
+     */
+    public ProbabiliteTunnel(int[] pioche, int[] defausse) {
+        this(pioche, defausse, somme(pioche));
+    }
+
+    /**
+     * @param inconnues    nombre de cartes de chaque couleur que le joueur ne voit
+     *                     pas (la pioche en est un tirage uniforme)
+     * @param defausse     nombre de cartes de chaque couleur dans la défausse
+     * @param taillePioche nombre de cartes réellement dans la pioche
+     */
+    public ProbabiliteTunnel(int[] inconnues, int[] defausse, int taillePioche) {
+        this.pioche = inconnues;
+        this.defausse = defausse;
+        nbPioche = somme(inconnues);
+        nbDefausse = somme(defausse);
+        this.taillePioche = Math.min(taillePioche, nbPioche);
+    }
+
+    /**
+     * Loi du surcoût calculée à partir du contenu réel de la pioche et de la
+     * défausse (à utiliser côté serveur ou pour un joueur qui connaît tout)
+     */
+    public static ProbabiliteTunnel depuis(Jeu jeu) {
+        return new ProbabiliteTunnel(jeu.getCompteursPioche(), jeu.getCompteursDefausse());
+    }
+
+    /**
+     * Loi du surcoût telle que peut la calculer un joueur, qui ne connaît pas la
+     * pioche mais seulement l'ensemble des cartes qu'il ne voit pas (pioche et
+     * mains des adversaires). Les cartes révélées dans la pioche sont un tirage
+     * uniforme parmi ces cartes inconnues ; si la pioche contient moins de 3
+     * cartes, les suivantes sont tirées dans la défausse, qui est connue. La loi
+     * obtenue est exacte dans les deux cas.
+     */
+    public static ProbabiliteTunnel pourJoueur(Jeu jeu, Joueur joueur) {
+        int[] inconnues = jeu.getCompteursPioche();
+        for (Joueur autre : jeu.getJoueurs()) {
+            if (autre != joueur) {
+                int[] main = autre.getCompteursCartesWagon();
+                for (int i = 0; i < inconnues.length; i++) {
+                    inconnues[i] += main[i];
+                }
+            }
+        }
+        return new ProbabiliteTunnel(inconnues, jeu.getCompteursDefausse(), jeu.getPileCartesWagon().size());
+    }
+
+    /**
+     * Renvoie la loi du surcoût pour un tunnel payé avec une couleur donnée
+     *
+     * @param couleurUtilisee la couleur utilisée pour payer ({@code null} si le
+     *                        tunnel est payé uniquement avec des locomotives)
+     * @return un tableau p tel que p[k] est la probabilité d'un surcoût de k cartes
+     * (0 ≤ k ≤ 3)
+     */
+    public double[] distributionSurcout(CouleurWagon couleurUtilisee) {
+        double[] distribution = new double[NB_CARTES_REVELEES + 1];
+        int correspondantesPioche = correspondantes(pioche, couleurUtilisee);
+        if (taillePioche >= NB_CARTES_REVELEES) {
+            for (int k = 0; k <= NB_CARTES_REVELEES; k++) {
+                distribution[k] = hypergeometrique(nbPioche, correspondantesPioche, NB_CARTES_REVELEES, k);
+            }
+        } else {
+            // toute la pioche est révélée, le reste est pioché dans la défausse mélangée
+            int tirages = Math.min(NB_CARTES_REVELEES - taillePioche, nbDefausse);
+            int correspondantesDefausse = correspondantes(defausse, couleurUtilisee);
+            for (int i = 0; i <= taillePioche; i++) {
+                double p = hypergeometrique(nbPioche, correspondantesPioche, taillePioche, i);
+                if (p == 0) {
+                    continue;
+                }
+                for (int k = 0; k <= tirages; k++) {
+                    distribution[i + k] += p * hypergeometrique(nbDefausse, correspondantesDefausse, tirages, k);
+                }
+            }
+        }
+        return distribution;
+    }
+
+    /**
+     * Renvoie la probabilité que le joueur puisse payer le surcoût du tunnel
+     *
+     * @param couleurUtilisee    la couleur utilisée pour payer le tunnel
+     * @param cartesDisponibles  nombre de cartes de cette couleur et de locomotives
+     *                           qu'il restera au joueur une fois le tunnel payé
+     */
+    public double probabiliteCouverture(CouleurWagon couleurUtilisee, int cartesDisponibles) {
+        double[] distribution = distributionSurcout(couleurUtilisee);
+        double probabilite = 0;
+        for (int k = 0; k <= Math.min(cartesDisponibles, NB_CARTES_REVELEES); k++) {
+            probabilite += distribution[k];
+        }
+        return probabilite;
+    }
+
+    /**
+     * Annote les tunnels libres qu'un joueur peut payer : pour chacun, la
+     * probabilité de n'avoir aucun surcoût et la probabilité de pouvoir payer le
+     * surcoût (en supposant que le joueur paie le tunnel avec le paiement choisi
+     * par {@code SolveurPaiement}).
+     *
+     * @param routes les routes du plateau
+     * @param main   la main du joueur
+     * @return une liste d'objets simples (POJO) décrivant chaque tunnel annoté
+     */
+    public List<Object> annoterTunnels(List<Route> routes, List<CouleurWagon> main) {
+        int[] compteurs = Paiement.compter(main);
+        SolveurPaiement solveur = new SolveurPaiement(compteurs);
+        List<Object> annotations = new ArrayList<>();
+        for (Route route : routes) {
+            if (!(route instanceof Tunnel) || route.getProprietaire() != null) {
+                continue;
+            }
+            List<CouleurWagon> paiement = solveur.meilleurPaiement(Paiement.pourRoute(route));
+            if (paiement == null) {
+                continue;
+            }
+            CouleurWagon couleur = Paiement.couleurUtilisee(paiement);
+            int disponibles = compteurs[LOCOMOTIVE] + (couleur == null ? 0 : compteurs[couleur.ordinal()])
+                    - paiement.size();
+            HashMap<String, Object> data = new HashMap<>();
+            data.put("nom", route.getNom());
+            data.put("probaSansSurcout", distributionSurcout(couleur)[0]);
+            data.put("probaCouverture", probabiliteCouverture(couleur, disponibles));
+            annotations.add(data);
+        }
+        return annotations;
+    }
+
+    /**
+     * Nombre de cartes qui provoquent un surcoût (locomotives et cartes de la
+     * couleur utilisée)
+     */
+    private static int correspondantes(int[] compteurs, CouleurWagon couleurUtilisee) {
+        int n = compteurs[LOCOMOTIVE];
+        if (couleurUtilisee != null && couleurUtilisee != CouleurWagon.LOCOMOTIVE) {
+            n += compteurs[couleurUtilisee.ordinal()];
+        }
+        return n;
+    }
+
+    /**
+     * Probabilité d'obtenir exactement k cartes "gagnantes" en tirant n cartes sans
+     * remise parmi total cartes dont gagnantes sont gagnantes
+     */
+    private static double hypergeometrique(int total, int gagnantes, int n, int k) {
+        if (k > gagnantes || n - k > total - gagnantes || k < 0) {
+            return 0;
+        }
+        return combinaisons(gagnantes, k) * combinaisons(total - gagnantes, n - k) / combinaisons(total, n);
+    }
+
+    private static double combinaisons(int n, int k) {
+        double resultat = 1;
+        for (int i = 0; i < k; i++) {
+            resultat = resultat * (n - i) / (i + 1);
+        }
+        return resultat;
+    }
+
+    private static int somme(int[] compteurs) {
+        int somme = 0;
+        for (int n : compteurs) {
+            somme += n;
+        }
+        return somme;
+    }
+}
@@ -72,6 +72,22 @@ public class Route {
         this.nom = nom;
     }
 
+    /**
+     * @return le nombre de points rapportés par la capture de la route
+     */
+    public int getPoints() {
+        return switch (longueur) {
+            case 1 -> 1;
+            case 2 -> 2;
+            case 3 -> 4;
+            case 4 -> 7;
+            case 5 -> 10;
+            case 6 -> 15;
+            case 7 -> 18;
+            default -> 21;
+        };
+    }
+
     public String toLog() {
         return String.format("<span class=\"route\">%s - %s</span>", ville1.getNom(), ville2.getNom());
     }
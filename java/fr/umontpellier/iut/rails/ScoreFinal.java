@@ -0,0 +1,352 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Décompte final des points d'un joueur, détaillé par catégorie :
+ * <ul>
+ * <li>les points des routes capturées ;</li>
+ * <li>les destinations réalisées (la valeur est ajoutée) et non réalisées (la
+ * valeur est retirée). Chaque gare permet d'utiliser une route d'un adversaire
+ * qui part de sa ville, et la combinaison de routes la plus favorable est
+ * retenue ;</li>
+ * <li>4 points par gare non utilisée ;</li>
+ * <li>le bonus de 10 points pour le plus long chemin continu (attribué à tous
+ * les joueurs à égalité).</li>
+ * </ul>
+ * <p>
+ * Le décompte d'un joueur ne dépend que du plateau et de ses propres routes,
+ * gares et destinations : les décomptes de tous les joueurs sont donc calculés
+ * en parallèle, seul le bonus du plus long chemin étant attribué ensuite.
+ */
+public class ScoreFinal {
+    /**
+     * Points accordés pour chaque gare non utilisée
+     */
+    public static final int POINTS_PAR_GARE = 4;
+    /**
+     * Bonus accordé au(x) joueur(s) ayant le plus long chemin continu
+     */
+    public static final int BONUS_PLUS_LONG_CHEMIN = 10;
+
+    /**
+     * Joueur dont c'est le décompte ({@code null} dans une copie publiée, voir
+     * {@code publier})
+     */
+    private final Joueur joueur;
+    /**
+     * Siège (indice dans la liste des joueurs de la partie) et nom du joueur
+     */
+    private final int siege;
+    private final String nom;
+    private final int pointsRoutes;
+    private final int pointsGares;
+    private final List<Destination> destinationsReussies;
+    private final List<Destination> destinationsEchouees;
+    private final int pointsDestinations;
+    /**
+     * Longueur (en nombre de wagons) du plus long chemin continu du joueur
+     */
+    private final int plusLongChemin;
+    private boolean bonusPlusLongChemin;
+
+    private ScoreFinal(Joueur joueur, int siege, List<Destination> destinations, int[] proprietairesRoutes,
+                       int[] proprietairesVilles, EvaluateurDestinations plateau) {
+        this.joueur = joueur;
+        this.siege = siege;
+        nom = joueur.getNom();
+        destinationsReussies = new ArrayList<>();
+        destinationsEchouees = new ArrayList<>();
+        List<Route> routes = plateau.getRoutes();
+
+        int points = 0;
+        for (int r = 0; r < routes.size(); r++) {
+            if (proprietairesRoutes[r] == siege) {
+                points += routes.get(r).getPoints();
+            }
+        }
+        pointsRoutes = points;
+        pointsGares = POINTS_PAR_GARE * joueur.getNbGares();
+        pointsDestinations = evaluerDestinations(destinations, proprietairesRoutes, proprietairesVilles, plateau);
+        plusLongChemin = calculerPlusLongChemin(proprietairesRoutes, plateau);
+    }
+
+    private ScoreFinal(ScoreFinal score) {
+        joueur = null;
+        siege = score.siege;
+        nom = score.nom;
+        pointsRoutes = score.pointsRoutes;
+        pointsGares = score.pointsGares;
+        destinationsReussies = List.copyOf(score.destinationsReussies);
+        destinationsEchouees = List.copyOf(score.destinationsEchouees);
+        pointsDestinations = score.pointsDestinations;
+        plusLongChemin = score.plusLongChemin;
+        bonusPlusLongChemin = score.bonusPlusLongChemin;
+    }
+
+    /**
+     * Calcule en parallèle le décompte final de chaque joueur, puis attribue le
+     * bonus du plus long chemin
+     *
+     * @param joueurs les joueurs de la partie
+     * @param plateau le graphe du plateau
+     * @return les décomptes, dans l'ordre des joueurs
+     */
+    public static List<ScoreFinal> calculer(List<Joueur> joueurs, EvaluateurDestinations plateau) {
+        int[] proprietairesRoutes = plateau.encoderProprietairesRoutes(joueurs);
+        int[] proprietairesVilles = plateau.encoderProprietairesVilles(joueurs);
+        List<ScoreFinal> scores = IntStream.range(0, joueurs.size()).parallel()
+                .mapToObj(j -> new ScoreFinal(joueurs.get(j), j, joueurs.get(j).getDestinations(),
+                        proprietairesRoutes, proprietairesVilles, plateau))
+                .collect(Collectors.toList());
+        int max = 0;
+        for (ScoreFinal score : scores) {
+            max = Math.max(max, score.plusLongChemin);
+        }
+        for (ScoreFinal score : scores) {
+            score.bonusPlusLongChemin = max > 0 && score.plusLongChemin == max;
+        }
+        return scores;
+    }
+
+    /**
+     * Calcule le décompte d'un joueur comme si ses destinations et les
+     * propriétaires des routes et des villes étaient ceux donnés, sans attribuer
+     * le bonus du plus long chemin (qui dépend des autres joueurs). Sert à évaluer
+     * des positions hypothétiques sans modifier la partie (voir
+     * {@code SolveurFinDePartie}).
+     *
+     * @param proprietairesRoutes siège du propriétaire de chaque route, ou -1
+     *                            (voir {@code EvaluateurDestinations.encoderProprietairesRoutes})
+     * @param proprietairesVilles siège du propriétaire de chaque ville, ou -1
+     */
+    static ScoreFinal calculerSansBonus(Joueur joueur, int siege, List<Destination> destinations,
+                                        int[] proprietairesRoutes, int[] proprietairesVilles,
+                                        EvaluateurDestinations plateau) {
+        return new ScoreFinal(joueur, siege, destinations, proprietairesRoutes, proprietairesVilles, plateau);
+    }
+
+    /**
+     * Renvoie une copie immuable du décompte, sans référence au joueur, qui peut
+     * être publiée aux autres threads (voir {@code InstantanePartie})
+     */
+    ScoreFinal publier() {
+        return new ScoreFinal(this);
+    }
+
+    /**
+     * @return le joueur, ou {@code null} pour un décompte publié dans un
+     * instantané (utiliser alors {@code getSiege} ou {@code getNom})
+     */
+    public Joueur getJoueur() {
+        return joueur;
+    }
+
+    public int getSiege() {
+        return siege;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public int getPointsRoutes() {
+        return pointsRoutes;
+    }
+
+    public int getPointsGares() {
+        return pointsGares;
+    }
+
+    public List<Destination> getDestinationsReussies() {
+        return destinationsReussies;
+    }
+
+    public List<Destination> getDestinationsEchouees() {
+        return destinationsEchouees;
+    }
+
+    /**
+     * @return la somme des valeurs des destinations réussies moins la somme des
+     * valeurs des destinations échouées
+     */
+    public int getPointsDestinations() {
+        return pointsDestinations;
+    }
+
+    public int getPlusLongChemin() {
+        return plusLongChemin;
+    }
+
+    public boolean aBonusPlusLongChemin() {
+        return bonusPlusLongChemin;
+    }
+
+    public int getTotal() {
+        return pointsRoutes + pointsGares + pointsDestinations + (bonusPlusLongChemin ? BONUS_PLUS_LONG_CHEMIN : 0);
+    }
+
+    /**
+     * @return une description du décompte, avec des balises HTML pour être mise
+     * en forme dans le log
+     */
+    public String toLog() {
+        return String.format(
+                "<span class=\"joueur\">%s</span> : %d pts (routes %d, destinations %+d [%d/%d], gares %d, plus long chemin %d%s)",
+                nom, getTotal(), pointsRoutes, pointsDestinations, destinationsReussies.size(),
+                destinationsReussies.size() + destinationsEchouees.size(), pointsGares, plusLongChemin,
+                bonusPlusLongChemin ? String.format(" +%d", BONUS_PLUS_LONG_CHEMIN) : "");
+    }
+
+    /**
+     * Renvoie une représentation du décompte sous la forme d'un objet Java simple
+     * (POJO)
+     */
+    public Object asPOJO() {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("nom", nom);
+        data.put("total", getTotal());
+        data.put("pointsRoutes", pointsRoutes);
+        data.put("pointsGares", pointsGares);
+        data.put("pointsDestinations", pointsDestinations);
+        data.put("destinationsReussies",
+                destinationsReussies.stream().map(Destination::asPOJO).collect(Collectors.toList()));
+        data.put("destinationsEchouees",
+                destinationsEchouees.stream().map(Destination::asPOJO).collect(Collectors.toList()));
+        data.put("plusLongChemin", plusLongChemin);
+        data.put("bonusPlusLongChemin", bonusPlusLongChemin);
+        return data;
+    }
+
+    /**
+     * Détermine les destinations réalisées. Chaque gare du joueur peut utiliser
+     * une des routes d'un adversaire qui partent de sa ville : toutes les
+     * combinaisons sont essayées (il y a au plus 3 gares) et celle qui rapporte le
+     * plus de points est retenue.
+     *
+     * @return les points des destinations (réussies moins échouées)
+     */
+    private int evaluerDestinations(List<Destination> destinations, int[] proprietairesRoutes,
+                                    int[] proprietairesVilles, EvaluateurDestinations plateau) {
+        List<Route> routes = plateau.getRoutes();
+        int nbVilles = plateau.getNbVilles();
+        int[] reseau = new int[nbVilles];
+        for (int v = 0; v < nbVilles; v++) {
+            reseau[v] = v;
+        }
+        for (int r = 0; r < routes.size(); r++) {
+            if (proprietairesRoutes[r] == siege) {
+                unir(reseau, plateau.getExtremite1(r), plateau.getExtremite2(r));
+            }
+        }
+
+        // routes adverses utilisables par chaque gare
+        List<int[]> choixGares = new ArrayList<>();
+        for (int v = 0; v < nbVilles; v++) {
+            if (proprietairesVilles[v] != siege) {
+                continue;
+            }
+            List<Integer> candidates = new ArrayList<>();
+            for (int r : plateau.getAdjacence(v)) {
+                int proprietaire = proprietairesRoutes[r];
+                if (proprietaire >= 0 && proprietaire != siege) {
+                    candidates.add(r);
+                }
+            }
+            if (!candidates.isEmpty()) {
+                choixGares.add(candidates.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+
+        int[][] extremites = new int[destinations.size()][];
+        for (int d = 0; d < destinations.size(); d++) {
+            extremites[d] = new int[]{plateau.indiceVille(destinations.get(d).getVille1()),
+                    plateau.indiceVille(destinations.get(d).getVille2())};
+        }
+
+        boolean[] meilleuresReussies = new boolean[destinations.size()];
+        int meilleursPoints = Integer.MIN_VALUE;
+        int[] choix = new int[choixGares.size()]; // -1 : la gare n'est pas utilisée
+        Arrays.fill(choix, -1);
+        while (true) {
+            int[] composantes = reseau.clone();
+            for (int g = 0; g < choix.length; g++) {
+                if (choix[g] >= 0) {
+                    int r = choixGares.get(g)[choix[g]];
+                    unir(composantes, plateau.getExtremite1(r), plateau.getExtremite2(r));
+                }
+            }
+            boolean[] reussies = new boolean[destinations.size()];
+            int points = 0;
+            for (int d = 0; d < destinations.size(); d++) {
+                int v1 = extremites[d][0];
+                int v2 = extremites[d][1];
+                reussies[d] = v1 >= 0 && v2 >= 0 && trouver(composantes, v1) == trouver(composantes, v2);
+                points += reussies[d] ? destinations.get(d).getValeur() : -destinations.get(d).getValeur();
+            }
+            if (points > meilleursPoints) {
+                meilleursPoints = points;
+                meilleuresReussies = reussies;
+            }
+
+            // combinaison suivante
+            int g = 0;
+            while (g < choix.length && choix[g] == choixGares.get(g).length - 1) {
+                choix[g] = -1;
+                g++;
+            }
+            if (g == choix.length) {
+                break;
+            }
+            choix[g]++;
+        }
+
+        for (int d = 0; d < destinations.size(); d++) {
+            (meilleuresReussies[d] ? destinationsReussies : destinationsEchouees).add(destinations.get(d));
+        }
+        return destinations.isEmpty() ? 0 : meilleursPoints;
+    }
+
+    /**
+     * Calcule la longueur du plus long chemin continu formé par les routes du
+     * joueur (un chemin peut passer plusieurs fois par la même ville, mais pas
+     * par la même route). Les gares ne sont pas prises en compte.
+     */
+    private int calculerPlusLongChemin(int[] proprietairesRoutes, EvaluateurDestinations plateau) {
+        boolean[] utilisee = new boolean[proprietairesRoutes.length];
+        int max = 0;
+        for (int v = 0; v < plateau.getNbVilles(); v++) {
+            max = Math.max(max, plusLongCheminDepuis(proprietairesRoutes, plateau, v, utilisee));
+        }
+        return max;
+    }
+
+    private int plusLongCheminDepuis(int[] proprietairesRoutes, EvaluateurDestinations plateau, int ville,
+                                     boolean[] utilisee) {
+        int max = 0;
+        for (int r : plateau.getAdjacence(ville)) {
+            if (utilisee[r] || proprietairesRoutes[r] != siege) {
+                continue;
+            }
+            utilisee[r] = true;
+            max = Math.max(max, plateau.getLongueur(r)
+                    + plusLongCheminDepuis(proprietairesRoutes, plateau, plateau.getAutreExtremite(r, ville), utilisee));
+            utilisee[r] = false;
+        }
+        return max;
+    }
+
+    private static int trouver(int[] parents, int v) {
+        while (parents[v] != v) {
+            parents[v] = parents[parents[v]];
+            v = parents[v];
+        }
+        return v;
+    }
+
+    private static void unir(int[] parents, int v1, int v2) {
+        parents[trouver(parents, v1)] = trouver(parents, v2);
+    }
+}
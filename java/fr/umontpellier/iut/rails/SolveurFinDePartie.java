@@ -0,0 +1,608 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.*;
+
+/**
+ * Recherche du meilleur coup pendant le dernier tour de jeu.
+ * <p>
+ * Au dernier tour, chaque joueur qui n'a pas déclenché la fin de la partie joue
+ * une seule fois, et les seuls coups qui changent le décompte final sont la
+ * capture d'une route, la construction d'une gare (utile seulement à côté d'une
+ * route adverse) et la pioche de destinations déjà réalisées ; piocher des
+ * cartes revient à passer. L'arbre des coups restants est donc très petit.
+ * <p>
+ * Les informations cachées (cartes et destinations des adversaires, ordre de la
+ * pioche et de la pile de destinations) sont tirées au hasard parmi celles que
+ * le joueur ne connaît pas, et chaque tirage est résolu comme un jeu à
+ * information complète. La valeur d'une position est l'écart entre le score
+ * final du joueur et le meilleur score final de ses adversaires : le joueur
+ * cherche à la maximiser, ses adversaires à la minimiser. Les adversaires qui
+ * jouent encore sont regroupés en un seul niveau de l'arbre, où un seul d'entre
+ * eux joue et les autres passent (recherche de la meilleure réponse). Ce n'est
+ * qu'une approximation de la réponse des adversaires : un coup ne change que
+ * le décompte de son auteur (tant qu'aucune gare n'utilise les routes prises
+ * pendant le dernier tour), mais il peut aussi faire passer le bonus du plus
+ * long chemin d'un adversaire à un autre, ce que plusieurs adversaires jouant
+ * ensemble pourraient exploiter. En contrepartie, l'arbre n'a jamais plus de
+ * deux niveaux quel que soit le nombre de joueurs.
+ * <p>
+ * Chaque tirage est résolu par une recherche alpha-bêta : les coups du joueur
+ * sont essayés en commençant par ceux qui ont été les meilleurs lors des tirages
+ * précédents, et les réponses des adversaires par ordre décroissant de points,
+ * si bien que la plupart des coups du joueur sont réfutés dès la première
+ * réponse. Les décomptes des positions déjà évaluées sont gardés dans des
+ * tables de transposition indexées par une clé de Zobrist des coups dont ils
+ * dépendent (ceux du joueur décompté, ou tous si le joueur a des gares) : ils
+ * servent pour toutes les positions qui ne diffèrent que par les coups des
+ * autres joueurs, et ceux du joueur servent d'un tirage à l'autre. Le coup
+ * choisi est celui qui a été le meilleur dans le plus de tirages ; les tirages
+ * sont répétés tant que le temps accordé n'est pas écoulé.
+ * <p>
+ * La recherche ne modifie jamais la partie : elle travaille sur une copie des
+ * propriétaires des routes et des villes, encodés par siège (voir
+ * {@code EvaluateurDestinations.encoderProprietairesRoutes}). Elle lit
+ * cependant les mains et les destinations des joueurs à chaque tirage : elle
+ * doit être lancée sur le thread de la partie, comme les choix d'une
+ * {@code Strategie}.
+ */
+public class SolveurFinDePartie {
+    /**
+     * Nombre maximal de tirages des informations cachées
+     */
+    public static final int NB_TIRAGES_MAX = 64;
+    /**
+     * Nombre de positions évaluées entre deux vérifications du temps écoulé
+     */
+    private static final int NOEUDS_PAR_VERIFICATION = 64;
+    private static final int INFINI = Integer.MAX_VALUE;
+
+    /**
+     * Nature d'un coup du dernier tour
+     */
+    public enum TypeCoup {
+        ROUTE, GARE, DESTINATIONS, PASSER
+    }
+
+    /**
+     * Coup du dernier tour
+     */
+    public static final class Coup {
+        private final TypeCoup type;
+        /**
+         * Indice de la route ou de la ville (dans {@code Jeu.getRoutes()} ou
+         * {@code Jeu.getVilles()}), -1 pour les autres coups
+         */
+        private final int indice;
+        private final String nom;
+        /**
+         * Nombre de tirages dans lesquels le coup est le meilleur
+         */
+        private int nbTiragesGagnes;
+        /**
+         * Valeur moyenne du coup (écart de score avec le meilleur adversaire à la
+         * fin de la partie) sur les tirages dans lesquels il est le meilleur
+         */
+        private double valeur;
+
+        private Coup(TypeCoup type, int indice, String nom) {
+            this.type = type;
+            this.indice = indice;
+            this.nom = nom;
+        }
+
+        public TypeCoup getType() {
+            return type;
+        }
+
+        public int getIndice() {
+            return indice;
+        }
+
+        /**
+         * Renvoie le choix à donner pour jouer ce coup ({@code Joueur.jouerTour}) :
+         * le nom de la route ou de la ville, "destinations" ou la chaîne vide pour
+         * passer
+         */
+        public String getNom() {
+            return nom;
+        }
+
+        public int getNbTiragesGagnes() {
+            return nbTiragesGagnes;
+        }
+
+        public double getValeur() {
+            return valeur;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s (%+.1f, %d tirages)", type, nom, valeur, nbTiragesGagnes);
+        }
+    }
+
+    private final Jeu jeu;
+    private final Joueur joueur;
+    private final EvaluateurDestinations plateau;
+    private final List<Joueur> joueurs;
+    /**
+     * Joueurs qui jouent encore pendant le dernier tour, dans l'ordre (le premier
+     * est {@code joueur})
+     */
+    private final List<Joueur> ordre = new ArrayList<>();
+    private final Random aleatoire;
+    private final long[][] zobristRoutes;
+    private final long[][] zobristVilles;
+    private final long[] zobristDestinations;
+    /**
+     * Indique les joueurs qui ont déjà construit une gare
+     */
+    private final boolean[] aDesGares;
+    /**
+     * Siège du propriétaire de chaque route et de chaque ville dans la position
+     * actuelle de la recherche (-1 si elle est libre)
+     */
+    private final int[] proprietairesRoutes;
+    private final int[] proprietairesVilles;
+    /**
+     * Tableaux de travail des estimations du coût des destinations piochées
+     */
+    private final byte[] etatsRoutes;
+    private final EvaluateurDestinations.EspaceCalcul espace;
+
+    // état du tirage en cours
+    private int[][] mains;
+    private List<CouleurWagon> pioche;
+    private int positionPioche;
+    private List<List<Destination>> destinations;
+    private List<Destination> pileDestinations;
+    private int positionPile;
+    private ScoreFinal[] scoresInitiaux;
+    /**
+     * Clé de Zobrist des coups joués par chaque joueur dans la recherche (0 si le
+     * joueur n'a rien changé)
+     */
+    private long[] clesJoueurs;
+    private int[] nbGaresPosees;
+    private boolean[] destinationsPiochees;
+    /**
+     * Décomptes déjà calculés pendant le tirage en cours, pour chaque joueur
+     * (indexés par la clé des coups dont ils dépendent)
+     */
+    private List<Map<Long, ScoreFinal>> scoresTirage;
+    /**
+     * Décomptes du joueur déjà calculés, qui ne dépendent pas du tirage (il
+     * connaît ses destinations) tant qu'il ne pioche pas de destinations
+     */
+    private final Map<Long, ScoreFinal> scoresJoueur = new HashMap<>();
+    private int nbRoutesPrises;
+    private long cle;
+
+    private long limite;
+    private int nbTirages;
+    private long nbNoeuds;
+    private boolean interrompu;
+
+    /**
+     * @param jeu    la partie, pendant le dernier tour de jeu
+     * @param joueur le joueur dont c'est le tour
+     * @param graine graine des tirages des informations cachées
+     */
+    public SolveurFinDePartie(Jeu jeu, Joueur joueur, long graine) {
+        this.jeu = jeu;
+        this.joueur = joueur;
+        this.plateau = jeu.getEvaluateurDestinations();
+        this.joueurs = jeu.getJoueurs();
+        this.aleatoire = new Random(graine);
+        int premier = joueurs.indexOf(joueur);
+        for (int t = 0; t < Math.max(1, jeu.getNbToursRestants()); t++) {
+            ordre.add(joueurs.get((premier + t) % joueurs.size()));
+        }
+        zobristRoutes = new long[jeu.getRoutes().size()][joueurs.size()];
+        zobristVilles = new long[jeu.getVilles().size()][joueurs.size()];
+        zobristDestinations = new long[joueurs.size()];
+        for (long[] cles : zobristRoutes) {
+            remplirAleatoire(cles);
+        }
+        for (long[] cles : zobristVilles) {
+            remplirAleatoire(cles);
+        }
+        remplirAleatoire(zobristDestinations);
+        proprietairesRoutes = plateau.encoderProprietairesRoutes(joueurs);
+        proprietairesVilles = plateau.encoderProprietairesVilles(joueurs);
+        etatsRoutes = new byte[proprietairesRoutes.length];
+        espace = new EvaluateurDestinations.EspaceCalcul(proprietairesVilles.length);
+        aDesGares = new boolean[joueurs.size()];
+        for (int proprietaire : proprietairesVilles) {
+            if (proprietaire >= 0) {
+                aDesGares[proprietaire] = true;
+            }
+        }
+    }
+
+    /**
+     * Cherche le meilleur coup du joueur
+     *
+     * @param dureeMaxMs temps accordé à la recherche (en millisecondes)
+     * @return le meilleur coup, ou {@code null} si aucun tirage n'a pu être résolu
+     * dans le temps accordé
+     */
+    public Coup resoudre(long dureeMaxMs) {
+        limite = System.nanoTime() + dureeMaxMs * 1_000_000;
+        interrompu = false;
+        List<Coup> coups = null;
+        nbTirages = 0;
+        while (nbTirages < NB_TIRAGES_MAX && System.nanoTime() < limite) {
+            tirer();
+            if (coups == null) {
+                // les coups du joueur ne dépendent que de sa main, qui est connue
+                coups = genererCoups(joueur);
+            }
+            int alpha = -INFINI;
+            Coup meilleur = null;
+            for (Coup coup : coups) {
+                int[] annulation = jouer(joueur, coup);
+                int valeur = meilleureReponse(alpha);
+                annuler(joueur, coup, annulation);
+                if (interrompu) {
+                    break;
+                }
+                if (valeur > alpha) {
+                    alpha = valeur;
+                    meilleur = coup;
+                }
+            }
+            if (interrompu) {
+                break;
+            }
+            nbTirages++;
+            meilleur.nbTiragesGagnes++;
+            meilleur.valeur += (alpha - meilleur.valeur) / meilleur.nbTiragesGagnes;
+            // les meilleurs coups des tirages précédents sont essayés en premier
+            coups.sort(Comparator.comparingInt((Coup c) -> c.nbTiragesGagnes).reversed());
+        }
+        if (nbTirages == 0) {
+            return null;
+        }
+        Coup meilleur = coups.get(0);
+        for (Coup coup : coups) {
+            if (coup.nbTiragesGagnes == meilleur.nbTiragesGagnes && coup.valeur > meilleur.valeur) {
+                meilleur = coup;
+            }
+        }
+        return meilleur;
+    }
+
+    /**
+     * Nombre de tirages résolus lors de la dernière recherche
+     */
+    public int getNbTirages() {
+        return nbTirages;
+    }
+
+    /**
+     * Nombre de positions évaluées depuis la création du solveur
+     */
+    public long getNbNoeuds() {
+        return nbNoeuds;
+    }
+
+    /**
+     * Tire au hasard les informations que le joueur ne connaît pas : les cartes
+     * des adversaires et l'ordre de la pioche (parmi les cartes de la pioche et
+     * des mains adverses), les destinations des adversaires et l'ordre de la pile
+     * (parmi celles de la pile et des adversaires)
+     */
+    private void tirer() {
+        List<CouleurWagon> cartesInconnues = new ArrayList<>();
+        int[] compteursPioche = jeu.getCompteursPioche();
+        List<Destination> destinationsInconnues = new ArrayList<>(jeu.getPileDestinations());
+        for (Joueur autre : joueurs) {
+            if (autre != joueur) {
+                int[] main = autre.getCompteursCartesWagon();
+                for (int c = 0; c < main.length; c++) {
+                    compteursPioche[c] += main[c];
+                }
+                destinationsInconnues.addAll(autre.getDestinations());
+            }
+        }
+        CouleurWagon[] couleurs = CouleurWagon.values();
+        for (int c = 0; c < compteursPioche.length; c++) {
+            for (int k = 0; k < compteursPioche[c]; k++) {
+                cartesInconnues.add(couleurs[c]);
+            }
+        }
+        Collections.shuffle(cartesInconnues, aleatoire);
+        Collections.shuffle(destinationsInconnues, aleatoire);
+
+        mains = new int[joueurs.size()][];
+        destinations = new ArrayList<>();
+        int carte = 0;
+        int destination = 0;
+        for (int j = 0; j < joueurs.size(); j++) {
+            Joueur autre = joueurs.get(j);
+            if (autre == joueur) {
+                mains[j] = autre.getCompteursCartesWagon();
+                destinations.add(new ArrayList<>(autre.getDestinations()));
+            } else {
+                mains[j] = new int[couleurs.length];
+                for (int k = 0; k < autre.getCartesWagon().size(); k++) {
+                    mains[j][cartesInconnues.get(carte++).ordinal()]++;
+                }
+                int nb = autre.getDestinations().size();
+                destinations.add(new ArrayList<>(destinationsInconnues.subList(destination, destination + nb)));
+                destination += nb;
+            }
+        }
+        pioche = cartesInconnues.subList(carte, cartesInconnues.size());
+        positionPioche = 0;
+        pileDestinations = destinationsInconnues.subList(destination, destinationsInconnues.size());
+        positionPile = 0;
+
+        scoresInitiaux = new ScoreFinal[joueurs.size()];
+        for (int j = 0; j < joueurs.size(); j++) {
+            scoresInitiaux[j] = ScoreFinal.calculerSansBonus(joueurs.get(j), j, destinations.get(j), proprietairesRoutes,
+                    proprietairesVilles, plateau);
+        }
+        clesJoueurs = new long[joueurs.size()];
+        nbGaresPosees = new int[joueurs.size()];
+        destinationsPiochees = new boolean[joueurs.size()];
+        scoresTirage = new ArrayList<>();
+        for (int j = 0; j < joueurs.size(); j++) {
+            scoresTirage.add(new HashMap<>());
+        }
+        nbRoutesPrises = 0;
+        cle = 0;
+    }
+
+    /**
+     * Cherche la réponse des adversaires qui minimise la valeur de la position :
+     * chaque coup de chacun des adversaires qui jouent encore, les autres passant
+     *
+     * @param alpha valeur déjà garantie au joueur par un autre coup : la recherche
+     *              s'arrête dès qu'une réponse fait moins bien (la valeur renvoyée
+     *              n'est alors qu'un majorant)
+     */
+    private int meilleureReponse(int alpha) {
+        int pire = evaluer();
+        for (int t = 1; t < ordre.size() && pire > alpha; t++) {
+            Joueur adversaire = ordre.get(t);
+            for (Coup coup : genererCoups(adversaire)) {
+                if (coup.type == TypeCoup.PASSER) {
+                    continue;
+                }
+                int[] annulation = jouer(adversaire, coup);
+                int valeur = evaluer();
+                annuler(adversaire, coup, annulation);
+                if (interrompu) {
+                    return 0;
+                }
+                if (valeur < pire) {
+                    pire = valeur;
+                    if (pire <= alpha) {
+                        break;
+                    }
+                }
+            }
+        }
+        return pire;
+    }
+
+    /**
+     * Évalue une position finale : écart entre le score du joueur et le meilleur
+     * score de ses adversaires. Seuls les décomptes des joueurs concernés par les
+     * coups de la recherche sont recalculés.
+     */
+    private int evaluer() {
+        if (++nbNoeuds % NOEUDS_PAR_VERIFICATION == 0 && System.nanoTime() > limite) {
+            interrompu = true;
+        }
+        int[] totaux = new int[joueurs.size()];
+        int[] chemins = new int[joueurs.size()];
+        int plusLong = 0;
+        for (int j = 0; j < joueurs.size(); j++) {
+            ScoreFinal score = decompte(j);
+            totaux[j] = score.getPointsRoutes() + score.getPointsGares() + score.getPointsDestinations()
+                    - ScoreFinal.POINTS_PAR_GARE * nbGaresPosees[j];
+            chemins[j] = score.getPlusLongChemin();
+            plusLong = Math.max(plusLong, chemins[j]);
+        }
+        int meilleurAdversaire = Integer.MIN_VALUE;
+        int total = 0;
+        for (int j = 0; j < joueurs.size(); j++) {
+            if (plusLong > 0 && chemins[j] == plusLong) {
+                totaux[j] += ScoreFinal.BONUS_PLUS_LONG_CHEMIN;
+            }
+            if (joueurs.get(j) == joueur) {
+                total = totaux[j];
+            } else {
+                meilleurAdversaire = Math.max(meilleurAdversaire, totaux[j]);
+            }
+        }
+        return meilleurAdversaire == Integer.MIN_VALUE ? total : total - meilleurAdversaire;
+    }
+
+    /**
+     * Renvoie le décompte d'un joueur dans la position actuelle de la recherche
+     * (sans le bonus du plus long chemin ni les gares posées pendant la recherche)
+     */
+    private ScoreFinal decompte(int j) {
+        // une gare peut utiliser une route adverse : le décompte d'un joueur qui
+        // a des gares dépend aussi des routes prises par les autres
+        boolean dependDesAutres = aDesGares[j] || nbGaresPosees[j] > 0;
+        if (clesJoueurs[j] == 0 && !(dependDesAutres && nbRoutesPrises > 0)) {
+            return scoresInitiaux[j];
+        }
+        long cleDecompte = dependDesAutres ? cle : clesJoueurs[j];
+        Map<Long, ScoreFinal> scores = joueurs.get(j) == joueur && !destinationsPiochees[j]
+                ? scoresJoueur
+                : scoresTirage.get(j);
+        ScoreFinal score = scores.get(cleDecompte);
+        if (score == null) {
+            score = ScoreFinal.calculerSansBonus(joueurs.get(j), j, destinations.get(j), proprietairesRoutes,
+                    proprietairesVilles, plateau);
+            scores.put(cleDecompte, score);
+        }
+        return score;
+    }
+
+    /**
+     * Coups d'un joueur qui peuvent changer le décompte final, par ordre
+     * décroissant de points, suivis du coup qui consiste à passer
+     */
+    private List<Coup> genererCoups(Joueur courant) {
+        int j = joueurs.indexOf(courant);
+        SolveurPaiement solveur = new SolveurPaiement(mains[j]);
+        List<Coup> coups = new ArrayList<>();
+        List<Route> routes = jeu.getRoutes();
+        for (int r = 0; r < routes.size(); r++) {
+            Route route = routes.get(r);
+            if (proprietairesRoutes[r] < 0 && route.getLongueur() <= courant.getNbWagons()
+                    && solveur.peutCapturer(route)) {
+                coups.add(new Coup(TypeCoup.ROUTE, r, route.getNom()));
+            }
+        }
+        coups.sort(Comparator.comparingInt((Coup c) -> routes.get(c.indice).getPoints()).reversed());
+        if (positionPile < pileDestinations.size()) {
+            coups.add(new Coup(TypeCoup.DESTINATIONS, -1, "destinations"));
+        }
+        if (courant.getNbGares() > 0 && solveur.peutPayer(Paiement.pourGare(courant.getNbGares()))) {
+            // une gare coûte des points : elle n'est utile qu'à côté d'une route adverse
+            List<Ville> villes = jeu.getVilles();
+            for (int v = 0; v < villes.size(); v++) {
+                if (proprietairesVilles[v] < 0 && aRouteAdverse(v, j)) {
+                    coups.add(new Coup(TypeCoup.GARE, v, villes.get(v).getNom()));
+                }
+            }
+        }
+        coups.add(new Coup(TypeCoup.PASSER, -1, ""));
+        return coups;
+    }
+
+    private boolean aRouteAdverse(int ville, int j) {
+        for (int r : plateau.getAdjacence(ville)) {
+            int proprietaire = proprietairesRoutes[r];
+            if (proprietaire >= 0 && proprietaire != j) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Joue un coup dans la recherche
+     *
+     * @return ce qu'il faut pour l'annuler : le nombre de cartes révélées et 1 si
+     * la route est prise (0 si le joueur renonce au tunnel), ou le nombre de
+     * destinations piochées et gardées
+     */
+    private int[] jouer(Joueur courant, Coup coup) {
+        int j = joueurs.indexOf(courant);
+        switch (coup.type) {
+            case ROUTE: {
+                Route route = jeu.getRoutes().get(coup.indice);
+                int nbRevelees = 0;
+                if (route instanceof Tunnel) {
+                    int[] main = mains[j].clone();
+                    List<CouleurWagon> paiement = new SolveurPaiement(main).meilleurPaiement(Paiement.pourRoute(route));
+                    if (paiement == null) {
+                        // ne devrait pas arriver : les routes proposées sont abordables
+                        return new int[]{0, 0};
+                    }
+                    for (CouleurWagon c : paiement) {
+                        main[c.ordinal()]--;
+                    }
+                    CouleurWagon couleur = Paiement.couleurUtilisee(paiement);
+                    nbRevelees = Math.min(3, pioche.size() - positionPioche);
+                    List<CouleurWagon> revelees = pioche.subList(positionPioche, positionPioche + nbRevelees);
+                    positionPioche += nbRevelees;
+                    int surcout = Paiement.calculerSurcout(couleur, revelees);
+                    if (surcout > 0
+                            && !new SolveurPaiement(main).peutPayer(Paiement.pourSurcoutTunnel(couleur, surcout))) {
+                        // le joueur doit renoncer au tunnel
+                        return new int[]{nbRevelees, 0};
+                    }
+                }
+                proprietairesRoutes[coup.indice] = j;
+                modifier(j, zobristRoutes[coup.indice][j]);
+                nbRoutesPrises++;
+                return new int[]{nbRevelees, 1};
+            }
+            case GARE:
+                proprietairesVilles[coup.indice] = j;
+                modifier(j, zobristVilles[coup.indice][j]);
+                nbGaresPosees[j]++;
+                return null;
+            case DESTINATIONS: {
+                int nb = Math.min(3, pileDestinations.size() - positionPile);
+                List<Destination> piochees = pileDestinations.subList(positionPile, positionPile + nb);
+                positionPile += nb;
+                // le joueur garde les destinations déjà réalisées, ou la moins chère
+                List<Destination> gardees = new ArrayList<>();
+                Destination moinsChere = null;
+                plateau.encoderRoutes(j, proprietairesRoutes, etatsRoutes, 0);
+                int[] terminaux = new int[2];
+                for (Destination destination : piochees) {
+                    int nbTerminaux = plateau.encoderTerminaux(List.of(destination), terminaux, 0);
+                    if (nbTerminaux >= 0
+                            && plateau.estimerCout(etatsRoutes, 0, terminaux, 0, nbTerminaux, espace) == 0) {
+                        gardees.add(destination);
+                    } else if (moinsChere == null || destination.getValeur() < moinsChere.getValeur()) {
+                        moinsChere = destination;
+                    }
+                }
+                if (gardees.isEmpty()) {
+                    gardees.add(moinsChere);
+                }
+                destinations.get(j).addAll(gardees);
+                modifier(j, zobristDestinations[j]);
+                destinationsPiochees[j] = true;
+                return new int[]{nb, gardees.size()};
+            }
+            default:
+                return null;
+        }
+    }
+
+    private void annuler(Joueur courant, Coup coup, int[] annulation) {
+        int j = joueurs.indexOf(courant);
+        switch (coup.type) {
+            case ROUTE: {
+                positionPioche -= annulation[0];
+                if (annulation[1] == 0) {
+                    return;
+                }
+                proprietairesRoutes[coup.indice] = -1;
+                modifier(j, zobristRoutes[coup.indice][j]);
+                nbRoutesPrises--;
+                break;
+            }
+            case GARE:
+                proprietairesVilles[coup.indice] = -1;
+                modifier(j, zobristVilles[coup.indice][j]);
+                nbGaresPosees[j]--;
+                break;
+            case DESTINATIONS: {
+                List<Destination> gardees = destinations.get(j);
+                gardees.subList(gardees.size() - annulation[1], gardees.size()).clear();
+                positionPile -= annulation[0];
+                modifier(j, zobristDestinations[j]);
+                destinationsPiochees[j] = false;
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private void modifier(int j, long cleCoup) {
+        cle ^= cleCoup;
+        clesJoueurs[j] ^= cleCoup;
+    }
+
+    private void remplirAleatoire(long[] cles) {
+        for (int i = 0; i < cles.length; i++) {
+            cles[i] = aleatoire.nextLong();
+        }
+    }
+}
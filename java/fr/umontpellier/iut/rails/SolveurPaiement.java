@@ -0,0 +1,140 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calcule automatiquement la meilleure façon de payer une route, un ferry, un
+ * tunnel ou une gare avec les cartes d'une main.
+ * <p>
+ * Le paiement choisi utilise le moins de locomotives possible, puis, à nombre de
+ * locomotives égal, la couleur dont le joueur a le plus de cartes (pour garder
+ * les couleurs rares).
+ */
+public class SolveurPaiement {
+    private static final int LOCOMOTIVE = CouleurWagon.LOCOMOTIVE.ordinal();
+
+    /**
+     * Nombre de cartes de chaque couleur de la main (indexé par
+     * {@code CouleurWagon.ordinal()})
+     */
+    private final int[] main;
+    /**
+     * Plus grand nombre de cartes d'une même couleur simple dans la main
+     */
+    private final int maxCouleur;
+
+    /**
+     * @param main le nombre de cartes de chaque couleur de la main (indexé par
+     *             {@code CouleurWagon.ordinal()})
+     */
+    public SolveurPaiement(int[] main) {
+        this.main = main;
+        int max = 0;
+        for (CouleurWagon c : CouleurWagon.getCouleursSimples()) {
+            max = Math.max(max, main[c.ordinal()]);
+        }
+        maxCouleur = max;
+    }
+
+    public SolveurPaiement(List<CouleurWagon> main) {
+        this(Paiement.compter(main));
+    }
+
+    /**
+     * Indique si la main permet d'effectuer un paiement (en temps constant)
+     */
+    public boolean peutPayer(Paiement paiement) {
+        int locomotives = main[LOCOMOTIVE];
+        if (locomotives < paiement.getNbLocomotivesMin()) {
+            return false;
+        }
+        CouleurWagon couleur = paiement.getCouleurImposee();
+        int autres;
+        if (couleur == null) {
+            autres = maxCouleur;
+        } else if (couleur == CouleurWagon.LOCOMOTIVE) {
+            autres = 0;
+        } else {
+            autres = main[couleur.ordinal()];
+        }
+        return autres + locomotives >= paiement.getNbCartes();
+    }
+
+    /**
+     * Indique si le joueur peut capturer une route avec cette main (sans tenir
+     * compte du surcoût éventuel d'un tunnel)
+     */
+    public boolean peutCapturer(Route route) {
+        return peutPayer(Paiement.pourRoute(route));
+    }
+
+    /**
+     * Renvoie les routes libres que le joueur peut capturer avec cette main et le
+     * nombre de wagons qu'il lui reste
+     */
+    public List<Route> routesAbordables(List<Route> routes, int nbWagons) {
+        List<Route> abordables = new ArrayList<>();
+        for (Route route : routes) {
+            if (route.getProprietaire() == null && route.getLongueur() <= nbWagons && peutCapturer(route)) {
+                abordables.add(route);
+            }
+        }
+        return abordables;
+    }
+
+    /**
+     * Calcule le paiement le moins coûteux
+     *
+     * @return les cartes à payer, ou {@code null} si la main ne permet pas
+     * d'effectuer le paiement
+     */
+    public List<CouleurWagon> meilleurPaiement(Paiement paiement) {
+        int nbCartes = paiement.getNbCartes();
+        int locomotivesMin = paiement.getNbLocomotivesMin();
+        CouleurWagon couleurImposee = paiement.getCouleurImposee();
+
+        CouleurWagon meilleureCouleur = null;
+        int meilleuresLocomotives = Integer.MAX_VALUE;
+        if (couleurImposee == CouleurWagon.LOCOMOTIVE) {
+            meilleuresLocomotives = nbCartes;
+        } else {
+            for (CouleurWagon c : CouleurWagon.getCouleursSimples()) {
+                if (couleurImposee != null && c != couleurImposee) {
+                    continue;
+                }
+                int couleursUtilisees = Math.min(main[c.ordinal()], nbCartes - locomotivesMin);
+                int locomotives = nbCartes - couleursUtilisees;
+                if (locomotives < meilleuresLocomotives || (locomotives == meilleuresLocomotives
+                        && meilleureCouleur != null && main[c.ordinal()] > main[meilleureCouleur.ordinal()])) {
+                    meilleuresLocomotives = locomotives;
+                    meilleureCouleur = c;
+                }
+            }
+        }
+        if (meilleuresLocomotives > main[LOCOMOTIVE]) {
+            return null;
+        }
+
+        List<CouleurWagon> cartes = new ArrayList<>();
+        for (int i = 0; i < nbCartes - meilleuresLocomotives; i++) {
+            cartes.add(meilleureCouleur);
+        }
+        for (int i = 0; i < meilleuresLocomotives; i++) {
+            cartes.add(CouleurWagon.LOCOMOTIVE);
+        }
+        return cartes;
+    }
+
+    /**
+     * Renvoie un paiement sous la forme d'un seul message (accepté par
+     * {@code Joueur.choisir} lors d'un paiement)
+     */
+    public static String enMessage(List<CouleurWagon> cartes) {
+        List<String> noms = new ArrayList<>();
+        for (CouleurWagon c : cartes) {
+            noms.add(c.name());
+        }
+        return String.join(Paiement.SEPARATEUR, noms);
+    }
+}
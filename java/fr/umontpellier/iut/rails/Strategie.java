@@ -0,0 +1,25 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.List;
+
+/**
+ * Stratégie de jeu d'un bot : fait les choix d'un joueur à la place des
+ * entrées reçues au clavier ou sur la websocket (voir {@code Joueur.choisir}).
+ * <p>
+ * Les choix sont demandés sur le thread de la partie : une stratégie peut donc
+ * consulter librement l'état du jeu ({@code joueur.getJeu()}).
+ */
+public interface Strategie {
+    /**
+     * Choisit une entrée parmi les choix valides
+     *
+     * @param joueur      le joueur qui doit faire le choix
+     * @param instruction l'instruction donnée au joueur (nature du choix attendu)
+     * @param choix       les choix valides (sans doublons)
+     * @param peutPasser  indique si le joueur peut passer (en renvoyant la chaîne
+     *                    vide)
+     * @return un élément de {@code choix}, la chaîne vide si le joueur passe, ou un
+     * paiement complet envoyé en un seul message lors d'un paiement
+     */
+    String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser);
+}
@@ -0,0 +1,183 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Tableau immuable et persistant : chaque modification renvoie un nouveau
+ * vecteur, qui partage avec l'ancien tout ce qui n'a pas changé.
+ * <p>
+ * Les éléments sont rangés dans un arbre dont chaque nœud a 32 fils. Modifier ou
+ * ajouter un élément ne recopie que les nœuds du chemin qui mène à cet élément
+ * (au plus 7 nœuds de 32 cases, quelle que soit la taille du vecteur). Comme
+ * les sous-arbres identiques sont partagés, {@code comparer} trouve les
+ * différences entre deux versions sans parcourir les parties communes.
+ *
+ * @param <E> type des éléments (qui peuvent être {@code null})
+ */
+public final class VecteurPersistant<E> {
+    private static final int BITS = 5;
+    private static final int LARGEUR = 1 << BITS;
+    private static final int MASQUE = LARGEUR - 1;
+    private static final VecteurPersistant<?> VIDE = new VecteurPersistant<>(0, 0, new Object[LARGEUR]);
+
+    private final int taille;
+    /**
+     * Décalage (en bits) de l'indice au niveau de la racine (0 si la racine est
+     * une feuille)
+     */
+    private final int decalage;
+    private final Object[] racine;
+
+    private VecteurPersistant(int taille, int decalage, Object[] racine) {
+        this.taille = taille;
+        this.decalage = decalage;
+        this.racine = racine;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> VecteurPersistant<E> vide() {
+        return (VecteurPersistant<E>) VIDE;
+    }
+
+    /**
+     * Renvoie un vecteur contenant les éléments d'une liste (dans le même ordre)
+     */
+    public static <E> VecteurPersistant<E> de(List<? extends E> elements) {
+        VecteurPersistant<E> vecteur = vide();
+        for (E e : elements) {
+            vecteur = vecteur.ajouter(e);
+        }
+        return vecteur;
+    }
+
+    public int size() {
+        return taille;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int indice) {
+        if (indice < 0 || indice >= taille) {
+            throw new IndexOutOfBoundsException(indice);
+        }
+        Object[] noeud = racine;
+        for (int d = decalage; d > 0; d -= BITS) {
+            noeud = (Object[]) noeud[(indice >>> d) & MASQUE];
+        }
+        return (E) noeud[indice & MASQUE];
+    }
+
+    /**
+     * Renvoie un vecteur identique, sauf l'élément d'indice donné qui est remplacé
+     */
+    public VecteurPersistant<E> set(int indice, E element) {
+        if (indice < 0 || indice >= taille) {
+            throw new IndexOutOfBoundsException(indice);
+        }
+        if (get(indice) == element) {
+            return this;
+        }
+        return new VecteurPersistant<>(taille, decalage, placer(racine, decalage, indice, element));
+    }
+
+    /**
+     * Renvoie un vecteur identique avec un élément de plus à la fin
+     */
+    public VecteurPersistant<E> ajouter(E element) {
+        Object[] nouvelleRacine = racine;
+        int nouveauDecalage = decalage;
+        if (taille == capacite(decalage)) {
+            // l'arbre est plein : il gagne un niveau
+            nouvelleRacine = new Object[LARGEUR];
+            nouvelleRacine[0] = racine;
+            nouveauDecalage += BITS;
+        }
+        return new VecteurPersistant<>(taille + 1, nouveauDecalage,
+                placer(nouvelleRacine, nouveauDecalage, taille, element));
+    }
+
+    /**
+     * Renvoie un vecteur identique sans son dernier élément
+     */
+    public VecteurPersistant<E> retirerDernier() {
+        if (taille == 0) {
+            throw new IndexOutOfBoundsException(-1);
+        }
+        return new VecteurPersistant<>(taille - 1, decalage, placer(racine, decalage, taille - 1, null));
+    }
+
+    /**
+     * Renvoie le dernier élément du vecteur
+     */
+    public E dernier() {
+        return get(taille - 1);
+    }
+
+    /**
+     * Signale les indices auxquels deux vecteurs n'ont pas le même élément (les
+     * éléments sont comparés par référence, et un indice au-delà de la fin d'un
+     * vecteur est considéré comme contenant {@code null}). Les sous-arbres
+     * partagés par les deux vecteurs ne sont pas parcourus.
+     *
+     * @param autre       le vecteur à comparer
+     * @param differences reçoit chaque indice où les vecteurs diffèrent
+     */
+    public void comparer(VecteurPersistant<E> autre, IntConsumer differences) {
+        int d = Math.max(decalage, autre.decalage);
+        comparer(elever(racine, decalage, d), elever(autre.racine, autre.decalage, d), d, 0,
+                Math.max(taille, autre.taille), differences);
+    }
+
+    private static long capacite(int decalage) {
+        return 1L << (decalage + BITS);
+    }
+
+    /**
+     * Copie le chemin qui mène à un indice (en créant les nœuds manquants) et y
+     * place un élément
+     */
+    private static Object[] placer(Object[] noeud, int decalage, int indice, Object element) {
+        Object[] copie = noeud == null ? new Object[LARGEUR] : noeud.clone();
+        if (decalage == 0) {
+            copie[indice & MASQUE] = element;
+        } else {
+            int k = (indice >>> decalage) & MASQUE;
+            copie[k] = placer((Object[]) copie[k], decalage - BITS, indice, element);
+        }
+        return copie;
+    }
+
+    /**
+     * Ajoute des niveaux au-dessus d'une racine pour qu'elle ait le décalage donné
+     */
+    private static Object[] elever(Object[] racine, int decalage, int decalageVoulu) {
+        for (int d = decalage; d < decalageVoulu; d += BITS) {
+            Object[] parent = new Object[LARGEUR];
+            parent[0] = racine;
+            racine = parent;
+        }
+        return racine;
+    }
+
+    private static void comparer(Object[] a, Object[] b, int decalage, int base, int limite,
+                                 IntConsumer differences) {
+        if (a == b) {
+            return;
+        }
+        for (int k = 0; k < LARGEUR; k++) {
+            long debut = base + ((long) k << decalage);
+            if (debut >= limite) {
+                return;
+            }
+            Object x = a == null ? null : a[k];
+            Object y = b == null ? null : b[k];
+            if (decalage == 0) {
+                if (x != y) {
+                    differences.accept((int) debut);
+                }
+            } else {
+                comparer((Object[]) x, (Object[]) y, decalage - BITS, (int) debut, limite, differences);
+            }
+        }
+    }
+}